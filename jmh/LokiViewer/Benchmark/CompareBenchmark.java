@@ -0,0 +1,118 @@
+package LokiViewer.Benchmark;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import LokiViewer.Object.FaceComp;
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+
+/**
+ * JMH benchmark of FaceComp.compare on random pairs of faces, which are mostly
+ * told apart by their borders, and on pairs of neighbouring faces, which
+ * overlap and are compared by their edges. The time is per comparison.
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompareBenchmark {
+	/**
+	 * Number of face pairs compared per invocation
+	 */
+	private static final int pairs = 1 << 16;
+
+	/**
+	 * The comparator
+	 */
+	private FaceComp comp;
+	/**
+	 * Random faces, two per pair
+	 */
+	private int[] randomPairs;
+	/**
+	 * Neighbouring faces, two per pair
+	 */
+	private int[] neighbourPairs;
+
+	/**
+	 * Generate, parse and prepare a sphere of 100000 faces and pick the pairs
+	 * 
+	 * @throws IOException          when writing the model failed
+	 * @throws ObjectParseException when parsing the model failed
+	 */
+	@Setup
+	public void prepare() throws IOException, ObjectParseException {
+		var file = MeshGenerator.tempSphere(100000);
+		var object = Object3D.parse(file);
+		file.delete();
+		FaceOrderBenchmark.prepare(object, new Dimension(800, 800));
+		var mesh = object.getMesh();
+		comp = new FaceComp(mesh);
+		int n = mesh.getFaceCount();
+		var random = new Random(1);
+		randomPairs = new int[2 * pairs];
+		neighbourPairs = new int[2 * pairs];
+		for (int i = 0; i < pairs; i++) {
+			randomPairs[2 * i] = random.nextInt(n);
+			randomPairs[2 * i + 1] = random.nextInt(n);
+			int f = random.nextInt(n - 1);
+			neighbourPairs[2 * i] = f;
+			neighbourPairs[2 * i + 1] = f + 1;
+		}
+	}
+
+	/**
+	 * Compare random pairs of faces
+	 * 
+	 * @param blackhole consumes each result
+	 */
+	@Benchmark
+	@OperationsPerInvocation(pairs)
+	public void randomPairs(Blackhole blackhole) {
+		compare(randomPairs, blackhole);
+	}
+
+	/**
+	 * Compare neighbouring pairs of faces
+	 * 
+	 * @param blackhole consumes each result
+	 */
+	@Benchmark
+	@OperationsPerInvocation(pairs)
+	public void neighbourPairs(Blackhole blackhole) {
+		compare(neighbourPairs, blackhole);
+	}
+
+	/**
+	 * Compare pairs of faces
+	 * 
+	 * @param faces     indices of the faces, two per pair
+	 * @param blackhole consumes each result
+	 */
+	private void compare(int[] faces, Blackhole blackhole) {
+		for (int i = 0; i < faces.length; i += 2) {
+			blackhole.consume(comp.compare(faces[i], faces[i + 1]));
+		}
+	}
+}
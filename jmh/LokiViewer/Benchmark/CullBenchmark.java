@@ -0,0 +1,116 @@
+package LokiViewer.Benchmark;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+import LokiViewer.Object.RenderMode;
+
+/**
+ * JMH benchmark of drawing the faces alone with and without culling, in each
+ * render mode. The faces culled are printed once the object is prepared.
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CullBenchmark {
+	/**
+	 * Window dimension
+	 */
+	private static final Dimension d = new Dimension(800, 800);
+
+	/**
+	 * Model file to draw, empty to draw a generated sphere
+	 */
+	@Param({ "" })
+	private String model;
+	/**
+	 * Face count of the generated sphere
+	 */
+	@Param({ "200000" })
+	private int faces;
+	/**
+	 * Render mode, all modes by default
+	 */
+	@Param
+	private RenderMode mode;
+	/**
+	 * Whether hidden faces are culled
+	 */
+	@Param({ "false", "true" })
+	private boolean cull;
+
+	/**
+	 * The drawn object
+	 */
+	private Object3D object;
+	/**
+	 * The image drawn into
+	 */
+	private BufferedImage image;
+
+	/**
+	 * Parse and prepare the object, build its BSP tree, and print the faces
+	 * culled in the first frame
+	 * 
+	 * @throws IOException          when writing the model failed
+	 * @throws ObjectParseException when parsing the model failed
+	 * @throws InterruptedException when interrupted while building the tree
+	 */
+	@Setup
+	public void prepare() throws IOException, ObjectParseException, InterruptedException {
+		if (model.isEmpty()) {
+			var file = MeshGenerator.tempSphere(faces);
+			object = Object3D.parse(file);
+			file.delete();
+		} else {
+			object = Object3D.parse(new File(model));
+		}
+		FaceOrderBenchmark.prepare(object, d);
+		object.setDrawVertexAndEdge(false);
+		object.awaitBspTree();
+		object.setRenderMode(mode);
+		object.setCullFaces(cull);
+		image = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_ARGB);
+		draw();
+		var culler = object.getFaceCuller();
+		System.out.printf("faces %d  oriented %d  back %d  off-screen %d  drawn %d%n", object.getMesh().getFaceCount(),
+				culler.getOrientedFaceCount(), culler.getBackFaceCount(), culler.getOffScreenCount(),
+				culler.getVisibleCount());
+	}
+
+	/**
+	 * Draw the object
+	 * 
+	 * @return the image drawn into
+	 */
+	@Benchmark
+	public BufferedImage draw() {
+		var g = image.createGraphics();
+		object.draw(g, d, false);
+		g.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,93 @@
+package LokiViewer.Benchmark;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+import LokiViewer.Object.RenderMode;
+
+/**
+ * JMH benchmark of Object3D.draw into an offscreen image, in each render mode.
+ * The BSP tree is built before measuring.
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawBenchmark {
+	/**
+	 * Window dimension
+	 */
+	private static final Dimension d = new Dimension(800, 800);
+
+	/**
+	 * Face count of the drawn sphere
+	 */
+	@Param({ "100000" })
+	private int faces;
+	/**
+	 * Render mode, all modes by default
+	 */
+	@Param
+	private RenderMode mode;
+
+	/**
+	 * The drawn object
+	 */
+	private Object3D object;
+	/**
+	 * The image drawn into
+	 */
+	private BufferedImage image;
+
+	/**
+	 * Generate, parse and prepare the object, and build its BSP tree
+	 * 
+	 * @throws IOException          when writing the model failed
+	 * @throws ObjectParseException when parsing the model failed
+	 * @throws InterruptedException when interrupted while building the tree
+	 */
+	@Setup
+	public void prepare() throws IOException, ObjectParseException, InterruptedException {
+		var file = MeshGenerator.tempSphere(faces);
+		object = Object3D.parse(file);
+		file.delete();
+		FaceOrderBenchmark.prepare(object, d);
+		object.awaitBspTree();
+		object.setRenderMode(mode);
+		image = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * Draw the object
+	 * 
+	 * @return the image drawn into
+	 */
+	@Benchmark
+	public BufferedImage draw() {
+		var g = image.createGraphics();
+		object.draw(g, d, false);
+		g.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,121 @@
+package LokiViewer.Benchmark;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import LokiViewer.Object.FaceOrderGraph;
+import LokiViewer.Object.Mesh;
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+
+/**
+ * JMH benchmark of building the face ordering graph against the thread count.
+ * The speedup is the time with one thread divided by the time with more.
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceOrderBenchmark {
+	/**
+	 * Face count of the sphere
+	 */
+	@Param({ "200000" })
+	private int faces;
+	/**
+	 * Parallelism of the pool building the graph
+	 */
+	@Param({ "1", "2", "4", "8" })
+	private int threads;
+
+	/**
+	 * The mesh of the prepared sphere
+	 */
+	private Mesh mesh;
+	/**
+	 * The pool building the graph
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * Generate, parse and prepare the object, and check that the graph built in
+	 * the pool gives the same order as the sequential graph
+	 * 
+	 * @throws IOException          when writing the model failed
+	 * @throws ObjectParseException when parsing the model failed
+	 */
+	@Setup
+	public void prepare() throws IOException, ObjectParseException {
+		var file = MeshGenerator.tempSphere(faces);
+		var object = Object3D.parse(file);
+		file.delete();
+		prepare(object, new Dimension(800, 800));
+		mesh = object.getMesh();
+		pool = new ForkJoinPool(threads);
+		if (!Arrays.equals(new FaceOrderGraph(mesh).sort(), new FaceOrderGraph(mesh, pool).sort())) {
+			throw new IllegalStateException("order differs with " + threads + " threads");
+		}
+	}
+
+	/**
+	 * Shut the pool down
+	 */
+	@TearDown
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Build the graph of overlapping faces in the pool
+	 * 
+	 * @return the graph
+	 */
+	@Benchmark
+	public FaceOrderGraph build() {
+		return new FaceOrderGraph(mesh, pool);
+	}
+
+	/**
+	 * Rescale the object to the window and rotate it a bit, so that faces in the
+	 * back overlap faces in the front
+	 * 
+	 * @param object object to prepare
+	 * @param d      window dimension
+	 */
+	static void prepare(Object3D object, Dimension d) {
+		var image = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_RGB);
+		var g = image.createGraphics();
+		object.setDrawFace(false);
+		object.setDrawVertexAndEdge(false);
+		object.draw(g, d, true);
+		g.dispose();
+		object.generateRotateOrigin();
+		object.rotate(20, 10);
+		object.updateVertex();
+		object.removeRotateOrigin();
+		object.setDrawFace(true);
+		object.setDrawVertexAndEdge(true);
+	}
+}
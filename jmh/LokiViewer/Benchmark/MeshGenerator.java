@@ -0,0 +1,103 @@
+package LokiViewer.Benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Generate model files of a given size for benchmarks
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class MeshGenerator {
+
+	/**
+	 * Write a sphere made of latitude and longitude strips, with about the given
+	 * number of faces. Each pole is a single vertex shared by the faces around
+	 * it, so the sphere is closed. Vertex ids are sparse, like the ids of our
+	 * exporters.
+	 * 
+	 * @param file  output file
+	 * @param faces target face count
+	 * @throws IOException when writing failed
+	 */
+	public static void writeSphere(File file, int faces) throws IOException {
+		int lat = Integer.max(2, (int) Math.sqrt(faces / 4.0));
+		int lon = Integer.max(3, faces / (2 * lat));
+		int n = (lat - 1) * lon + 2;
+		int m = 2 * (lat - 1) * lon;
+		try (var out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+			out.write(n + "," + m + "\n");
+			out.write(id(0) + ",0.0,0.0,1.0\n");
+			for (int i = 1; i < lat; i++) {
+				double t = Math.PI * i / lat;
+				for (int j = 0; j < lon; j++) {
+					double p = 2 * Math.PI * j / lon;
+					out.write(id(vertex(lat, lon, i, j)) + "," + Math.sin(t) * Math.cos(p) + ","
+							+ Math.sin(t) * Math.sin(p) + "," + Math.cos(t) + "\n");
+				}
+			}
+			out.write(id(n - 1) + ",0.0,0.0,-1.0\n");
+			for (int i = 0; i < lat; i++) {
+				for (int j = 0; j < lon; j++) {
+					int a = id(vertex(lat, lon, i, j));
+					int b = id(vertex(lat, lon, i, (j + 1) % lon));
+					int c = id(vertex(lat, lon, i + 1, j));
+					int d = id(vertex(lat, lon, i + 1, (j + 1) % lon));
+					// a strip touching a pole has one face per longitude
+					if (i > 0) {
+						out.write(a + "," + c + "," + b + "\n");
+					}
+					if (i < lat - 1) {
+						out.write(b + "," + c + "," + d + "\n");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Vertex index of a point of the sphere
+	 * 
+	 * @param lat number of latitude strips
+	 * @param lon number of longitude strips
+	 * @param i   latitude, 0 at the north pole, lat at the south pole
+	 * @param j   longitude
+	 * @return vertex index, the same for all longitudes of a pole
+	 */
+	private static int vertex(int lat, int lon, int i, int j) {
+		if (i == 0) {
+			return 0;
+		}
+		if (i == lat) {
+			return (lat - 1) * lon + 1;
+		}
+		return (i - 1) * lon + j + 1;
+	}
+
+	/**
+	 * Write a sphere to a temporary file, deleted on exit
+	 * 
+	 * @param faces target face count
+	 * @return the temporary file
+	 * @throws IOException when writing failed
+	 */
+	public static File tempSphere(int faces) throws IOException {
+		File file = File.createTempFile("sphere-" + faces + "-", ".txt");
+		file.deleteOnExit();
+		writeSphere(file, faces);
+		return file;
+	}
+
+	/**
+	 * Sparse vertex id of a vertex index
+	 * 
+	 * @param index vertex index
+	 * @return vertex id
+	 */
+	private static int id(int index) {
+		return index * 7 + 3;
+	}
+}
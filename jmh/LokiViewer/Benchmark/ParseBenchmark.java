@@ -0,0 +1,78 @@
+package LokiViewer.Benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+
+/**
+ * JMH benchmark of Object3D.parse on generated spheres of increasing size. The
+ * file size is printed once per fork, to turn the time per parse into a
+ * throughput.
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	/**
+	 * Face count of the parsed sphere
+	 */
+	@Param({ "10000", "100000", "1000000" })
+	private int faces;
+
+	/**
+	 * The generated model file
+	 */
+	private File file;
+
+	/**
+	 * Generate the model file
+	 * 
+	 * @throws IOException when writing failed
+	 */
+	@Setup
+	public void generate() throws IOException {
+		file = MeshGenerator.tempSphere(faces);
+		System.out.println("file size: " + file.length() + " bytes");
+	}
+
+	/**
+	 * Delete the model file
+	 */
+	@TearDown
+	public void delete() {
+		file.delete();
+	}
+
+	/**
+	 * Parse the model file
+	 * 
+	 * @return the parsed object
+	 * @throws ObjectParseException when parsing failed
+	 */
+	@Benchmark
+	public Object3D parse() throws ObjectParseException {
+		return Object3D.parse(file);
+	}
+}
@@ -0,0 +1,114 @@
+package LokiViewer.Benchmark;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import LokiViewer.Object.DepthSorter;
+import LokiViewer.Object.FaceOrderGraph;
+import LokiViewer.Object.Mesh;
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+
+/**
+ * JMH benchmark of the two sorts used by Object3D.draw: the naive depth sort,
+ * from scratch and after a one-degree rotation, and the topological sort
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+	/**
+	 * Face count of the sorted sphere
+	 */
+	@Param({ "100000" })
+	private int faces;
+
+	/**
+	 * The sorted object, rescaled and rotated a bit
+	 */
+	private Object3D object;
+	/**
+	 * The mesh of the object
+	 */
+	private Mesh mesh;
+	/**
+	 * Sorter keeping the order from one rotation to the next
+	 */
+	private DepthSorter sorter;
+	/**
+	 * Angle of the next rotation, negated after each rotation
+	 */
+	private double angle = 1;
+
+	/**
+	 * Generate, parse and prepare the object
+	 * 
+	 * @throws IOException          when writing the model failed
+	 * @throws ObjectParseException when parsing the model failed
+	 */
+	@Setup
+	public void prepare() throws IOException, ObjectParseException {
+		var file = MeshGenerator.tempSphere(faces);
+		object = Object3D.parse(file);
+		file.delete();
+		FaceOrderBenchmark.prepare(object, new Dimension(800, 800));
+		mesh = object.getMesh();
+		sorter = new DepthSorter(mesh);
+	}
+
+	/**
+	 * Sort the faces by depth with a new sorter
+	 * 
+	 * @return the order
+	 */
+	@Benchmark
+	public int[] naiveSort() {
+		return new DepthSorter(mesh).sort();
+	}
+
+	/**
+	 * Rotate the object by one degree back and forth and repair the previous
+	 * order, as the viewer does frame after frame. The rotation is included.
+	 * 
+	 * @return the order
+	 */
+	@Benchmark
+	public int[] naiveSortAfterRotation() {
+		object.generateRotateOrigin();
+		object.rotate(angle, angle);
+		object.updateVertex();
+		object.removeRotateOrigin();
+		angle = -angle;
+		return sorter.sort();
+	}
+
+	/**
+	 * Sort the faces by the graph of overlapping faces
+	 * 
+	 * @return the order
+	 */
+	@Benchmark
+	public int[] topologicalSort() {
+		return new FaceOrderGraph(mesh, ForkJoinPool.commonPool()).sort();
+	}
+}
@@ -0,0 +1,144 @@
+package LokiViewer.Benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import LokiViewer.Object.Mesh;
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+import LokiViewer.Object.RotationMatrix;
+import LokiViewer.Object.Vertex;
+import LokiViewer.Object.ViewTransform;
+
+/**
+ * JMH benchmark of rotating all vertices of a sphere: one Vertex at a time with
+ * RotationMatrix.rotate, which allocates per vertex, and as a batch with the
+ * scalar loop and with the Vector API. The forked JVM adds the
+ * jdk.incubator.vector module, see build.gradle, otherwise the batch falls back
+ * to the scalar loop.
+ * 
+ * @author Renhao Lu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+	/**
+	 * Vertex count of the sphere, about half its face count
+	 */
+	@Param({ "1000000" })
+	private int vertices;
+
+	/**
+	 * The mesh storing the vertices
+	 */
+	private Mesh mesh;
+	/**
+	 * Packed visual coordinates of the vertices
+	 */
+	private double[] src;
+	/**
+	 * Packed coordinates to write the rotated vertices in
+	 */
+	private double[] dst;
+	/**
+	 * The rotation
+	 */
+	private RotationMatrix matrix;
+	/**
+	 * Rotation origin
+	 */
+	private double[] origin;
+	/**
+	 * The rotation as a batch transform
+	 */
+	private ViewTransform transform;
+
+	/**
+	 * Generate and parse the sphere, and check that the vector and the scalar
+	 * batch give the same coordinates
+	 * 
+	 * @throws IOException          when writing the model failed
+	 * @throws ObjectParseException when parsing the model failed
+	 */
+	@Setup
+	public void prepare() throws IOException, ObjectParseException {
+		var file = MeshGenerator.tempSphere(2 * vertices);
+		mesh = Object3D.parse(file).getMesh();
+		file.delete();
+		int n = mesh.getVertexCount();
+		src = new double[3 * n];
+		for (int v = 0; v < n; v++) {
+			for (int k = 0; k < 3; k++) {
+				src[3 * v + k] = mesh.getVisualCoord(v, k);
+			}
+		}
+		dst = new double[3 * n];
+		matrix = new RotationMatrix(1, 1);
+		origin = new double[] { 0.1, 0.2, 0.3 };
+		transform = new ViewTransform();
+		transform.rotate(transform, matrix, origin);
+		transform.applyScalar(src, dst, 0, n);
+		double[] scalar = dst.clone();
+		transform.apply(src, dst, 0, n);
+		if (!Arrays.equals(scalar, dst)) {
+			throw new IllegalStateException("vector and scalar batches differ");
+		}
+		System.out.println("vertices: " + n + ", vectorized: " + ViewTransform.isVectorized());
+	}
+
+	/**
+	 * Rotate every vertex as the viewer did before the batch transform: a Vertex
+	 * and its coordinates are created per vertex, and rotated one by one
+	 * 
+	 * @return the rotated coordinates
+	 */
+	@Benchmark
+	public double[] rotatePerVertex() {
+		for (int v = 0; v < mesh.getVertexCount(); v++) {
+			double[] rotated = matrix.rotate(new Vertex(mesh, v).getVisualCoord(), origin);
+			System.arraycopy(rotated, 0, dst, 3 * v, 3);
+		}
+		return dst;
+	}
+
+	/**
+	 * Rotate all vertices with the scalar loop
+	 * 
+	 * @return the rotated coordinates
+	 */
+	@Benchmark
+	public double[] rotateBatchScalar() {
+		transform.applyScalar(src, dst, 0, mesh.getVertexCount());
+		return dst;
+	}
+
+	/**
+	 * Rotate all vertices with the Vector API, or the scalar loop if it is not
+	 * available
+	 * 
+	 * @return the rotated coordinates
+	 */
+	@Benchmark
+	public double[] rotateBatch() {
+		transform.apply(src, dst, 0, mesh.getVertexCount());
+		return dst;
+	}
+}
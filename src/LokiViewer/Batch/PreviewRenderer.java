@@ -0,0 +1,319 @@
+package LokiViewer.Batch;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import LokiViewer.Object.Object3D;
+import LokiViewer.Object.ObjectParseException;
+import LokiViewer.Object.RenderMode;
+
+/**
+ * Render previews of model files to PNG images without a window, e.g. in
+ * nightly jobs. Every model is parsed, fitted to the image as in the viewer,
+ * rotated, and drawn with the chosen render mode. The files are rendered
+ * concurrently by a fixed number of workers; each worker parses its file on its
+ * own thread, so that the workers do not compete for the parser's pool. At the
+ * end the throughput and the per-file times are printed.
+ * <p>
+ * Usage: PreviewRenderer [options] input... output-directory, where each input
+ * is a model file or a directory of model files. Options:
+ * <ul>
+ * <li>-size WIDTHxHEIGHT: image size, 800x800 by default</li>
+ * <li>-rotate X,Y: rotation in degrees, as by a mouse drag of X to the right
+ * and Y upward</li>
+ * <li>-mode naive|topological|zbuffer|bsp: render mode, naive by default; the
+ * BSP tree is built before drawing</li>
+ * <li>-threads N: number of workers, the number of processors by default</li>
+ * <li>-suffix SUFFIX: only render the files of the directories whose name ends
+ * with SUFFIX</li>
+ * <li>-cull: cull hidden faces</li>
+ * <li>-faces: draw the faces only, without the vertices and edges</li>
+ * <li>-single: store the coordinates in single precision, see Mesh</li>
+ * <li>-weld TOLERANCE: weld the vertices within TOLERANCE times the diagonal
+ * of the bounding box, see Object3D.weldVertices</li>
+ * </ul>
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class PreviewRenderer {
+	/**
+	 * Files of the directories always skipped: our images and binary caches
+	 */
+	private static final String[] skippedSuffixes = { ".png", ".lokimesh" };
+
+	/**
+	 * Image size
+	 */
+	private Dimension size = new Dimension(800, 800);
+	/**
+	 * Rotation in degrees, x and y components, or null for none
+	 */
+	private double[] rotation;
+	/**
+	 * Render mode of the faces
+	 */
+	private RenderMode renderMode = RenderMode.NAIVE_Z_SORTING;
+	/**
+	 * Whether to cull hidden faces
+	 */
+	private boolean cullFaces;
+	/**
+	 * Whether to draw the vertices and edges
+	 */
+	private boolean drawVertexAndEdge = true;
+	/**
+	 * Whether to store the coordinates in single precision
+	 */
+	private boolean singlePrecision;
+	/**
+	 * Tolerance to weld the vertices with, 0 to not weld
+	 */
+	private double weldTolerance;
+
+	/**
+	 * Main method
+	 * 
+	 * @param args options, inputs and output directory, see the class comment
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		var renderer = new PreviewRenderer();
+		int threads = Runtime.getRuntime().availableProcessors();
+		String suffix = "";
+		var inputs = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "-size" -> {
+					String[] s = args[++i].split("x");
+					renderer.size = new Dimension(Integer.parseInt(s[0]), Integer.parseInt(s[1]));
+				}
+				case "-rotate" -> {
+					String[] s = args[++i].split(",");
+					renderer.rotation = new double[] { Double.parseDouble(s[0]), Double.parseDouble(s[1]) };
+				}
+				case "-mode" -> renderer.renderMode = parseMode(args[++i]);
+				case "-threads" -> threads = Integer.parseInt(args[++i]);
+				case "-suffix" -> suffix = args[++i];
+				case "-cull" -> renderer.cullFaces = true;
+				case "-faces" -> renderer.drawVertexAndEdge = false;
+				case "-single" -> renderer.singlePrecision = true;
+				case "-weld" -> renderer.weldTolerance = Double.parseDouble(args[++i]);
+				default -> inputs.add(new File(args[i]));
+				}
+			}
+			if (inputs.size() < 2 || threads < 1 || renderer.size.width <= 0 || renderer.size.height <= 0
+					|| !(renderer.weldTolerance >= 0)) {
+				throw new IllegalArgumentException();
+			}
+		} catch (RuntimeException e) {
+			System.err.println("Usage: PreviewRenderer [-size WIDTHxHEIGHT] [-rotate X,Y]"
+					+ " [-mode naive|topological|zbuffer|bsp] [-threads N] [-suffix SUFFIX] [-cull] [-faces]"
+					+ " [-single] [-weld TOLERANCE] input... output-directory");
+			System.exit(2);
+		}
+
+		File outputDir = inputs.remove(inputs.size() - 1);
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			System.err.println("Cannot create " + outputDir);
+			System.exit(1);
+		}
+		var models = listModels(inputs, suffix);
+		int failed = renderer.renderAll(models, outputDir, threads);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Parse a render mode option
+	 * 
+	 * @param name naive, topological, zbuffer or bsp
+	 * @return the render mode
+	 */
+	private static RenderMode parseMode(String name) {
+		return switch (name) {
+		case "naive" -> RenderMode.NAIVE_Z_SORTING;
+		case "topological" -> RenderMode.TOPOLOGICAL_Z_SORTING;
+		case "zbuffer" -> RenderMode.Z_BUFFER;
+		case "bsp" -> RenderMode.BSP_TREE;
+		default -> throw new IllegalArgumentException(name);
+		};
+	}
+
+	/**
+	 * List the model files of the inputs, the files of a directory in name order
+	 * 
+	 * @param inputs model files and directories
+	 * @param suffix suffix of the names of the files taken from the directories
+	 * @return model files
+	 */
+	private static List<File> listModels(List<File> inputs, String suffix) {
+		var models = new ArrayList<File>();
+		for (File input : inputs) {
+			File[] files = input.listFiles();
+			if (files == null) {
+				models.add(input);
+				continue;
+			}
+			Arrays.sort(files);
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(suffix) && !name.startsWith(".")
+						&& Arrays.stream(skippedSuffixes).noneMatch(name::endsWith)) {
+					models.add(file);
+				}
+			}
+		}
+		return models;
+	}
+
+	/**
+	 * Render model files concurrently, and print the failures, the throughput and
+	 * the per-file times
+	 * 
+	 * @param models    model files
+	 * @param outputDir directory of the images
+	 * @param threads   number of workers
+	 * @return number of files that failed
+	 */
+	public int renderAll(List<File> models, File outputDir, int threads) {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		var done = new ExecutorCompletionService<Long>(workers);
+		// a worker parses sequentially, unless it is the only one
+		var pool = threads == 1 ? ForkJoinPool.commonPool() : null;
+		long start = System.nanoTime();
+		for (File model : models) {
+			done.submit(() -> render(model, new File(outputDir, imageName(model)), pool));
+		}
+		workers.shutdown();
+
+		long[] nanos = new long[models.size()];
+		int rendered = 0;
+		int failed = 0;
+		for (int i = 0; i < models.size(); i++) {
+			try {
+				nanos[rendered++] = done.take().get();
+			} catch (ExecutionException e) {
+				rendered--;
+				failed++;
+				System.err.println(e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				workers.shutdownNow();
+				break;
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Arrays.sort(nanos, 0, rendered);
+		System.out.printf("%d files rendered, %d failed, in %.2f s with %d threads: %.2f files/s%n", rendered, failed,
+				seconds, threads, rendered / seconds);
+		if (rendered > 0) {
+			System.out.printf("per file: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+					percentile(nanos, rendered, 0.5) / 1e6, percentile(nanos, rendered, 0.99) / 1e6,
+					nanos[rendered - 1] / 1e6);
+		}
+		return failed;
+	}
+
+	/**
+	 * Get a percentile of sorted values, by the nearest rank
+	 * 
+	 * @param sorted values, ascending
+	 * @param count  number of values
+	 * @param p      fraction of the values at or below the percentile
+	 * @return the percentile
+	 */
+	private static long percentile(long[] sorted, int count, double p) {
+		int rank = (int) Math.ceil(p * count);
+		return sorted[Integer.max(rank, 1) - 1];
+	}
+
+	/**
+	 * Get the image name of a model file, the model name with the extension
+	 * replaced by .png
+	 * 
+	 * @param model model file
+	 * @return image file name
+	 */
+	private static String imageName(File model) {
+		String name = model.getName();
+		int dot = name.lastIndexOf('.');
+		return (dot > 0 ? name.substring(0, dot) : name) + ".png";
+	}
+
+	/**
+	 * Render a model file to a PNG image
+	 * 
+	 * @param model model file
+	 * @param image image file to write
+	 * @param pool  the pool to parse in, or null to parse on the current thread
+	 * @return time spent, in nanoseconds
+	 * @throws IOException when the model cannot be parsed or the image cannot be
+	 *                     written
+	 */
+	public long render(File model, File image, ForkJoinPool pool) throws IOException {
+		long start = System.nanoTime();
+		Object3D object;
+		try {
+			object = Object3D.parse(model, pool, null, singlePrecision);
+			if (weldTolerance > 0) {
+				object = object.weldVertices(weldTolerance);
+			}
+		} catch (ObjectParseException e) {
+			throw new IOException(model + ": parse failed"
+					+ (e.getLineNumber() > 0 ? " at line " + e.getLineNumber() : ""), e);
+		}
+		if (renderMode == RenderMode.BSP_TREE) {
+			try {
+				object.awaitBspTree();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(model + ": interrupted");
+			}
+		}
+		object.setRenderMode(renderMode);
+		object.setCullFaces(cullFaces);
+		object.setDrawVertexAndEdge(drawVertexAndEdge);
+
+		var img = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+		var g = img.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, size.width, size.height);
+		if (rotation != null && (rotation[0] != 0 || rotation[1] != 0)) {
+			// fit to the image first, so that the rotation origin is the one of the
+			// viewer
+			object.setDrawFace(false);
+			object.setDrawVertexAndEdge(false);
+			object.draw(g, size, true);
+			object.generateRotateOrigin();
+			object.rotate(rotation[0], rotation[1]);
+			object.updateVertex();
+			object.removeRotateOrigin();
+			object.setDrawFace(true);
+			object.setDrawVertexAndEdge(drawVertexAndEdge);
+			object.draw(g, size, false);
+		} else {
+			object.draw(g, size, true);
+		}
+		g.dispose();
+		if (!ImageIO.write(img, "png", image)) {
+			throw new IOException(image + ": no PNG writer");
+		}
+		return System.nanoTime() - start;
+	}
+}
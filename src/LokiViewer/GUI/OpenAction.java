@@ -2,12 +2,21 @@ package LokiViewer.GUI;
 
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.JFileChooser;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
+import LokiViewer.Object.LoadListener;
+import LokiViewer.Object.ModelCache;
 import LokiViewer.Object.Object3D;
 import LokiViewer.Object.ObjectParseException;
+import LokiViewer.Object.RenderMode;
 
 /**
  * The action of opening a new model file
@@ -32,6 +41,21 @@ public class OpenAction extends AbstractAction {
 	 */
 	private ViewerFrame parent;
 
+	/**
+	 * Models opened recently, so that switching back to one does not load it again
+	 */
+	private ModelCache modelCache = new ModelCache();
+
+	/**
+	 * Whether models are loaded with single precision coordinates
+	 */
+	private boolean singlePrecision;
+
+	/**
+	 * Tolerance the vertices of the models are welded with, 0 to not weld
+	 */
+	private double weldTolerance;
+
 	/**
 	 * Initialize the private members
 	 * 
@@ -44,24 +68,207 @@ public class OpenAction extends AbstractAction {
 	}
 
 	/**
-	 * get File object from the file chooser window and open parse with
-	 * Object3D.parse(file)
+	 * Choose the precision of the coordinates of the models opened from now on
+	 * 
+	 * @param singlePrecision true to store the coordinates in single precision,
+	 *                        halving their memory
+	 */
+	public void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Choose whether the vertices of the models opened from now on are welded
+	 * 
+	 * @param weldTolerance tolerance relative to the diagonal of the bounding box,
+	 *                      0 to not weld, see Object3D.weldVertices
+	 */
+	public void setWeldTolerance(double weldTolerance) {
+		this.weldTolerance = weldTolerance;
+	}
+
+	/**
+	 * get File object from the file chooser window and open it in the background
+	 * with a Loader. The action is disabled until loading is done.
 	 */
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		System.out.println("Open action performed");
 		int result = chooser.showOpenDialog(parent);
 		if (result == JFileChooser.APPROVE_OPTION) {
-			File file = chooser.getSelectedFile();
-			try {
-				var object = Object3D.parse(file);
-				parent.setObject(object);
-			} catch (ObjectParseException e2) {
-				System.out.println("File parse failed");
-			}
+			setEnabled(false);
+			new Loader(chooser.getSelectedFile(), singlePrecision, weldTolerance).execute();
 		} else {
 			System.out.println("File not selected");
 		}
 	}
 
+	/**
+	 * Open a model file outside of the event dispatch thread: take it from the
+	 * model cache if it was opened recently, otherwise open it with
+	 * Object3D.open(file), which uses the binary cache when it is valid. A
+	 * progress monitor shows the bytes parsed and cancels loading. The partial
+	 * objects are shown as they are parsed: first the vertices, then the faces so
+	 * far. If loading is cancelled or fails, the previous object is shown again.
+	 * <p>
+	 * The cancel button is polled by a timer rather than on progress events, as
+	 * no progress is reported once the file is read, while the edges are found,
+	 * the cache file is written and the vertices are welded.
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private class Loader extends SwingWorker<Object3D, Object3D> implements LoadListener {
+		/**
+		 * Milliseconds between two polls of the cancel button
+		 */
+		private static final int cancelPollMillis = 100;
+		/**
+		 * Note of the progress window while the file is read
+		 */
+		private static final String readingNote = "Reading the file";
+		/**
+		 * Note of the progress window once the file is read
+		 */
+		private static final String buildingNote = "Building the object";
+		/**
+		 * The file to open
+		 */
+		private File file;
+		/**
+		 * Whether to load the coordinates in single precision
+		 */
+		private boolean singlePrecision;
+		/**
+		 * Tolerance to weld the vertices with, 0 to not weld
+		 */
+		private double weldTolerance;
+		/**
+		 * The object shown before loading
+		 */
+		private Object3D previous;
+		/**
+		 * Progress window with the cancel button, shown if loading takes a while
+		 */
+		private ProgressMonitor monitor;
+		/**
+		 * Timer polling the cancel button of the progress window
+		 */
+		private Timer cancelPoll;
+		/**
+		 * Whether the object was found in the model cache
+		 */
+		private boolean cached;
+
+		/**
+		 * Constructor, to call on the event dispatch thread
+		 * 
+		 * @param file            the file to open
+		 * @param singlePrecision whether to load the coordinates in single
+		 *                        precision
+		 * @param weldTolerance   tolerance to weld the vertices with, 0 to not weld
+		 */
+		Loader(File file, boolean singlePrecision, double weldTolerance) {
+			this.file = file;
+			this.singlePrecision = singlePrecision;
+			this.weldTolerance = weldTolerance;
+			this.previous = parent.getObject();
+			this.monitor = new ProgressMonitor(parent, "Loading " + file.getName(), readingNote, 0, 100);
+			monitor.setMillisToDecideToPopup(200);
+			addPropertyChangeListener(event -> {
+				if ("progress".equals(event.getPropertyName())) {
+					// the monitor closes itself at its maximum, keep it open until done
+					monitor.setProgress(Integer.min(getProgress(), 99));
+					if (getProgress() == 100) {
+						monitor.setNote(buildingNote);
+					}
+				}
+			});
+			cancelPoll = new Timer(cancelPollMillis, event -> {
+				if (monitor.isCanceled()) {
+					cancel(false);
+				}
+			});
+			cancelPoll.start();
+		}
+
+		@Override
+		protected Object3D doInBackground() throws ObjectParseException {
+			var object = modelCache.get(file, singlePrecision, weldTolerance);
+			cached = object != null;
+			if (!cached) {
+				object = Object3D.open(file, this, singlePrecision, weldTolerance);
+				if (!isCancelled()) {
+					modelCache.put(file, object);
+				}
+			}
+			return object;
+		}
+
+		@Override
+		public void progress(long bytesRead, long totalBytes) {
+			setProgress((int) (100 * bytesRead / Long.max(1, totalBytes)));
+		}
+
+		@Override
+		public void preview(Object3D partial) {
+			publish(partial);
+		}
+
+		@Override
+		protected void process(List<Object3D> partials) {
+			if (!isCancelled()) {
+				parent.setObject(partials.get(partials.size() - 1));
+			}
+		}
+
+		@Override
+		protected void done() {
+			cancelPoll.stop();
+			monitor.close();
+			setEnabled(true);
+			try {
+				var object = get();
+				if (cached) {
+					System.out.println("File found in the model cache");
+				} else {
+					System.out.printf("File loaded%s: %.1f MB in %.1f ms (%.1f MB/s)%n",
+							object.isLoadedFromCache() ? " from cache" : "", object.getLoadBytes() / 1e6,
+							object.getLoadNanos() / 1e6, object.getLoadThroughput());
+				}
+				if (singlePrecision) {
+					// both the original and the visual coordinates are halved, and the
+					// parsers never hold a double precision copy, so the saving is the
+					// same at the loading peak as once loaded
+					int savedPerVertex = 2 * 3 * (Double.BYTES - Float.BYTES);
+					System.out.printf("Single precision geometry: %.1f MB saved, at peak and once loaded%n",
+							savedPerVertex * object.getMesh().getVertexCount() / 1e6);
+				}
+				System.out.printf("Model cache: %d hits, %d misses, %d evictions, %.1f of %.1f MB%n",
+						modelCache.getHits(), modelCache.getMisses(), modelCache.getEvictions(),
+						modelCache.getBytes() / 1e6, modelCache.getMaxBytes() / 1e6);
+				parent.setObject(object);
+				object.buildLevelsOfDetail();
+				if (parent.getRenderMode() == RenderMode.BSP_TREE) {
+					// otherwise the tree is built once BSP mode is selected
+					object.buildBspTree();
+				}
+				return;
+			} catch (CancellationException e) {
+				System.out.println("File loading cancelled");
+			} catch (ExecutionException e) {
+				var cause = e.getCause();
+				if (cause instanceof CancellationException) {
+					System.out.println("File loading cancelled");
+				} else if (cause instanceof ObjectParseException e2 && e2.getLineNumber() > 0) {
+					System.out.println("File parse failed at line " + e2.getLineNumber());
+				} else {
+					System.out.println("File parse failed");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			parent.setObject(previous);
+		}
+	}
 }
@@ -0,0 +1,347 @@
+package LokiViewer.GUI;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+import javax.swing.JComponent;
+
+import LokiViewer.Object.FrameStats;
+import LokiViewer.Object.Object3D;
+
+/**
+ * The thread that owns the object while it is shown. Every change to the object
+ * (rotation, display options, a new object) is posted from the event dispatch
+ * thread as a task, and the render thread runs the tasks in order, draws a
+ * frame into a back buffer, swaps it with the front buffer, and asks the
+ * component to repaint. Painting then only copies the front buffer, so the
+ * window stays responsive whatever the size of the mesh. Drag rotations are
+ * coalesced: while a rotation is waiting, a newer one replaces its angles, so
+ * only the latest rotation is rendered.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class RenderThread extends Thread {
+	/**
+	 * The component showing the frames
+	 */
+	private JComponent component;
+
+	/**
+	 * Lock of the task queue and the frame request
+	 */
+	private final Object lock = new Object();
+	/**
+	 * Tasks waiting to be run on the render thread
+	 */
+	private ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+	/**
+	 * Whether a new frame is requested
+	 */
+	private boolean frameRequested;
+	/**
+	 * Whether the next frame rescales the object to the window
+	 */
+	private boolean rescaleRequested;
+	/**
+	 * Window dimension of the next frame
+	 */
+	private Dimension size = new Dimension();
+	/**
+	 * Number of drag rotations replaced by a newer one before being rendered
+	 */
+	private long coalescedDrags;
+
+	/**
+	 * The object to draw, only used on the render thread
+	 */
+	private Object3D object;
+	/**
+	 * The buffer the render thread draws in
+	 */
+	private BufferedImage back;
+
+	/**
+	 * Lock of the front buffer
+	 */
+	private final Object frameLock = new Object();
+	/**
+	 * The last finished frame, painted by the component
+	 */
+	private BufferedImage front;
+	/**
+	 * Number of frames rendered
+	 */
+	private long frameCount;
+	/**
+	 * Times the last frames were finished, a ring indexed by frame count
+	 */
+	private long[] frameTimes = new long[256];
+	/**
+	 * Statistics of the last finished frame of the object
+	 */
+	private FrameStats frameStats = new FrameStats();
+
+	/**
+	 * A drag rotation, the angles of which are replaced while it waits
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private class DragTask implements Runnable {
+		/**
+		 * Angle in x component
+		 */
+		private double x;
+		/**
+		 * Angle in y component
+		 */
+		private double y;
+
+		@Override
+		public void run() {
+			if (object != null) {
+				object.rotate(x, y);
+			}
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param component the component showing the frames
+	 */
+	RenderThread(JComponent component) {
+		super("LokiViewer render");
+		this.component = component;
+		setDaemon(true);
+	}
+
+	/**
+	 * Post a task on the object, skipped if there is no object, and request a
+	 * frame
+	 * 
+	 * @param task the task
+	 */
+	void post(Consumer<Object3D> task) {
+		synchronized (lock) {
+			tasks.add(() -> {
+				if (object != null) {
+					task.accept(object);
+				}
+			});
+			frameRequested = true;
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Post a drag rotation. If the last waiting task is a drag rotation as well,
+	 * its angles are replaced instead.
+	 * 
+	 * @param x angle in x component
+	 * @param y angle in y component
+	 */
+	void postDrag(double x, double y) {
+		synchronized (lock) {
+			DragTask drag;
+			if (tasks.peekLast() instanceof DragTask) {
+				drag = (DragTask) tasks.peekLast();
+				coalescedDrags++;
+			} else {
+				drag = new DragTask();
+				tasks.add(drag);
+			}
+			drag.x = x;
+			drag.y = y;
+			frameRequested = true;
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Replace the object to draw, which is then rescaled to the window. The
+	 * replaced object drops its render caches, e.g. its z-buffer, so that an
+	 * object kept in the model cache only holds its geometry.
+	 * 
+	 * @param object3D the new object, or null
+	 * @param d        window dimension
+	 */
+	void setObject(Object3D object3D, Dimension d) {
+		synchronized (lock) {
+			tasks.add(() -> {
+				if (object != null && object != object3D) {
+					object.releaseRenderCaches();
+				}
+				object = object3D;
+			});
+		}
+		requestFrame(d, true);
+	}
+
+	/**
+	 * Request a new frame
+	 * 
+	 * @param d       window dimension
+	 * @param rescale whether to rescale the object to the window
+	 */
+	void requestFrame(Dimension d, boolean rescale) {
+		synchronized (lock) {
+			size = new Dimension(d);
+			rescaleRequested |= rescale;
+			frameRequested = true;
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Paint the last finished frame
+	 * 
+	 * @param g the Graphics context in which to paint
+	 */
+	void paintFrame(Graphics g) {
+		synchronized (frameLock) {
+			if (front != null) {
+				g.drawImage(front, 0, 0, null);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of frames rendered
+	 * 
+	 * @return frame count
+	 */
+	long getFrameCount() {
+		synchronized (frameLock) {
+			return frameCount;
+		}
+	}
+
+	/**
+	 * Get the number of frames finished in the last second
+	 * 
+	 * @return frames per second
+	 */
+	int getFramesPerSecond() {
+		long since = System.nanoTime() - 1000000000L;
+		synchronized (frameLock) {
+			int frames = 0;
+			while (frames < frameTimes.length && frames < frameCount
+					&& frameTimes[(int) ((frameCount - 1 - frames) % frameTimes.length)] - since > 0) {
+				frames++;
+			}
+			return frames;
+		}
+	}
+
+	/**
+	 * Copy the statistics of the last finished frame
+	 * 
+	 * @param stats statistics to copy into
+	 */
+	void copyFrameStats(FrameStats stats) {
+		synchronized (frameLock) {
+			stats.set(frameStats);
+		}
+	}
+
+	/**
+	 * Get the number of drag rotations that were never rendered because a newer
+	 * one replaced them
+	 * 
+	 * @return coalesced drag count
+	 */
+	long getCoalescedDrags() {
+		synchronized (lock) {
+			return coalescedDrags;
+		}
+	}
+
+	/**
+	 * Wait for tasks or frame requests, run the tasks and render a frame
+	 */
+	@Override
+	public void run() {
+		var batch = new ArrayDeque<Runnable>();
+		while (true) {
+			Dimension d;
+			boolean rescale;
+			synchronized (lock) {
+				while (!frameRequested) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				batch.addAll(tasks);
+				tasks.clear();
+				d = size;
+				rescale = rescaleRequested;
+				frameRequested = false;
+				rescaleRequested = false;
+			}
+			// a failing task is reported and skipped, the tasks after it still run
+			while (!batch.isEmpty()) {
+				try {
+					batch.poll().run();
+				} catch (RuntimeException e) {
+					System.out.println("Render thread task failed: " + e);
+				}
+			}
+			try {
+				if (!render(d, rescale) && rescale) {
+					// keep the rescale for when the window has a size
+					synchronized (lock) {
+						rescaleRequested = true;
+					}
+				}
+			} catch (RuntimeException e) {
+				System.out.println("Frame not rendered: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Draw the object into the back buffer, then make it the front buffer and
+	 * repaint the component
+	 * 
+	 * @param d       window dimension
+	 * @param rescale whether to rescale the object to the window
+	 * @return false if the window is empty and nothing is drawn
+	 */
+	private boolean render(Dimension d, boolean rescale) {
+		if (d.width <= 0 || d.height <= 0) {
+			return false;
+		}
+		if (back == null || back.getWidth() != d.width || back.getHeight() != d.height) {
+			back = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_ARGB);
+		}
+		var g = back.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, d.width, d.height);
+		g.setComposite(AlphaComposite.SrcOver);
+		if (object != null) {
+			object.draw(g, d, rescale);
+		}
+		g.dispose();
+
+		synchronized (frameLock) {
+			var frame = front;
+			front = back;
+			back = frame;
+			if (object != null) {
+				frameStats.set(object.getFrameStats());
+			}
+			frameTimes[(int) (frameCount % frameTimes.length)] = System.nanoTime();
+			frameCount++;
+		}
+		component.repaint();
+		return true;
+	}
+}
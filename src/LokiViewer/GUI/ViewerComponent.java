@@ -1,5 +1,7 @@
 package LokiViewer.GUI;
 
+import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.event.ComponentAdapter;
@@ -7,8 +9,14 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.util.ArrayList;
+import java.util.function.Consumer;
 
 import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import LokiViewer.Object.FrameStats;
+import LokiViewer.Object.Object3D;
 
 /**
  * The JComponent to draw the object
@@ -26,9 +34,9 @@ public class ViewerComponent extends JComponent {
 	private ViewerFrame parentFrame;
 
 	/**
-	 * Flag to mark if rescaling is needed
+	 * The thread that updates and draws the object
 	 */
-	private boolean initial;
+	private RenderThread renderThread;
 
 	/**
 	 * When dragging the object, mark the start point of mouse on screen
@@ -36,14 +44,29 @@ public class ViewerComponent extends JComponent {
 	private Point startPoint;
 
 	/**
-	 * Initialize parent frame, initial flag, and startpoint. Add mouse listener and
-	 * window resize listener.
+	 * Whether the frame rate and the stage timings are shown over the frame
+	 */
+	private boolean showFrameStats;
+	/**
+	 * Statistics of the last frame, copied from the render thread when painted
+	 */
+	private FrameStats frameStats = new FrameStats();
+	/**
+	 * Repaints the statistics every second while they are shown, so that the
+	 * frame rate falls when no frame is drawn
+	 */
+	private Timer statsTimer = new Timer(1000, e -> repaint());
+
+	/**
+	 * Initialize parent frame, render thread, and startpoint. Add mouse listener
+	 * and window resize listener.
 	 * 
 	 * @param parentFrame parent viewer frame
 	 */
 	public ViewerComponent(ViewerFrame parentFrame) {
 		this.parentFrame = parentFrame;
-		initial = true;
+		renderThread = new RenderThread(this);
+		renderThread.start();
 		startPoint = null;
 		addMouseListener(new MouseHandler());
 		addMouseMotionListener(new MouseMotionHandler());
@@ -52,7 +75,6 @@ public class ViewerComponent extends JComponent {
 			@Override
 			public void componentResized(ComponentEvent e) {
 				setInitial();
-				repaint();
 			}
 
 			@Override
@@ -62,29 +84,98 @@ public class ViewerComponent extends JComponent {
 	}
 
 	/**
-	 * Paint function of the component. If initial flag is set, rescale and draw the
-	 * object to fill half of the window. Otherwise, just draw the object
+	 * Paint function of the component. The object is drawn by the render thread,
+	 * here only the last finished frame is copied to the window.
 	 */
 	@Override
 	public void paint(Graphics g) {
-		if (parentFrame.getObject() != null) {
-			if (initial) {
-				System.out.println("repaint");
-				parentFrame.getObject().draw(g, this.getSize(), true);
-				initial = false;
-			} else {
-				parentFrame.getObject().draw(g, this.getSize(), false);
-			}
+		renderThread.paintFrame(g);
+		if (showFrameStats) {
+			paintFrameStats(g);
+		}
+	}
+
+	/**
+	 * Paint the frame rate, the time of the last frame and of each of its stages,
+	 * and the time of loading the object, in the top left corner
+	 * 
+	 * @param g the Graphics context in which to paint
+	 */
+	private void paintFrameStats(Graphics g) {
+		renderThread.copyFrameStats(frameStats);
+		var lines = new ArrayList<String>();
+		lines.add(String.format("%d fps, frame %.1f ms", renderThread.getFramesPerSecond(),
+				frameStats.getFrameNanos() / 1e6));
+		if (frameStats.getRenderMode() != null) {
+			lines.add(String.format("%s, %d faces", frameStats.getRenderMode(), frameStats.getFaces()));
+		}
+		for (var stage : FrameStats.Stage.values()) {
+			lines.add(String.format("%-24s %8.2f ms %9d", stage, frameStats.getNanos(stage) / 1e6,
+					frameStats.getCount(stage)));
+		}
+		if (frameStats.getComparisons() > 0) {
+			lines.add(String.format("%-24s %21d", "comparisons", frameStats.getComparisons()));
+		}
+		var object = parentFrame.getObject();
+		if (object != null) {
+			lines.add(String.format("%-24s %8.2f ms %9s", object.isLoadedFromCache() ? "load cache" : "parse",
+					object.getLoadNanos() / 1e6, ""));
+		}
+
+		g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		var metrics = g.getFontMetrics();
+		int width = 0;
+		for (String line : lines) {
+			width = Integer.max(width, metrics.stringWidth(line));
+		}
+		int lineHeight = metrics.getHeight();
+		g.setColor(new Color(255, 255, 255, 200));
+		g.fillRect(4, 4, width + 8, lines.size() * lineHeight + 8);
+		g.setColor(Color.BLACK);
+		for (int i = 0; i < lines.size(); i++) {
+			g.drawString(lines.get(i), 8, 8 + i * lineHeight + metrics.getAscent());
+		}
+	}
+
+	/**
+	 * Show or hide the frame rate and the stage timings over the frame
+	 * 
+	 * @param flag target value
+	 */
+	public void setShowFrameStats(boolean flag) {
+		showFrameStats = flag;
+		if (flag) {
+			statsTimer.start();
 		} else {
-			initial = true;
+			statsTimer.stop();
 		}
+		repaint();
 	}
 
 	/**
-	 * set the initial flag to true, to rescale the object in the window
+	 * Request a frame that rescales the object to fill half of the window
 	 */
 	public void setInitial() {
-		initial = true;
+		renderThread.requestFrame(getSize(), true);
+	}
+
+	/**
+	 * Replace the object to draw, it is rescaled to the window
+	 * 
+	 * @param object3D the new object
+	 */
+	public void setObject(Object3D object3D) {
+		renderThread.setObject(object3D, getSize());
+	}
+
+	/**
+	 * Change the object on the render thread and draw a new frame. This is the
+	 * only way to change the object while it is shown.
+	 * 
+	 * @param task the change, skipped if there is no object
+	 */
+	public void update(Consumer<Object3D> task) {
+		renderThread.post(task);
 	}
 
 	/**
@@ -97,25 +188,32 @@ public class ViewerComponent extends JComponent {
 		/**
 		 * When mouse pressed, a rotation action starts. Remember the start point to
 		 * generate rotation angle and direction later. Meanwhile, generate a rotate
-		 * origin in object
+		 * origin in object, and let it draw a simplified level while dragged
 		 */
 		@Override
 		public void mousePressed(MouseEvent event) {
 			if (parentFrame.getObject() != null) {
-				parentFrame.getObject().generateRotateOrigin();
+				update(object -> {
+					object.generateRotateOrigin();
+					object.setInteractive(true);
+				});
 				startPoint = event.getPoint();
 			}
 		}
 
 		/**
 		 * When mouse released, the rotation action ends. Update the coordinates of each
-		 * vertex, and reset the start point and rotate origin.
+		 * vertex, and reset the start point and rotate origin. The object is drawn in
+		 * full detail again.
 		 */
 		@Override
 		public void mouseReleased(MouseEvent event) {
-			if (parentFrame.getObject() != null) {
-				parentFrame.getObject().updateVertex();
-				parentFrame.getObject().removeRotateOrigin();
+			if (startPoint != null) {
+				update(object -> {
+					object.updateVertex();
+					object.removeRotateOrigin();
+					object.setInteractive(false);
+				});
 				startPoint = null;
 			}
 		}
@@ -130,17 +228,17 @@ public class ViewerComponent extends JComponent {
 	private class MouseMotionHandler implements MouseMotionListener {
 		/**
 		 * When mouse dragged, calculate the rotation angle and direction according to
-		 * the difference between current mouse position and start point, pass it to
-		 * object to rotate, and repaint the object.
+		 * the difference between current mouse position and start point, and pass it
+		 * to the render thread, which rotates the object and draws it. Rotations not
+		 * rendered yet are replaced by the newest one.
 		 */
 		@Override
 		public void mouseDragged(MouseEvent e) {
 			if (startPoint != null) {
 				double x = e.getX();
 				double y = e.getY();
-				parentFrame.getObject().rotate((x - startPoint.x) * ViewerFrame.rotateFactor,
+				renderThread.postDrag((x - startPoint.x) * ViewerFrame.rotateFactor,
 						-(y - startPoint.y) * ViewerFrame.rotateFactor);
-				repaint();
 			}
 		}
 
@@ -12,6 +12,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JRadioButtonMenuItem;
 
 import LokiViewer.Object.Object3D;
+import LokiViewer.Object.RenderMode;
 
 /**
  * Main frame of the viewer, containing a simple menubar and a ViewerComponent
@@ -48,6 +49,10 @@ public class ViewerFrame extends JFrame {
 	 * The component to draw the Object on
 	 */
 	private ViewerComponent drawComponent;
+	/**
+	 * The render mode selected in the options menu
+	 */
+	private RenderMode renderMode = RenderMode.NAIVE_Z_SORTING;
 
 	/**
 	 * Initialize the window title and size and then initialize a simple menubar
@@ -64,6 +69,28 @@ public class ViewerFrame extends JFrame {
 
 		openMenu.add(openAction);
 
+		var singlePrecisionItem = new JCheckBoxMenuItem("single precision geometry");
+		singlePrecisionItem.setSelected(false);
+		singlePrecisionItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				openAction.setSinglePrecision(singlePrecisionItem.isSelected());
+			}
+		});
+
+		var weldItem = new JCheckBoxMenuItem("weld coincident vertices");
+		weldItem.setSelected(false);
+		weldItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				openAction.setWeldTolerance(weldItem.isSelected() ? Object3D.defaultWeldTolerance : 0);
+			}
+		});
+
+		openMenu.addSeparator();
+		openMenu.add(singlePrecisionItem);
+		openMenu.add(weldItem);
+
 		var viewMenu = new JMenu("View");
 
 		var showVertexAndEdgeItem = new JCheckBoxMenuItem("show vertices and edges");
@@ -72,12 +99,7 @@ public class ViewerFrame extends JFrame {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				boolean flag = showVertexAndEdgeItem.isSelected();
-				if (object3D != null) {
-					object3D.setDrawVertexAndEdge(flag);
-				}
-				if (drawComponent != null) {
-					drawComponent.repaint();
-				}
+				drawComponent.update(object -> object.setDrawVertexAndEdge(flag));
 			}
 		});
 
@@ -87,17 +109,23 @@ public class ViewerFrame extends JFrame {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				boolean flag = showFaceItem.isSelected();
-				if (object3D != null) {
-					object3D.setDrawFace(flag);
-				}
-				if (drawComponent != null) {
-					drawComponent.repaint();
-				}
+				drawComponent.update(object -> object.setDrawFace(flag));
+			}
+		});
+
+		var showFrameStatsItem = new JCheckBoxMenuItem("show frame statistics");
+		showFrameStatsItem.setSelected(false);
+		showFrameStatsItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				drawComponent.setShowFrameStats(showFrameStatsItem.isSelected());
 			}
 		});
 
 		viewMenu.add(showVertexAndEdgeItem);
 		viewMenu.add(showFaceItem);
+		viewMenu.addSeparator();
+		viewMenu.add(showFrameStatsItem);
 
 		var optionMenu = new JMenu("Options");
 
@@ -109,12 +137,10 @@ public class ViewerFrame extends JFrame {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				boolean flag = naiveZSorting.isSelected();
-				if (object3D != null) {
-					object3D.setPainterAlgo(!flag);
-				}
-				if (drawComponent != null) {
-					drawComponent.repaint();
+				if (flag) {
+					renderMode = RenderMode.NAIVE_Z_SORTING;
 				}
+				drawComponent.update(object -> object.setPainterAlgo(!flag));
 			}
 		});
 
@@ -124,20 +150,61 @@ public class ViewerFrame extends JFrame {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				boolean flag = topologicalSoring.isSelected();
-				if (object3D != null) {
-					object3D.setPainterAlgo(flag);
+				if (flag) {
+					renderMode = RenderMode.TOPOLOGICAL_Z_SORTING;
 				}
-				if (drawComponent != null) {
-					drawComponent.repaint();
+				drawComponent.update(object -> object.setPainterAlgo(flag));
+			}
+		});
+
+		var zBuffer = new JRadioButtonMenuItem("Z Buffer");
+		zBuffer.setSelected(false);
+		zBuffer.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (zBuffer.isSelected()) {
+					renderMode = RenderMode.Z_BUFFER;
+					drawComponent.update(object -> object.setRenderMode(RenderMode.Z_BUFFER));
+				}
+			}
+		});
+
+		var bspTree = new JRadioButtonMenuItem("BSP Tree");
+		bspTree.setSelected(false);
+		bspTree.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (bspTree.isSelected()) {
+					renderMode = RenderMode.BSP_TREE;
+					drawComponent.update(object -> {
+						object.setRenderMode(RenderMode.BSP_TREE);
+						object.buildBspTree();
+					});
 				}
 			}
 		});
 
 		group.add(naiveZSorting);
 		group.add(topologicalSoring);
+		group.add(zBuffer);
+		group.add(bspTree);
+
+		var cullFaceItem = new JCheckBoxMenuItem("Cull Hidden Faces");
+		cullFaceItem.setSelected(false);
+		cullFaceItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean flag = cullFaceItem.isSelected();
+				drawComponent.update(object -> object.setCullFaces(flag));
+			}
+		});
 
 		optionMenu.add(naiveZSorting);
 		optionMenu.add(topologicalSoring);
+		optionMenu.add(zBuffer);
+		optionMenu.add(bspTree);
+		optionMenu.addSeparator();
+		optionMenu.add(cullFaceItem);
 
 		var menuBar = new JMenuBar();
 
@@ -159,8 +226,16 @@ public class ViewerFrame extends JFrame {
 	 */
 	public void setObject(Object3D object3D) {
 		this.object3D = object3D;
-		this.drawComponent.setInitial();
-		this.drawComponent.repaint();
+		this.drawComponent.setObject(object3D);
+	}
+
+	/**
+	 * Get the render mode selected in the options menu
+	 * 
+	 * @return the selected render mode
+	 */
+	public RenderMode getRenderMode() {
+		return renderMode;
 	}
 
 	/**
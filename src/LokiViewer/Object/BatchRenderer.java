@@ -0,0 +1,185 @@
+package LokiViewer.Object;
+
+import java.awt.BasicStroke;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+import LokiViewer.GUI.ViewerFrame;
+
+/**
+ * Draw the faces, vertices and edges of a mesh with a few reused shapes, setting
+ * the color and the stroke only when they change. Nothing is created per face,
+ * vertex or edge.
+ * <p>
+ * The elements are still drawn one by one rather than merged into one path per
+ * color: Java2D draws a single line or triangle with its fast loops, but a path
+ * with thousands of parts goes through the general rasterizer, which is a
+ * hundred times slower. Faces are drawn in their rendering order, and the
+ * color is only set at the start of each run of faces of the same shade, which
+ * are common because the shade and the depth both follow the normal. Vertices
+ * are stamped from a dot drawn once in an image.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class BatchRenderer {
+	/**
+	 * Stroke of the edges
+	 */
+	private static final BasicStroke edgeStroke = new BasicStroke(ViewerFrame.edgeDrawSize);
+	/**
+	 * The vertex dot, created when first used
+	 */
+	private static BufferedImage vertexSprite;
+
+	/**
+	 * Triangle reused for every face. Java2D copies any other shape into a float
+	 * path before filling it, so a float path is filled without creating anything.
+	 */
+	private Path2D.Float triangle = new Path2D.Float(Path2D.WIND_EVEN_ODD, 4);
+	/**
+	 * Line reused for every edge
+	 */
+	private Line2D.Double line = new Line2D.Double();
+
+	/**
+	 * Fill faces in rendering order, setting the color once per run of faces of
+	 * the same shade
+	 * 
+	 * @param mesh  the mesh storing the faces
+	 * @param order rendering order, from far to near
+	 * @param count number of faces in order
+	 * @param g2    the Graphics context in which to paint
+	 * @param d     window dimension
+	 */
+	void drawFaces(Mesh mesh, int[] order, int count, Graphics2D g2, Dimension d) {
+		var cache = mesh.getFaceCache();
+		// the same window mapping as Face.getPolygon
+		double cx = d.width / 2;
+		double cy = d.height / 2;
+		int blue = -1;
+		for (int i = 0; i < count; i++) {
+			int f = order[i];
+			if (cache.getBlue(f) != blue) {
+				blue = cache.getBlue(f);
+				g2.setColor(Face.getColor(mesh, f));
+			}
+			triangle.reset();
+			for (int k = 0; k < 3; k++) {
+				int v = mesh.getFaceVertex(f, k);
+				// rounded like the int coordinates of Face.getPolygon
+				float x = Math.round(mesh.getVisualCoord(v, 0) + cx);
+				float y = Math.round(-mesh.getVisualCoord(v, 1) + cy);
+				if (k == 0) {
+					triangle.moveTo(x, y);
+				} else {
+					triangle.lineTo(x, y);
+				}
+			}
+			triangle.closePath();
+			g2.fill(triangle);
+		}
+	}
+
+	/**
+	 * Fill the fragments of a BSP tree in rendering order, each with the color of
+	 * its face, setting the color once per run of fragments of the same shade
+	 * 
+	 * @param mesh  the mesh storing the faces
+	 * @param tree  the BSP tree of the mesh
+	 * @param order rendering order of the fragments, from far to near
+	 * @param count number of fragments in order
+	 * @param g2    the Graphics context in which to paint
+	 * @param d     window dimension
+	 */
+	void drawFragments(Mesh mesh, BspTree tree, int[] order, int count, Graphics2D g2, Dimension d) {
+		var cache = mesh.getFaceCache();
+		double cx = d.width / 2;
+		double cy = d.height / 2;
+		int blue = -1;
+		for (int i = 0; i < count; i++) {
+			int f = tree.getFragmentFace(order[i]);
+			if (cache.getBlue(f) != blue) {
+				blue = cache.getBlue(f);
+				g2.setColor(Face.getColor(mesh, f));
+			}
+			triangle.reset();
+			for (int k = 0; k < 3; k++) {
+				int p = tree.getFragmentPoint(order[i], k);
+				float x = Math.round(tree.getVisualCoord(p, 0) + cx);
+				float y = Math.round(-tree.getVisualCoord(p, 1) + cy);
+				if (k == 0) {
+					triangle.moveTo(x, y);
+				} else {
+					triangle.lineTo(x, y);
+				}
+			}
+			triangle.closePath();
+			g2.fill(triangle);
+		}
+	}
+
+	/**
+	 * Stamp a dot at every vertex
+	 * 
+	 * @param mesh the mesh storing the vertices
+	 * @param g2   the Graphics context in which to paint
+	 * @param d    window dimension
+	 */
+	void drawVertices(Mesh mesh, Graphics2D g2, Dimension d) {
+		var sprite = getVertexSprite();
+		// the dot's corner, as in Vertex.draw
+		double left = d.width / 2 - ViewerFrame.vertexDrawSize / 2;
+		double top = d.height / 2 - ViewerFrame.vertexDrawSize / 2;
+		for (int v = 0; v < mesh.getVertexCount(); v++) {
+			int x = (int) Math.round(mesh.getVisualCoord(v, 0) + left);
+			int y = (int) Math.round(-mesh.getVisualCoord(v, 1) + top);
+			g2.drawImage(sprite, x, y, null);
+		}
+	}
+
+	/**
+	 * Draw all edges with the same stroke and color
+	 * 
+	 * @param mesh  the mesh storing the vertices
+	 * @param edges vertex indices of the edges, two indices per edge
+	 * @param count number of edges
+	 * @param g2    the Graphics context in which to paint
+	 * @param d     window dimension
+	 */
+	void drawEdges(Mesh mesh, int[] edges, int count, Graphics2D g2, Dimension d) {
+		double cx = d.width / 2;
+		double cy = d.height / 2;
+		g2.setStroke(edgeStroke);
+		g2.setColor(ViewerFrame.color);
+		for (int e = 0; e < count; e++) {
+			int v1 = edges[2 * e];
+			int v2 = edges[2 * e + 1];
+			line.setLine(mesh.getVisualCoord(v1, 0) + cx, -mesh.getVisualCoord(v1, 1) + cy,
+					mesh.getVisualCoord(v2, 0) + cx, -mesh.getVisualCoord(v2, 1) + cy);
+			g2.draw(line);
+		}
+	}
+
+	/**
+	 * Get the vertex dot, drawn with the same shape as Vertex.draw
+	 * 
+	 * @return image of the dot on a transparent background
+	 */
+	private static synchronized BufferedImage getVertexSprite() {
+		if (vertexSprite == null) {
+			int size = ViewerFrame.vertexDrawSize;
+			var sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+			var g = sprite.createGraphics();
+			g.setPaint(ViewerFrame.color);
+			g.fill(new Ellipse2D.Double(0, 0, size, size));
+			g.dispose();
+			vertexSprite = sprite;
+		}
+		return vertexSprite;
+	}
+}
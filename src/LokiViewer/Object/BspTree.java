@@ -0,0 +1,756 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+
+/**
+ * A binary space partitioning tree of the faces of a mesh, built once in the
+ * original coordinates, which gives an exact back-to-front order for any view
+ * direction. Each node has a plane, the fragments lying in the plane, and the
+ * subtrees of the fragments in front of it and behind it. Faces crossing a
+ * plane are split into fragments, which keep the face they are cut from, for
+ * their color; the points where faces are split are kept apart from the
+ * vertices of the mesh and transformed together with them.
+ * <p>
+ * Sets of more than leafFragments fragments are split by the median plane of
+ * their centers across the axis splitting the fewest fragments, unless one of
+ * a few fragment planes splits them about as evenly at a lower cost. This
+ * keeps the tree balanced even for a convex mesh, whose faces all lie behind
+ * each other's plane. Smaller sets are split by the plane of one of their
+ * fragments, chosen among a few by the number of splits and the balance.
+ * <p>
+ * The order for a view is found by walking the tree, drawing at each node the
+ * subtree on the far side of the plane first, then the fragments of the node,
+ * then the subtree on the near side: linear in the size of the tree, with no
+ * comparison of faces. The tree is walked with an explicit stack, it may be
+ * deep.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class BspTree {
+	/**
+	 * Largest set of fragments split by the plane of one of its fragments
+	 */
+	private static final int leafFragments = 256;
+	/**
+	 * Number of fragment planes tried for a split
+	 */
+	private static final int candidates = 5;
+	/**
+	 * Cost of a split relative to one fragment of imbalance, when choosing a
+	 * fragment plane
+	 */
+	private static final int splitCost = 8;
+	/**
+	 * Distance to a plane below which a point is in the plane, relative to the
+	 * diagonal of the bounding box
+	 */
+	private static final double planeTolerance = 1e-7;
+
+	/**
+	 * The mesh storing the faces
+	 */
+	private Mesh mesh;
+	/**
+	 * Number of vertices of the mesh. Point indices below it are vertices, the
+	 * others are split points.
+	 */
+	private int vertexCount;
+	/**
+	 * Distance to a plane below which a point is in the plane
+	 */
+	private double epsilon;
+
+	/**
+	 * Original coordinates of the split points, three values per point
+	 */
+	private double[] points = new double[48];
+	/**
+	 * Number of split points
+	 */
+	private int pointCount;
+	/**
+	 * Visual coordinates of the split points
+	 */
+	private double[] visualPoints;
+	/**
+	 * Version of the visual coordinates of the mesh that visualPoints follow
+	 */
+	private long visualVersion = -1;
+
+	/**
+	 * Point indices of the fragments, three per fragment
+	 */
+	private int[] fragments;
+	/**
+	 * Face each fragment is cut from
+	 */
+	private int[] fragmentFace;
+	/**
+	 * Number of fragments
+	 */
+	private int fragmentCount;
+
+	/**
+	 * Plane of each node: normal x, y, z and offset, normal . p = offset for a
+	 * point p in the plane. A node of a zero normal holds fragments of no area,
+	 * drawn in any order.
+	 */
+	private double[] planes = new double[64];
+	/**
+	 * Child in front of the plane of each node, -1 if none
+	 */
+	private int[] front = new int[16];
+	/**
+	 * Child behind the plane of each node, -1 if none
+	 */
+	private int[] back = new int[16];
+	/**
+	 * First fragment of each node in nodeFragments
+	 */
+	private int[] fragmentStart = new int[16];
+	/**
+	 * Number of fragments of each node
+	 */
+	private int[] nodeFragmentCount = new int[16];
+	/**
+	 * Number of nodes, the root is node 0
+	 */
+	private int nodeCount;
+	/**
+	 * Fragments of the nodes, node by node
+	 */
+	private int[] nodeFragments;
+	/**
+	 * Number of values in nodeFragments
+	 */
+	private int nodeFragmentSize;
+
+	/**
+	 * Rendering order of the fragments, from far to near
+	 */
+	private int[] order;
+	/**
+	 * Whether each face is drawn, when only some faces are
+	 */
+	private boolean[] visible;
+	/**
+	 * Stack of the walk, node indices and ~node for the fragments of a node
+	 */
+	private int[] stack = new int[64];
+
+	/**
+	 * Build the tree of the faces of a mesh, from its original coordinates
+	 * 
+	 * @param mesh the mesh storing the faces
+	 */
+	public BspTree(Mesh mesh) {
+		this.mesh = mesh;
+		vertexCount = mesh.getVertexCount();
+		int faceCount = mesh.getFaceCount();
+		fragments = new int[3 * faceCount + 48];
+		fragmentFace = new int[faceCount + 16];
+		int[] all = new int[faceCount];
+		for (int f = 0; f < faceCount; f++) {
+			for (int k = 0; k < 3; k++) {
+				fragments[3 * f + k] = mesh.getFaceVertex(f, k);
+			}
+			fragmentFace[f] = f;
+			all[f] = f;
+		}
+		fragmentCount = faceCount;
+		nodeFragments = new int[faceCount + 16];
+		epsilon = planeTolerance * getDiagonal();
+		build(all);
+		order = new int[nodeFragmentSize];
+		visualPoints = new double[3 * pointCount];
+	}
+
+	/**
+	 * Get the diagonal of the bounding box of the mesh
+	 * 
+	 * @return diagonal length
+	 */
+	private double getDiagonal() {
+		double sum = 0;
+		for (int k = 0; k < 3; k++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int v = 0; v < vertexCount; v++) {
+				min = Double.min(min, mesh.getCoord(v, k));
+				max = Double.max(max, mesh.getCoord(v, k));
+			}
+			sum += vertexCount == 0 ? 0 : (max - min) * (max - min);
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Build the tree, one node per set of fragments, the sets left to split kept
+	 * on a stack
+	 * 
+	 * @param all all fragments
+	 */
+	private void build(int[] all) {
+		if (all.length == 0) {
+			return;
+		}
+		var pending = new int[16][];
+		int[] pendingNode = new int[16];
+		pending[0] = all;
+		pendingNode[0] = newNode();
+		int top = 1;
+		double[] plane = new double[4];
+		int[] counts = new int[3];
+		while (top > 0) {
+			top--;
+			int[] set = pending[top];
+			int node = pendingNode[top];
+			pending[top] = null;
+			int splitter = choosePlane(set, plane, counts);
+			System.arraycopy(plane, 0, planes, 4 * node, 4);
+			if (splitter == -2) {
+				// no plane: the fragments have no area
+				addNodeFragments(node, set, set.length);
+				continue;
+			}
+			int[] frontSet = new int[counts[0] + 2 * counts[2]];
+			int[] backSet = new int[counts[1] + 2 * counts[2]];
+			int[] inPlane = new int[set.length];
+			int frontCount = 0;
+			int backCount = 0;
+			int inPlaneCount = 0;
+			for (int fragment : set) {
+				int side = fragment == splitter ? 0 : classify(fragment, plane);
+				if (side == 0) {
+					inPlane[inPlaneCount++] = fragment;
+				} else if (side == 1) {
+					frontSet[frontCount++] = fragment;
+				} else if (side == -1) {
+					backSet[backCount++] = fragment;
+				} else {
+					long split = split(fragment, plane, frontSet, frontCount, backSet, backCount);
+					frontCount = (int) (split >>> 32);
+					backCount = (int) split;
+				}
+			}
+			addNodeFragments(node, inPlane, inPlaneCount);
+			if (top + 2 > pending.length) {
+				pending = Arrays.copyOf(pending, 2 * pending.length);
+				pendingNode = Arrays.copyOf(pendingNode, 2 * pendingNode.length);
+			}
+			front[node] = -1;
+			back[node] = -1;
+			if (frontCount > 0) {
+				int child = newNode();
+				front[node] = child;
+				pending[top] = Arrays.copyOf(frontSet, frontCount);
+				pendingNode[top++] = child;
+			}
+			if (backCount > 0) {
+				int child = newNode();
+				back[node] = child;
+				pending[top] = Arrays.copyOf(backSet, backCount);
+				pendingNode[top++] = child;
+			}
+		}
+	}
+
+	/**
+	 * Add a node without children
+	 * 
+	 * @return the node index
+	 */
+	private int newNode() {
+		if (nodeCount == front.length) {
+			int capacity = 2 * nodeCount;
+			planes = Arrays.copyOf(planes, 4 * capacity);
+			front = Arrays.copyOf(front, capacity);
+			back = Arrays.copyOf(back, capacity);
+			fragmentStart = Arrays.copyOf(fragmentStart, capacity);
+			nodeFragmentCount = Arrays.copyOf(nodeFragmentCount, capacity);
+		}
+		front[nodeCount] = -1;
+		back[nodeCount] = -1;
+		return nodeCount++;
+	}
+
+	/**
+	 * Give fragments to a node
+	 * 
+	 * @param node  the node
+	 * @param set   the fragments
+	 * @param count number of fragments in set
+	 */
+	private void addNodeFragments(int node, int[] set, int count) {
+		if (nodeFragmentSize + count > nodeFragments.length) {
+			int capacity = Integer.max(2 * nodeFragments.length, nodeFragmentSize + count);
+			nodeFragments = Arrays.copyOf(nodeFragments, capacity);
+		}
+		System.arraycopy(set, 0, nodeFragments, nodeFragmentSize, count);
+		fragmentStart[node] = nodeFragmentSize;
+		nodeFragmentCount[node] = count;
+		nodeFragmentSize += count;
+	}
+
+	/**
+	 * Choose the plane splitting a set of fragments: the best of a few fragment
+	 * planes, or for a large set the median plane if it scores better. The
+	 * fragment planes of a large set are only taken if the larger side, counting
+	 * the fragments they split on both sides, is at most 3/4 of the set.
+	 * 
+	 * @param set    the fragments
+	 * @param plane  array to write the plane in
+	 * @param counts array to write the number of fragments in front, behind and
+	 *               split in
+	 * @return the fragment whose plane is chosen, -1 for a median plane, -2 if
+	 *         no fragment has an area
+	 */
+	private int choosePlane(int[] set, double[] plane, int[] counts) {
+		boolean large = set.length > leafFragments;
+		double[] candidate = new double[4];
+		int[] candidateCounts = new int[3];
+		int best = -2;
+		long bestScore = Long.MAX_VALUE;
+		int tries = Integer.min(candidates, set.length);
+		for (int i = 0; i < tries; i++) {
+			int fragment = set[(int) ((long) i * set.length / tries)];
+			if (!fragmentPlane(fragment, candidate)) {
+				continue;
+			}
+			evaluate(set, candidate, candidateCounts);
+			long score = score(candidateCounts);
+			long side = Integer.max(candidateCounts[0], candidateCounts[1]) + 2L * candidateCounts[2];
+			if (large && 4 * side > 3L * set.length) {
+				continue;
+			}
+			if (score < bestScore) {
+				best = fragment;
+				bestScore = score;
+				System.arraycopy(candidate, 0, plane, 0, 4);
+				System.arraycopy(candidateCounts, 0, counts, 0, 3);
+			}
+		}
+		if (large) {
+			double[] median = new double[4];
+			int[] medianCounts = new int[3];
+			if (medianPlane(set, median, medianCounts) && (best < 0 || score(medianCounts) < bestScore)) {
+				System.arraycopy(median, 0, plane, 0, 4);
+				System.arraycopy(medianCounts, 0, counts, 0, 3);
+				return -1;
+			}
+		}
+		for (int i = 0; best == -2 && i < set.length; i++) {
+			// all tried fragments have no area, look for one that has
+			if (fragmentPlane(set[i], plane)) {
+				best = set[i];
+				evaluate(set, plane, counts);
+			}
+		}
+		if (best == -2) {
+			Arrays.fill(plane, 0);
+		}
+		return best;
+	}
+
+	/**
+	 * Get the cost of splitting a set by a plane
+	 * 
+	 * @param counts fragments in front, behind and split
+	 * @return the cost, lower is better
+	 */
+	private static long score(int[] counts) {
+		return (long) splitCost * counts[2] + Math.abs(counts[0] - counts[1]);
+	}
+
+	/**
+	 * Find the plane across an axis through the median center of a set of
+	 * fragments, on the axis whose plane splits the fewest fragments. A plane is
+	 * only taken if both sides of it are smaller than the set.
+	 * 
+	 * @param set    the fragments
+	 * @param plane  array to write the plane in
+	 * @param counts array to write the number of fragments in front, behind and
+	 *               split in
+	 * @return false if no plane splits the set in smaller parts
+	 */
+	private boolean medianPlane(int[] set, double[] plane, int[] counts) {
+		double[] centers = new double[set.length];
+		double[] candidate = new double[4];
+		int[] candidateCounts = new int[3];
+		long bestScore = Long.MAX_VALUE;
+		for (int k = 0; k < 3; k++) {
+			for (int i = 0; i < set.length; i++) {
+				centers[i] = center(set[i], k);
+			}
+			Arrays.sort(centers);
+			if (centers[0] == centers[set.length - 1]) {
+				continue;
+			}
+			Arrays.fill(candidate, 0);
+			candidate[k] = 1;
+			candidate[3] = centers[set.length / 2];
+			evaluate(set, candidate, candidateCounts);
+			long score = score(candidateCounts);
+			// a split adds up to two fragments on a side, both sides must shrink
+			if (Integer.max(candidateCounts[0], candidateCounts[1]) + 2 * candidateCounts[2] < set.length
+					&& score < bestScore) {
+				bestScore = score;
+				System.arraycopy(candidate, 0, plane, 0, 4);
+				System.arraycopy(candidateCounts, 0, counts, 0, 3);
+			}
+		}
+		return bestScore != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Get the center of a fragment along one axis
+	 * 
+	 * @param fragment the fragment
+	 * @param k        axis, 0 for x, 1 for y, 2 for z
+	 * @return coordinate of the center
+	 */
+	private double center(int fragment, int k) {
+		int i = 3 * fragment;
+		return (coord(fragments[i], k) + coord(fragments[i + 1], k) + coord(fragments[i + 2], k)) / 3;
+	}
+
+	/**
+	 * Find the plane of a fragment, its normal following the order of its points
+	 * 
+	 * @param fragment the fragment
+	 * @param plane    array to write the plane in
+	 * @return false if the fragment has no area
+	 */
+	private boolean fragmentPlane(int fragment, double[] plane) {
+		int a = fragments[3 * fragment];
+		int b = fragments[3 * fragment + 1];
+		int c = fragments[3 * fragment + 2];
+		double ux = coord(b, 0) - coord(a, 0);
+		double uy = coord(b, 1) - coord(a, 1);
+		double uz = coord(b, 2) - coord(a, 2);
+		double vx = coord(c, 0) - coord(a, 0);
+		double vy = coord(c, 1) - coord(a, 1);
+		double vz = coord(c, 2) - coord(a, 2);
+		double nx = uy * vz - uz * vy;
+		double ny = uz * vx - ux * vz;
+		double nz = ux * vy - uy * vx;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (!(length > 0) || Double.isInfinite(length)) {
+			return false;
+		}
+		plane[0] = nx / length;
+		plane[1] = ny / length;
+		plane[2] = nz / length;
+		plane[3] = plane[0] * coord(a, 0) + plane[1] * coord(a, 1) + plane[2] * coord(a, 2);
+		return true;
+	}
+
+	/**
+	 * Count the fragments of a set in front of a plane, behind it, and crossing
+	 * it. The fragments in the plane are not counted.
+	 * 
+	 * @param set    the fragments
+	 * @param plane  the plane
+	 * @param counts array to write the three counts in
+	 */
+	private void evaluate(int[] set, double[] plane, int[] counts) {
+		Arrays.fill(counts, 0);
+		for (int fragment : set) {
+			int side = classify(fragment, plane);
+			if (side == 1) {
+				counts[0]++;
+			} else if (side == -1) {
+				counts[1]++;
+			} else if (side == 2) {
+				counts[2]++;
+			}
+		}
+	}
+
+	/**
+	 * Find the side of a plane a fragment lies on
+	 * 
+	 * @param fragment the fragment
+	 * @param plane    the plane
+	 * @return 1 in front, -1 behind, 0 in the plane, 2 across it
+	 */
+	private int classify(int fragment, double[] plane) {
+		boolean inFront = false;
+		boolean behind = false;
+		for (int k = 0; k < 3; k++) {
+			int side = side(distance(fragments[3 * fragment + k], plane));
+			inFront |= side > 0;
+			behind |= side < 0;
+		}
+		return inFront ? (behind ? 2 : 1) : (behind ? -1 : 0);
+	}
+
+	/**
+	 * Get the side of a plane of a point
+	 * 
+	 * @param distance signed distance of the point to the plane
+	 * @return 1 in front, -1 behind, 0 in the plane
+	 */
+	private int side(double distance) {
+		return distance > epsilon ? 1 : (distance < -epsilon ? -1 : 0);
+	}
+
+	/**
+	 * Get the signed distance of a point to a plane
+	 * 
+	 * @param p     point index
+	 * @param plane the plane
+	 * @return the distance, positive in front
+	 */
+	private double distance(int p, double[] plane) {
+		return plane[0] * coord(p, 0) + plane[1] * coord(p, 1) + plane[2] * coord(p, 2) - plane[3];
+	}
+
+	/**
+	 * Split a fragment crossing a plane into a part in front and a part behind,
+	 * each cut in one or two triangles, which are added as new fragments
+	 * 
+	 * @param fragment   the fragment
+	 * @param plane      the plane
+	 * @param frontSet   fragments in front, to add to
+	 * @param frontCount number of fragments in frontSet
+	 * @param backSet    fragments behind, to add to
+	 * @param backCount  number of fragments in backSet
+	 * @return the new counts of frontSet and backSet, packed in the high and low
+	 *         bits
+	 */
+	private long split(int fragment, double[] plane, int[] frontSet, int frontCount, int[] backSet, int backCount) {
+		int[] frontPolygon = new int[4];
+		int[] backPolygon = new int[4];
+		int frontSize = 0;
+		int backSize = 0;
+		for (int k = 0; k < 3; k++) {
+			int p = fragments[3 * fragment + k];
+			int q = fragments[3 * fragment + (k + 1) % 3];
+			double dp = distance(p, plane);
+			int sp = side(dp);
+			if (sp >= 0) {
+				frontPolygon[frontSize++] = p;
+			}
+			if (sp <= 0) {
+				backPolygon[backSize++] = p;
+			}
+			double dq = distance(q, plane);
+			if (sp * side(dq) < 0) {
+				int cut = cut(p, dp, q, dq);
+				frontPolygon[frontSize++] = cut;
+				backPolygon[backSize++] = cut;
+			}
+		}
+		int face = fragmentFace[fragment];
+		for (int i = 1; i + 1 < frontSize; i++) {
+			frontSet[frontCount++] = newFragment(face, frontPolygon[0], frontPolygon[i], frontPolygon[i + 1]);
+		}
+		for (int i = 1; i + 1 < backSize; i++) {
+			backSet[backCount++] = newFragment(face, backPolygon[0], backPolygon[i], backPolygon[i + 1]);
+		}
+		return (long) frontCount << 32 | backCount;
+	}
+
+	/**
+	 * Add the point where an edge crosses a plane. The point is computed from the
+	 * end of the smaller index, so both faces of an edge get the same point.
+	 * 
+	 * @param p  point index of one end
+	 * @param dp distance of p to the plane
+	 * @param q  point index of the other end
+	 * @param dq distance of q to the plane
+	 * @return point index of the new point
+	 */
+	private int cut(int p, double dp, int q, double dq) {
+		if (p > q) {
+			return cut(q, dq, p, dp);
+		}
+		double t = dp / (dp - dq);
+		if (3 * pointCount + 3 > points.length) {
+			points = Arrays.copyOf(points, 2 * points.length);
+		}
+		for (int k = 0; k < 3; k++) {
+			points[3 * pointCount + k] = coord(p, k) + t * (coord(q, k) - coord(p, k));
+		}
+		return vertexCount + pointCount++;
+	}
+
+	/**
+	 * Add a fragment
+	 * 
+	 * @param face the face it is cut from
+	 * @param a    point index of the first corner
+	 * @param b    point index of the second corner
+	 * @param c    point index of the third corner
+	 * @return fragment index
+	 */
+	private int newFragment(int face, int a, int b, int c) {
+		if (fragmentCount == fragmentFace.length) {
+			fragmentFace = Arrays.copyOf(fragmentFace, 2 * fragmentCount);
+			fragments = Arrays.copyOf(fragments, 6 * fragmentCount);
+		}
+		fragments[3 * fragmentCount] = a;
+		fragments[3 * fragmentCount + 1] = b;
+		fragments[3 * fragmentCount + 2] = c;
+		fragmentFace[fragmentCount] = face;
+		return fragmentCount++;
+	}
+
+	/**
+	 * Get one component of the original coordinate of a point
+	 * 
+	 * @param p point index, a vertex or a split point
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return original coordinate component
+	 */
+	private double coord(int p, int k) {
+		return p < vertexCount ? mesh.getCoord(p, k) : points[3 * (p - vertexCount) + k];
+	}
+
+	/**
+	 * Find the rendering order of the fragments for the current view of the mesh
+	 * 
+	 * @param faces faces to draw, ascending, or null for all faces
+	 * @param count number of faces to draw
+	 * @return number of fragments in the order, see getOrder
+	 */
+	public int sort(int[] faces, int count) {
+		if (faces != null) {
+			if (visible == null) {
+				visible = new boolean[mesh.getFaceCount()];
+			}
+			Arrays.fill(visible, false);
+			for (int i = 0; i < count; i++) {
+				visible[faces[i]] = true;
+			}
+		}
+		if (nodeCount == 0) {
+			return 0;
+		}
+		double[] w = mesh.getViewDirection();
+		int size = 0;
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (node < 0) {
+				node = ~node;
+				for (int i = fragmentStart[node]; i < fragmentStart[node] + nodeFragmentCount[node]; i++) {
+					int fragment = nodeFragments[i];
+					if (faces == null || visible[fragmentFace[fragment]]) {
+						order[size++] = fragment;
+					}
+				}
+				continue;
+			}
+			if (top + 3 > stack.length) {
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			}
+			int p = 4 * node;
+			// the viewer is in front of the plane if the direction towards it is
+			boolean viewerInFront = planes[p] * w[0] + planes[p + 1] * w[1] + planes[p + 2] * w[2] > 0;
+			int near = viewerInFront ? front[node] : back[node];
+			int far = viewerInFront ? back[node] : front[node];
+			// popped in reverse: far side, the node, then the near side
+			if (near >= 0) {
+				stack[top++] = near;
+			}
+			stack[top++] = ~node;
+			if (far >= 0) {
+				stack[top++] = far;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Get the rendering order found by the last sort
+	 * 
+	 * @return fragment indices from far to near, valid for the count returned by
+	 *         sort
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Get one component of the visual coordinate of a point, for the current
+	 * view of the mesh
+	 * 
+	 * @param p point index, a vertex or a split point
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return visual coordinate component
+	 */
+	double getVisualCoord(int p, int k) {
+		if (p < vertexCount) {
+			return mesh.getVisualCoord(p, k);
+		}
+		if (visualVersion != mesh.getVersion()) {
+			mesh.applyVisualTransform(points, visualPoints, pointCount);
+			visualVersion = mesh.getVersion();
+		}
+		return visualPoints[3 * (p - vertexCount) + k];
+	}
+
+	/**
+	 * Get the point index of one corner of a fragment
+	 * 
+	 * @param fragment fragment index
+	 * @param k        corner, 0 to 2
+	 * @return point index
+	 */
+	int getFragmentPoint(int fragment, int k) {
+		return fragments[3 * fragment + k];
+	}
+
+	/**
+	 * Get the face a fragment is cut from
+	 * 
+	 * @param fragment fragment index
+	 * @return face index
+	 */
+	int getFragmentFace(int fragment) {
+		return fragmentFace[fragment];
+	}
+
+	/**
+	 * Get the number of nodes
+	 * 
+	 * @return node count
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Get the number of fragments in the tree, the faces and the parts of the
+	 * split faces
+	 * 
+	 * @return fragment count
+	 */
+	public int getFragmentCount() {
+		return nodeFragmentSize;
+	}
+
+	/**
+	 * Get the number of points added where faces are split
+	 * 
+	 * @return split point count
+	 */
+	public int getSplitPointCount() {
+		return pointCount;
+	}
+
+	/**
+	 * Get the memory used by the arrays of the tree
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		return 8L * points.length + 8L * visualPoints.length + 4L * fragments.length + 4L * fragmentFace.length
+				+ 8L * planes.length + 16L * front.length + 4L * nodeFragments.length + 4L * order.length
+				+ (visible == null ? 0 : visible.length) + 4L * stack.length;
+	}
+}
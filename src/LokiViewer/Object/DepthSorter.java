@@ -0,0 +1,315 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+
+/**
+ * Sort faces by their average z value, frame after frame. The order of the
+ * previous frame is kept as an int permutation, together with the depth of each
+ * face in the same order so that comparisons read memory sequentially. While
+ * the object rotates the old order is still nearly sorted, so it is repaired
+ * with an insertion sort, which costs close to linear time when faces move only
+ * a few places. When the insertion sort runs out of its budget of moves, the
+ * faces are sorted again from scratch: the depth rounded to float and the face
+ * index are packed in a long and sorted as primitives, and the few faces whose
+ * depths round to the same float are put in order by a last insertion sort.
+ * Faces are ordered by depth then by index, so the result does not depend on
+ * the previous order and is the same as a stable sort of the faces by depth.
+ * When only some faces are drawn, e.g. after culling, the faces that are no
+ * longer drawn are dropped from the old order before the repair, and the newly
+ * drawn faces are sorted on their own and merged in.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class DepthSorter {
+	/**
+	 * Insertion sort moves allowed per face before sorting again from scratch
+	 */
+	private static final int movesPerFace = 16;
+
+	/**
+	 * The mesh storing the faces
+	 */
+	private Mesh mesh;
+	/**
+	 * Rendering order, from far to near
+	 */
+	private int[] order;
+	/**
+	 * Number of faces in order
+	 */
+	private int size;
+	/**
+	 * Average z value of the face at the same position of order
+	 */
+	private double[] key;
+	/**
+	 * Whether each face is in order
+	 */
+	private boolean[] inOrder;
+	/**
+	 * Stamp of each face, equal to the current stamp if the face is to be sorted
+	 */
+	private int[] mark;
+	/**
+	 * Stamp of the current sort
+	 */
+	private int stamp;
+	/**
+	 * Average z value of each face
+	 */
+	private double[] depth;
+	/**
+	 * Packed keys for sorting from scratch, created when first needed
+	 */
+	private long[] packed;
+	/**
+	 * Insertion sort moves made in the last sort
+	 */
+	private long lastMoves;
+	/**
+	 * Whether the last sort ran out of moves and sorted again from scratch
+	 */
+	private boolean lastFullSort;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param mesh the mesh storing the faces
+	 */
+	public DepthSorter(Mesh mesh) {
+		this.mesh = mesh;
+		int n = mesh.getFaceCount();
+		order = new int[n];
+		key = new double[n];
+		depth = new double[n];
+		inOrder = new boolean[n];
+	}
+
+	/**
+	 * Sort all faces by the current visual coordinates of the mesh
+	 * 
+	 * @return rendering order from far to near, owned by the sorter and valid
+	 *         until the next call
+	 */
+	public int[] sort() {
+		sort(null, order.length);
+		return order;
+	}
+
+	/**
+	 * Sort some faces by the current visual coordinates of the mesh
+	 * 
+	 * @param faces faces to sort, or null for all faces
+	 * @param count number of faces to sort
+	 * @return count, the first count values of getOrder being the rendering
+	 *         order from far to near
+	 */
+	public int sort(int[] faces, int count) {
+		var cache = mesh.getFaceCache();
+		if (faces == null) {
+			for (int f = 0; f < count; f++) {
+				// adding 0.0 turns -0.0 into 0.0, so that they compare equal
+				depth[f] = cache.getDepth(f) + 0.0;
+			}
+		} else {
+			if (mark == null) {
+				mark = new int[order.length];
+			}
+			stamp++;
+			for (int i = 0; i < count; i++) {
+				int f = faces[i];
+				mark[f] = stamp;
+				depth[f] = cache.getDepth(f) + 0.0;
+			}
+		}
+
+		// keep the faces still to sort in their old order
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			int f = order[i];
+			if (faces == null || mark[f] == stamp) {
+				order[kept] = f;
+				key[kept] = depth[f];
+				kept++;
+			} else {
+				inOrder[f] = false;
+			}
+		}
+		lastFullSort = !insertionSort(0, kept, (long) movesPerFace * kept);
+		if (lastFullSort) {
+			fullSort(0, kept);
+		}
+
+		// sort the new faces on their own and merge them in
+		size = kept;
+		for (int i = 0; i < count; i++) {
+			int f = faces == null ? i : faces[i];
+			if (!inOrder[f]) {
+				inOrder[f] = true;
+				order[size] = f;
+				key[size] = depth[f];
+				size++;
+			}
+		}
+		if (size > kept) {
+			fullSort(kept, size);
+			merge(kept);
+		}
+		return size;
+	}
+
+	/**
+	 * Get the rendering order of the last sort
+	 * 
+	 * @return rendering order from far to near, owned by the sorter and valid for
+	 *         the number of faces returned by sort until the next call
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Whether face a is rendered before face b
+	 * 
+	 * @param ka depth of a
+	 * @param a  face index
+	 * @param kb depth of b
+	 * @param b  face index
+	 * @return true if a is farther, or as far with a smaller index
+	 */
+	private static boolean before(double ka, int a, double kb, int b) {
+		int c = Double.compare(ka, kb);
+		return c < 0 || (c == 0 && a < b);
+	}
+
+	/**
+	 * Repair a range of the order with an insertion sort
+	 * 
+	 * @param from     first position, inclusive
+	 * @param to       last position, exclusive
+	 * @param maxMoves moves allowed
+	 * @return true if the range is sorted, false if the budget ran out
+	 */
+	private boolean insertionSort(int from, int to, long maxMoves) {
+		long moves = 0;
+		for (int i = from + 1; i < to; i++) {
+			int f = order[i];
+			double k = key[i];
+			int j = i - 1;
+			if (!before(k, f, key[j], order[j])) {
+				continue;
+			}
+			do {
+				order[j + 1] = order[j];
+				key[j + 1] = key[j];
+				j--;
+			} while (j >= from && before(k, f, key[j], order[j]));
+			order[j + 1] = f;
+			key[j + 1] = k;
+			moves += i - 1 - j;
+			if (moves > maxMoves) {
+				lastMoves = moves;
+				return false;
+			}
+		}
+		lastMoves = moves;
+		return true;
+	}
+
+	/**
+	 * Sort a range of the order from scratch. The float rounding keeps the order
+	 * of different depths except when they round to the same value, so the packed
+	 * sort leaves the range nearly sorted, and the insertion sort finishes it.
+	 * 
+	 * @param from first position, inclusive
+	 * @param to   last position, exclusive
+	 */
+	private void fullSort(int from, int to) {
+		if (packed == null) {
+			packed = new long[order.length];
+		}
+		for (int i = from; i < to; i++) {
+			int f = order[i];
+			packed[i] = ((long) sortableBits((float) depth[f]) << 32) | f;
+		}
+		Arrays.parallelSort(packed, from, to);
+		for (int i = from; i < to; i++) {
+			int f = (int) packed[i];
+			order[i] = f;
+			key[i] = depth[f];
+		}
+		long moves = lastMoves;
+		insertionSort(from, to, Long.MAX_VALUE);
+		lastMoves = moves;
+	}
+
+	/**
+	 * Merge the two sorted runs of the order, from the back so that only the
+	 * second run is copied
+	 * 
+	 * @param mid start of the second run, which ends at size
+	 */
+	private void merge(int mid) {
+		int n = size - mid;
+		int[] runOrder = Arrays.copyOfRange(order, mid, size);
+		double[] runKey = Arrays.copyOfRange(key, mid, size);
+		int i = mid - 1;
+		int j = n - 1;
+		int k = size - 1;
+		while (j >= 0) {
+			if (i >= 0 && before(runKey[j], runOrder[j], key[i], order[i])) {
+				order[k] = order[i];
+				key[k] = key[i];
+				i--;
+			} else {
+				order[k] = runOrder[j];
+				key[k] = runKey[j];
+				j--;
+			}
+			k--;
+		}
+	}
+
+	/**
+	 * Map a float to an int of the same order
+	 * 
+	 * @param x the float
+	 * @return int whose signed order is the order of the floats
+	 */
+	private static int sortableBits(float x) {
+		int bits = Float.floatToIntBits(x);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+
+	/**
+	 * Get the insertion sort moves made in the last sort
+	 * 
+	 * @return move count
+	 */
+	public long getLastMoves() {
+		return lastMoves;
+	}
+
+	/**
+	 * Whether the last sort ran out of moves and sorted again from scratch
+	 * 
+	 * @return true if the order changed too much for the insertion sort
+	 */
+	public boolean isLastFullSort() {
+		return lastFullSort;
+	}
+
+	/**
+	 * Get the memory used by the arrays of the sorter, including the ones created
+	 * when first needed
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		int[] marks = mark;
+		long[] keys = packed;
+		return 4L * order.length + 8L * (key.length + depth.length) + inOrder.length
+				+ (marks == null ? 0 : 4L * marks.length) + (keys == null ? 0 : 8L * keys.length);
+	}
+}
@@ -10,26 +10,36 @@ import java.util.Arrays;
 import LokiViewer.GUI.ViewerFrame;
 
 /**
- * The edge class of the object
+ * The edge class of the object, a lightweight view of two vertices stored in a
+ * Mesh
  * 
  * @author Renhao Lu
  *
  */
 public class Edge {
 	/**
-	 * Vertex array storing two vertices
+	 * The mesh storing the vertices
 	 */
-	private Vertex[] v;
+	private Mesh mesh;
+	/**
+	 * index of one vertex
+	 */
+	private int v1;
+	/**
+	 * index of the other vertex
+	 */
+	private int v2;
 
 	/**
 	 * 
-	 * @param v1 one vertex
-	 * @param v2 the other vertex
+	 * @param mesh the mesh storing the vertices
+	 * @param v1   index of one vertex
+	 * @param v2   index of the other vertex
 	 */
-	public Edge(Vertex v1, Vertex v2) {
-		v = new Vertex[2];
-		v[0] = v1;
-		v[1] = v2;
+	public Edge(Mesh mesh, int v1, int v2) {
+		this.mesh = mesh;
+		this.v1 = v1;
+		this.v2 = v2;
 	}
 
 	/**
@@ -38,7 +48,7 @@ public class Edge {
 	 * @return tow vertex array
 	 */
 	public Vertex[] getVertices() {
-		return v;
+		return new Vertex[] { new Vertex(mesh, v1), new Vertex(mesh, v2) };
 	}
 
 	/**
@@ -48,18 +58,30 @@ public class Edge {
 	 * @param d window dimension
 	 */
 	public void draw(Graphics g, Dimension d) {
-		var g2 = (Graphics2D) g;
+		draw(mesh, v1, v2, (Graphics2D) g, d);
+	}
 
+	/**
+	 * draw an edge between two vertices of a mesh without creating a view
+	 * 
+	 * @param mesh the mesh storing the vertices
+	 * @param v1   index of one vertex
+	 * @param v2   index of the other vertex
+	 * @param g2   the Graphics context in which to paint
+	 * @param d    window dimension
+	 */
+	static void draw(Mesh mesh, int v1, int v2, Graphics2D g2, Dimension d) {
 		g2.setStroke(new BasicStroke(ViewerFrame.edgeDrawSize));
 
-		var line = new Line2D.Double(v[0].getVisualCoord()[0] + d.width / 2, -v[0].getVisualCoord()[1] + d.height / 2,
-				v[1].getVisualCoord()[0] + d.width / 2, -v[1].getVisualCoord()[1] + d.height / 2);
+		var line = new Line2D.Double(mesh.getVisualCoord(v1, 0) + d.width / 2,
+				-mesh.getVisualCoord(v1, 1) + d.height / 2, mesh.getVisualCoord(v2, 0) + d.width / 2,
+				-mesh.getVisualCoord(v2, 1) + d.height / 2);
 		g2.setColor(ViewerFrame.color);
 		g2.draw(line);
 	}
 
 	@Override
 	public String toString() {
-		return Arrays.toString(v);
+		return Arrays.toString(getVertices());
 	}
 }
@@ -8,39 +8,60 @@ import java.awt.Polygon;
 import java.util.Arrays;
 
 /**
- * The face class of object
+ * The face class of object, a lightweight view of one face stored in a Mesh
  * 
  * @author Renhao Lu
  *
  */
 public class Face {
 	/**
-	 * A vertex array storing three vertex on face
+	 * Face colors by blue component, shared instead of created for every draw
 	 */
-	private Vertex[] v;
+	private static final Color[] shades = new Color[256];
+
+	static {
+		for (int b = 0; b < shades.length; b++) {
+			shades[b] = new Color(0, 0, b);
+		}
+	}
+
+	/**
+	 * The mesh storing the face
+	 */
+	private Mesh mesh;
+	/**
+	 * index of the face in the mesh
+	 */
+	private int index;
 
 	/**
-	 * Store the vertices in array, sort them according to their id
+	 * Constructor
 	 * 
-	 * @param v1 vertex1
-	 * @param v2 vertex2
-	 * @param v3 vertex3
+	 * @param mesh  the mesh storing the face
+	 * @param index index of the face in the mesh
 	 */
-	public Face(Vertex v1, Vertex v2, Vertex v3) {
-		v = new Vertex[3];
-		v[0] = v1;
-		v[1] = v2;
-		v[2] = v3;
-		Arrays.sort(v, new VertexComp());
+	public Face(Mesh mesh, int index) {
+		this.mesh = mesh;
+		this.index = index;
 	}
 
 	/**
-	 * Get vertices
+	 * Get index in the mesh
+	 * 
+	 * @return face index
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Get vertices, sorted according to their id
 	 * 
 	 * @return vertices array
 	 */
 	public Vertex[] getVertices() {
-		return v;
+		return new Vertex[] { new Vertex(mesh, mesh.getFaceVertex(index, 0)),
+				new Vertex(mesh, mesh.getFaceVertex(index, 1)), new Vertex(mesh, mesh.getFaceVertex(index, 2)) };
 	}
 
 	/**
@@ -50,9 +71,20 @@ public class Face {
 	 * @param d window dimension
 	 */
 	public void draw(Graphics g, Dimension d) {
-		var g2 = (Graphics2D) g;
-		g2.setColor(getColor());
-		g2.fill(getPolygon(d));
+		draw(mesh, index, (Graphics2D) g, d);
+	}
+
+	/**
+	 * draw a face of a mesh without creating a view
+	 * 
+	 * @param mesh  the mesh storing the face
+	 * @param index face index
+	 * @param g2    the Graphics context in which to paint
+	 * @param d     window dimension
+	 */
+	static void draw(Mesh mesh, int index, Graphics2D g2, Dimension d) {
+		g2.setColor(getColor(mesh, index));
+		g2.fill(getPolygon(mesh, index, d));
 	}
 
 	/**
@@ -61,24 +93,29 @@ public class Face {
 	 * @return average z valve
 	 */
 	public double getAverageZVale() {
-		return (v[0].getVisualCoord()[2] + v[1].getVisualCoord()[2] + v[2].getVisualCoord()[2]) / 3;
+		return mesh.getAverageZValue(index);
 	}
 
 	/**
 	 * Java swing cannot draw triangle directly, hence generate a polygon object
 	 * that can be drawn in windows
 	 * 
-	 * @param d window dimension
+	 * @param mesh  the mesh storing the face
+	 * @param index face index
+	 * @param d     window dimension
 	 * @return the polygon representing the face
 	 */
-	private Polygon getPolygon(Dimension d) {
+	private static Polygon getPolygon(Mesh mesh, int index, Dimension d) {
+		int v0 = mesh.getFaceVertex(index, 0);
+		int v1 = mesh.getFaceVertex(index, 1);
+		int v2 = mesh.getFaceVertex(index, 2);
 		return new Polygon(
-				new int[] { (int) Math.round(v[0].getVisualCoord()[0] + d.width / 2),
-						(int) Math.round(v[1].getVisualCoord()[0] + d.width / 2),
-						(int) Math.round(v[2].getVisualCoord()[0] + d.width / 2) },
-				new int[] { (int) Math.round(-v[0].getVisualCoord()[1] + d.height / 2),
-						(int) Math.round(-v[1].getVisualCoord()[1] + d.height / 2),
-						(int) Math.round(-v[2].getVisualCoord()[1] + d.height / 2) },
+				new int[] { (int) Math.round(mesh.getVisualCoord(v0, 0) + d.width / 2),
+						(int) Math.round(mesh.getVisualCoord(v1, 0) + d.width / 2),
+						(int) Math.round(mesh.getVisualCoord(v2, 0) + d.width / 2) },
+				new int[] { (int) Math.round(-mesh.getVisualCoord(v0, 1) + d.height / 2),
+						(int) Math.round(-mesh.getVisualCoord(v1, 1) + d.height / 2),
+						(int) Math.round(-mesh.getVisualCoord(v2, 1) + d.height / 2) },
 				3);
 	}
 
@@ -88,43 +125,20 @@ public class Face {
 	 * @return face color
 	 */
 	public Color getColor() {
-		double angle = angleWithZAxis();
-		// return Color.green;
-		return new Color(0, 0, (int) (95 + angle / Math.PI * 160 * 2));
-	}
-
-	/**
-	 * Get the angle of the face with z-axis, calculated by complementary angle of
-	 * the angle between z-axis and the face normal vector.
-	 * 
-	 * @return the angle of the face with z-axis
-	 */
-	private double angleWithZAxis() {
-		double[] normal = getNormalVector();
-		double innerProduct = Math.abs(normal[2]);
-		double len = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
-		double cos = innerProduct / len;
-		return Math.asin(cos);
+		return getColor(mesh, index);
 	}
 
 	/**
-	 * Get the normal vector of the face, calculated by finding a vector that is
-	 * perpendicular to two edges on the face
+	 * Get the color of a face of a mesh according its angle to z-axis, read from
+	 * the face cache of the mesh
 	 * 
-	 * @return face normal vector
+	 * @param mesh  the mesh storing the face
+	 * @param index face index
+	 * @return face color
 	 */
-	private double[] getNormalVector() {
-		double[] normal = new double[3];
-		double[] edge1 = new double[] { v[1].getVisualCoord()[0] - v[0].getVisualCoord()[0],
-				v[1].getVisualCoord()[1] - v[0].getVisualCoord()[1],
-				v[1].getVisualCoord()[2] - v[0].getVisualCoord()[2] };
-		double[] edge2 = new double[] { v[2].getVisualCoord()[0] - v[0].getVisualCoord()[0],
-				v[2].getVisualCoord()[1] - v[0].getVisualCoord()[1],
-				v[2].getVisualCoord()[2] - v[0].getVisualCoord()[2] };
-		normal[0] = (edge1[1] * edge2[2] - edge2[1] * edge1[2]);
-		normal[1] = -(edge1[0] * edge2[2] - edge2[0] * edge1[2]);
-		normal[2] = (edge1[0] * edge2[1] - edge2[0] * edge1[1]);
-		return normal;
+	static Color getColor(Mesh mesh, int index) {
+		// return Color.green;
+		return shades[mesh.getFaceCache().getBlue(index)];
 	}
 
 	/**
@@ -133,21 +147,11 @@ public class Face {
 	 * @return border values
 	 */
 	public double[] getBorder() {
-		double[] res = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
-				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
-		for (int i = 0; i < 3; i++) {
-			res[0] = Double.max(res[0], v[i].getVisualCoord()[0]);
-			res[1] = Double.max(res[1], v[i].getVisualCoord()[1]);
-			res[2] = Double.min(res[2], v[i].getVisualCoord()[0]);
-			res[3] = Double.min(res[3], v[i].getVisualCoord()[1]);
-			res[4] = Double.max(res[4], v[i].getVisualCoord()[2]);
-			res[5] = Double.min(res[5], v[i].getVisualCoord()[2]);
-		}
-		return res;
+		return mesh.getBorder(index, new double[6]);
 	}
 
 	@Override
 	public String toString() {
-		return Arrays.deepToString(v);
+		return Arrays.deepToString(getVertices());
 	}
 }
@@ -0,0 +1,219 @@
+package LokiViewer.Object;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Geometry of every face derived from the visual coordinates: x-y-z bounds,
+ * normal vector, average z value and shade color, kept in primitive arrays. The
+ * mesh counts changes of the visual coordinates in a version number, and the
+ * cache is only computed again when the version changed, so comparing, sorting
+ * and drawing faces in a frame share one computation. Large meshes are computed
+ * in parallel in the common pool.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class FaceCache {
+	/**
+	 * Face count below which the cache is computed on the calling thread
+	 */
+	public static final int parallelThreshold = 10000;
+	/**
+	 * Number of faces computed by one task
+	 */
+	private static final int faceBatchSize = 4096;
+
+	/**
+	 * The mesh storing the faces
+	 */
+	private Mesh mesh;
+	/**
+	 * Version of the visual coordinates the cache was computed for, -1 if never
+	 */
+	private long version = -1;
+	/**
+	 * Border of each face, six values per face in order of: x+, y+, x-, y-, z+, z-
+	 */
+	private double[] bounds;
+	/**
+	 * Normal vector of each face, three values per face
+	 */
+	private double[] normal;
+	/**
+	 * Average z value of each face
+	 */
+	private double[] depth;
+	/**
+	 * Blue component of the shade color of each face
+	 */
+	private int[] blue;
+
+	/**
+	 * Constructor, nothing is computed until update
+	 * 
+	 * @param mesh the mesh storing the faces
+	 */
+	FaceCache(Mesh mesh) {
+		this.mesh = mesh;
+		int n = mesh.getFaceCount();
+		bounds = new double[6 * n];
+		normal = new double[3 * n];
+		depth = new double[n];
+		blue = new int[n];
+	}
+
+	/**
+	 * Compute the cache again if the visual coordinates changed since the last
+	 * update
+	 */
+	void update() {
+		long current = mesh.getVersion();
+		if (version == current) {
+			return;
+		}
+		int n = mesh.getFaceCount();
+		if (n < parallelThreshold || ForkJoinPool.getCommonPoolParallelism() == 1) {
+			compute(0, n);
+		} else {
+			ForkJoinPool.commonPool().invoke(new UpdateTask(0, n));
+		}
+		version = current;
+	}
+
+	/**
+	 * Compute a range of faces
+	 * 
+	 * @param from first face, inclusive
+	 * @param to   last face, exclusive
+	 */
+	private void compute(int from, int to) {
+		for (int f = from; f < to; f++) {
+			mesh.getBorder(f, bounds, 6 * f);
+			int v0 = mesh.getFaceVertex(f, 0);
+			int v1 = mesh.getFaceVertex(f, 1);
+			int v2 = mesh.getFaceVertex(f, 2);
+			double x0 = mesh.getVisualCoord(v0, 0);
+			double y0 = mesh.getVisualCoord(v0, 1);
+			double z0 = mesh.getVisualCoord(v0, 2);
+			double e1x = mesh.getVisualCoord(v1, 0) - x0;
+			double e1y = mesh.getVisualCoord(v1, 1) - y0;
+			double e1z = mesh.getVisualCoord(v1, 2) - z0;
+			double e2x = mesh.getVisualCoord(v2, 0) - x0;
+			double e2y = mesh.getVisualCoord(v2, 1) - y0;
+			double e2z = mesh.getVisualCoord(v2, 2) - z0;
+			double nx = (e1y * e2z - e2y * e1z);
+			double ny = -(e1x * e2z - e2x * e1z);
+			double nz = (e1x * e2y - e2x * e1y);
+			normal[3 * f] = nx;
+			normal[3 * f + 1] = ny;
+			normal[3 * f + 2] = nz;
+			depth[f] = mesh.getAverageZValue(f);
+			// the angle of the face with z-axis is the complementary angle of the angle
+			// between z-axis and the normal vector
+			double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+			double angle = Math.asin(Math.abs(nz) / len);
+			blue[f] = (int) (95 + angle / Math.PI * 160 * 2);
+		}
+	}
+
+	/**
+	 * Get a border value of a face
+	 * 
+	 * @param f face index
+	 * @param k 0 to 5 for x+, y+, x-, y-, z+, z-
+	 * @return border value
+	 */
+	public double getBound(int f, int k) {
+		return bounds[6 * f + k];
+	}
+
+	/**
+	 * Get a component of the normal vector of a face
+	 * 
+	 * @param f face index
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return normal vector component, not normalized
+	 */
+	public double getNormal(int f, int k) {
+		return normal[3 * f + k];
+	}
+
+	/**
+	 * Get the average z value of a face
+	 * 
+	 * @param f face index
+	 * @return average z value
+	 */
+	public double getDepth(int f) {
+		return depth[f];
+	}
+
+	/**
+	 * Get the blue component of the shade color of a face
+	 * 
+	 * @param f face index
+	 * @return blue component
+	 */
+	public int getBlue(int f) {
+		return blue[f];
+	}
+
+	/**
+	 * Get the bounds array, not copied
+	 * 
+	 * @return six border values per face
+	 */
+	double[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Get the memory used by the arrays of the cache
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		return 8L * (bounds.length + normal.length + depth.length) + 4L * blue.length;
+	}
+
+	/**
+	 * Compute a range of faces, split in halves until it is small enough
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private class UpdateTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * First face, inclusive
+		 */
+		private int from;
+		/**
+		 * Last face, exclusive
+		 */
+		private int to;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param from first face, inclusive
+		 * @param to   last face, exclusive
+		 */
+		UpdateTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= faceBatchSize) {
+				FaceCache.this.compute(from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new UpdateTask(from, mid), new UpdateTask(mid, to));
+			}
+		}
+	}
+}
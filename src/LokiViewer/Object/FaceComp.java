@@ -9,6 +9,83 @@ import java.util.Comparator;
  *
  */
 public class FaceComp implements Comparator<Face> {
+	/**
+	 * Least z difference at an edge crossing that orders two faces
+	 */
+	private static final double minDepthGap = 1e-5;
+	/**
+	 * Rounding steps of a single precision visual coordinate that the z
+	 * difference at an edge crossing must exceed to order two faces
+	 */
+	private static final int floatSteps = 4;
+
+	/**
+	 * The mesh storing the faces to compare
+	 */
+	private Mesh mesh;
+
+	/**
+	 * Borders of all faces, six values per face, see FaceCache
+	 */
+	private double[] bounds;
+
+	/**
+	 * Z difference at an edge crossing below which the faces are not ordered,
+	 * larger than the rounding error of the visual coordinates
+	 */
+	private double epsilon;
+
+	/**
+	 * Constructor. The borders of the faces are read from the face cache of the
+	 * mesh, so the visual coordinates must not change while comparing.
+	 * 
+	 * @param mesh the mesh storing the faces to compare
+	 */
+	public FaceComp(Mesh mesh) {
+		this(mesh, mesh.getFaceCache());
+	}
+
+	/**
+	 * Constructor with a face cache already up to date, which lets several
+	 * threads compare faces at the same time, each with its own FaceComp
+	 * 
+	 * @param mesh  the mesh storing the faces to compare
+	 * @param cache the face cache of the mesh
+	 */
+	FaceComp(Mesh mesh, FaceCache cache) {
+		this.mesh = mesh;
+		this.bounds = cache.getBounds();
+		this.epsilon = depthEpsilon(mesh);
+	}
+
+	/**
+	 * Get the z difference at an edge crossing below which two faces of a mesh
+	 * are not ordered. Single precision visual coordinates are rounded to about 7
+	 * digits, so that a fixed epsilon would order faces by their rounding error,
+	 * which changes with every rotation; there the epsilon grows with the
+	 * magnitude of the z values.
+	 * 
+	 * @param mesh the mesh storing the faces
+	 * @return the epsilon
+	 */
+	static double depthEpsilon(Mesh mesh) {
+		if (!mesh.isSinglePrecision() || mesh.getVertexCount() == 0) {
+			return minDepthGap;
+		}
+		float largest = (float) Double.max(Math.abs(mesh.getMinZ()), Math.abs(mesh.getMaxZ()));
+		return Double.max(minDepthGap, floatSteps * Math.ulp(largest));
+	}
+
+	/**
+	 * Get visual coordinate component of a vertex
+	 * 
+	 * @param v vertex index
+	 * @param k component
+	 * @return visual coordinate component
+	 */
+	private double c(int v, int k) {
+		return mesh.getVisualCoord(v, k);
+	}
 
 	/**
 	 * Return if two edges have intersection on x-y plane, and if they have, which
@@ -32,13 +109,13 @@ public class FaceComp implements Comparator<Face> {
 	 * @param v4 v4
 	 * @return
 	 */
-	private int lineIntersection(Vertex v1, Vertex v2, Vertex v3, Vertex v4) {
-		double a1 = v2.getVisualCoord()[0] - v1.getVisualCoord()[0];
-		double b1 = v3.getVisualCoord()[0] - v4.getVisualCoord()[0];
-		double c1 = v1.getVisualCoord()[0] - v3.getVisualCoord()[0];
-		double a2 = v2.getVisualCoord()[1] - v1.getVisualCoord()[1];
-		double b2 = v3.getVisualCoord()[1] - v4.getVisualCoord()[1];
-		double c2 = v1.getVisualCoord()[1] - v3.getVisualCoord()[1];
+	private int lineIntersection(int v1, int v2, int v3, int v4) {
+		double a1 = c(v2, 0) - c(v1, 0);
+		double b1 = c(v3, 0) - c(v4, 0);
+		double c1 = c(v1, 0) - c(v3, 0);
+		double a2 = c(v2, 1) - c(v1, 1);
+		double b2 = c(v3, 1) - c(v4, 1);
+		double c2 = c(v1, 1) - c(v3, 1);
 		double dom = a1 * b2 - a2 * b1;
 		if (dom == 0)
 			return 0;
@@ -47,12 +124,12 @@ public class FaceComp implements Comparator<Face> {
 		if (alpha >= 1 || alpha <= 0 || beta >= 1 || beta <= 0) {
 			return 0;
 		}
-		double z1 = v1.getVisualCoord()[2] + alpha * (v2.getVisualCoord()[2] - v1.getVisualCoord()[2]);
-		double z2 = v3.getVisualCoord()[2] + beta * (v4.getVisualCoord()[2] - v3.getVisualCoord()[2]);
+		double z1 = c(v1, 2) + alpha * (c(v2, 2) - c(v1, 2));
+		double z2 = c(v3, 2) + beta * (c(v4, 2) - c(v3, 2));
 
-		if (z1 < z2 - 1e-5) {
+		if (z1 < z2 - epsilon) {
 			return -1;
-		} else if (z1 > z2 + 1e-5) {
+		} else if (z1 > z2 + epsilon) {
 			return 1;
 		} else {
 			return 0;
@@ -67,13 +144,13 @@ public class FaceComp implements Comparator<Face> {
 	 * @param f2 face2
 	 * @return
 	 */
-	private int intersection(Face f1, Face f2) {
+	private int intersection(int f1, int f2) {
 		for (int i = 0; i < 3; i++) {
 			for (int j = 0; j < 3; j++) {
-				var v1 = f1.getVertices()[i];
-				var v2 = f1.getVertices()[(i + 1) % 3];
-				var v3 = f2.getVertices()[j];
-				var v4 = f2.getVertices()[(j + 1) % 3];
+				int v1 = mesh.getFaceVertex(f1, i);
+				int v2 = mesh.getFaceVertex(f1, (i + 1) % 3);
+				int v3 = mesh.getFaceVertex(f2, j);
+				int v4 = mesh.getFaceVertex(f2, (j + 1) % 3);
 				int l = lineIntersection(v1, v2, v3, v4);
 				if (l != 0) {
 					return l;
@@ -83,39 +160,6 @@ public class FaceComp implements Comparator<Face> {
 		return 0;
 	}
 
-	/**
-	 * Get a vector v2 - v1
-	 * 
-	 * @param v1 start point of vector
-	 * @param v2 end point of vector
-	 * @return double array showing the vector
-	 */
-	private double[] getVector(Vertex v1, Vertex v2) {
-		return new double[] { v2.getVisualCoord()[0] - v1.getVisualCoord()[0],
-				v2.getVisualCoord()[1] - v1.getVisualCoord()[1] };
-	}
-
-	/**
-	 * Get the normal vector of a vector
-	 * 
-	 * @param vector vector
-	 * @return normal vector
-	 */
-	private double[] getNormelVector(double[] vector) {
-		return new double[] { vector[1], -vector[0] };
-	}
-
-	/**
-	 * Get inner product of two vectors
-	 * 
-	 * @param vector1
-	 * @param vector2
-	 * @return inner product
-	 */
-	private double getInnerProduct(double[] vector1, double[] vector2) {
-		return vector1[0] * vector2[0] + vector1[1] * vector2[1];
-	}
-
 	/**
 	 * Return if a vertex is in the face in xy projection<br>
 	 * Algorithm: Assume the vertex is v. If for each face edge (two vertices on
@@ -126,15 +170,19 @@ public class FaceComp implements Comparator<Face> {
 	 * @param face
 	 * @return if a vertex is in the face in xy projection
 	 */
-	private boolean pointInTriangle(Vertex v, Face face) {
+	private boolean pointInTriangle(int v, int face) {
 		for (int index1 = 0; index1 < 3; index1++) {
 			int index2 = (index1 + 1) % 3;
 			int index3 = (index1 + 2) % 3;
-			var vec = getVector(face.getVertices()[index1], face.getVertices()[index2]);
-			var norm = getNormelVector(vec);
-			var vec1 = getVector(face.getVertices()[index1], face.getVertices()[index3]);
-			var vec2 = getVector(face.getVertices()[index1], v);
-			if (getInnerProduct(norm, vec1) * getInnerProduct(norm, vec2) <= 0) {
+			int p1 = mesh.getFaceVertex(face, index1);
+			int p2 = mesh.getFaceVertex(face, index2);
+			int p3 = mesh.getFaceVertex(face, index3);
+			// normal vector of the edge p1 -> p2
+			double normX = c(p2, 1) - c(p1, 1);
+			double normY = -(c(p2, 0) - c(p1, 0));
+			double inner1 = normX * (c(p3, 0) - c(p1, 0)) + normY * (c(p3, 1) - c(p1, 1));
+			double inner2 = normX * (c(v, 0) - c(p1, 0)) + normY * (c(v, 1) - c(p1, 1));
+			if (inner1 * inner2 <= 0) {
 				return false;
 			}
 		}
@@ -156,19 +204,23 @@ public class FaceComp implements Comparator<Face> {
 	 * @param face
 	 * @return z valve of v's projection in face
 	 */
-	private double getZValue(Vertex v, Face face) {
-		var vec1 = getVector(face.getVertices()[0], face.getVertices()[1]);
-		var vec2 = getVector(face.getVertices()[0], face.getVertices()[2]);
-		var vec3 = getVector(face.getVertices()[0], v);
-		double denominator = vec1[0] * vec2[1] - vec1[1] * vec2[0];
+	private double getZValue(int v, int face) {
+		int p0 = mesh.getFaceVertex(face, 0);
+		int p1 = mesh.getFaceVertex(face, 1);
+		int p2 = mesh.getFaceVertex(face, 2);
+		double vec1x = c(p1, 0) - c(p0, 0);
+		double vec1y = c(p1, 1) - c(p0, 1);
+		double vec2x = c(p2, 0) - c(p0, 0);
+		double vec2y = c(p2, 1) - c(p0, 1);
+		double vec3x = c(v, 0) - c(p0, 0);
+		double vec3y = c(v, 1) - c(p0, 1);
+		double denominator = vec1x * vec2y - vec1y * vec2x;
 		if (denominator == 0) {
 			return Double.NaN;
 		}
-		double a = (vec3[0] * vec2[1] - vec2[0] * vec3[1]) / denominator;
-		double b = (vec1[0] * vec3[1] - vec3[0] * vec1[1]) / denominator;
-		return face.getVertices()[0].getVisualCoord()[2]
-				+ a * (face.getVertices()[1].getVisualCoord()[2] - face.getVertices()[0].getVisualCoord()[2])
-				+ b * (face.getVertices()[2].getVisualCoord()[2] - face.getVertices()[0].getVisualCoord()[2]);
+		double a = (vec3x * vec2y - vec2x * vec3y) / denominator;
+		double b = (vec1x * vec3y - vec3x * vec1y) / denominator;
+		return c(p0, 2) + a * (c(p1, 2) - c(p0, 2)) + b * (c(p2, 2) - c(p0, 2));
 	}
 
 	/**
@@ -182,11 +234,12 @@ public class FaceComp implements Comparator<Face> {
 	 * @return 1 or -1 if f1 and f2 are containing and has a z-order. 0 if they are
 	 *         separate.
 	 */
-	private int containing(Face f1, Face f2) {
+	private int containing(int f1, int f2) {
 		for (int i = 0; i < 3; i++) {
-			if (pointInTriangle(f1.getVertices()[i], f2)) {
-				double z = getZValue(f1.getVertices()[i], f2);
-				double vz = f1.getVertices()[i].getVisualCoord()[2];
+			int v1 = mesh.getFaceVertex(f1, i);
+			if (pointInTriangle(v1, f2)) {
+				double z = getZValue(v1, f2);
+				double vz = c(v1, 2);
 				if (z == Double.NaN) {
 					return 0;
 				}
@@ -198,9 +251,10 @@ public class FaceComp implements Comparator<Face> {
 					return 0;
 				}
 			}
-			if (pointInTriangle(f2.getVertices()[i], f1)) {
-				double z = getZValue(f2.getVertices()[i], f1);
-				double vz = f2.getVertices()[i].getVisualCoord()[2];
+			int v2 = mesh.getFaceVertex(f2, i);
+			if (pointInTriangle(v2, f1)) {
+				double z = getZValue(v2, f1);
+				double vz = c(v2, 2);
 				if (z == Double.NaN) {
 					return 0;
 				}
@@ -225,13 +279,26 @@ public class FaceComp implements Comparator<Face> {
 	 */
 	@Override
 	public int compare(Face f1, Face f2) {
-		var b1 = f1.getBorder();
-		var b2 = f2.getBorder();
-		if (b1[0] <= b2[2] || b2[0] <= b1[2] || b1[1] <= b2[3] || b2[1] <= b1[3]) {
+		return compare(f1.getIndex(), f2.getIndex());
+	}
+
+	/**
+	 * Compare the z-ordering of two faces of the mesh by index
+	 * 
+	 * @param f1 index of face1
+	 * @param f2 index of face2
+	 * @return -1 if f1 should be rendered earlier, 1 if later, 0 if the order
+	 *         doesn't matter
+	 */
+	public int compare(int f1, int f2) {
+		int b1 = 6 * f1;
+		int b2 = 6 * f2;
+		if (bounds[b1] <= bounds[b2 + 2] || bounds[b2] <= bounds[b1 + 2] || bounds[b1 + 1] <= bounds[b2 + 3]
+				|| bounds[b2 + 1] <= bounds[b1 + 3]) {
 			return 0;
-		} else if (b1[4] <= b2[5]) {
+		} else if (bounds[b1 + 4] <= bounds[b2 + 5]) {
 			return -1;
-		} else if (b2[4] <= b1[5]) {
+		} else if (bounds[b2 + 4] <= bounds[b1 + 5]) {
 			return 1;
 		}
 		int i = intersection(f1, f2);
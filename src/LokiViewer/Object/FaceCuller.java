@@ -0,0 +1,252 @@
+package LokiViewer.Object;
+
+import java.awt.Dimension;
+
+/**
+ * Reject the faces that cannot be seen before sorting and drawing: faces turned
+ * away from the viewer, and faces entirely outside the window.
+ * <p>
+ * The vertices of a face are sorted by id, so the stored corner order says
+ * nothing about which side is outside. The orientation is instead found once
+ * from the topology: starting from any face of a connected part, each
+ * neighbour across a shared edge must run along that edge in the opposite
+ * direction, which decides whether its stored order is flipped. The sign of
+ * the enclosed volume then tells which of the two consistent orientations
+ * points outward. Only closed and orientable parts are culled, since the inside
+ * of an open surface can be seen through its holes. A part is closed when
+ * every edge has a twin: a mesh whose seams repeat their vertices is open
+ * until its vertices are welded, see Object3D.weldVertices.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class FaceCuller {
+	/**
+	 * Pixels around the window in which faces are still drawn, for rounding
+	 */
+	private static final double windowMargin = 1;
+
+	/**
+	 * The mesh storing the faces
+	 */
+	private Mesh mesh;
+	/**
+	 * Orientation of each face: 1 if the stored corner order faces outward, -1 if
+	 * it faces inward, 0 if the face is on an open or non-orientable part and is
+	 * never back-face culled
+	 */
+	private byte[] facing;
+	/**
+	 * Number of faces with a known orientation
+	 */
+	private int orientedFaceCount;
+	/**
+	 * Faces kept by the last culling, ascending
+	 */
+	private int[] visible;
+	/**
+	 * Number of faces kept by the last culling
+	 */
+	private int visibleCount;
+	/**
+	 * Number of faces turned away from the viewer in the last culling
+	 */
+	private int backFaceCount;
+	/**
+	 * Number of faces outside the window in the last culling
+	 */
+	private int offScreenCount;
+
+	/**
+	 * Constructor, orient the faces of the mesh
+	 * 
+	 * @param mesh     the mesh storing the faces
+	 * @param topology topology of the mesh
+	 */
+	public FaceCuller(Mesh mesh, MeshTopology topology) {
+		this.mesh = mesh;
+		int n = mesh.getFaceCount();
+		facing = new byte[n];
+		visible = new int[n];
+		orient(topology);
+	}
+
+	/**
+	 * Find the outward orientation of every closed and orientable part with a
+	 * breadth first search over adjacent faces. The original coordinates never
+	 * change, so this is done once.
+	 * 
+	 * @param topology topology of the mesh
+	 */
+	private void orient(MeshTopology topology) {
+		int n = facing.length;
+		boolean[] visited = new boolean[n];
+		int[] queue = new int[n];
+		int tail = 0;
+		for (int seed = 0; seed < n; seed++) {
+			if (visited[seed]) {
+				continue;
+			}
+			int start = tail;
+			int head = tail;
+			visited[seed] = true;
+			facing[seed] = 1;
+			queue[tail++] = seed;
+			boolean closed = true;
+			boolean orientable = true;
+			double volume = 0;
+			// volume relative to a vertex of the part, to keep the terms small
+			int origin = mesh.getFaceVertex(seed, 0);
+			while (head < tail) {
+				int f = queue[head++];
+				volume += facing[f] * signedVolume(f, origin);
+				for (int k = 0; k < 3; k++) {
+					int t = topology.getTwin(3 * f + k);
+					if (t == -1) {
+						closed = false;
+						continue;
+					}
+					int g = t / 3;
+					// the same stored direction along the edge means opposite orientations
+					boolean same = mesh.getFaceVertex(f, k) == mesh.getFaceVertex(g, t % 3);
+					byte sign = (byte) (same ? -facing[f] : facing[f]);
+					if (!visited[g]) {
+						visited[g] = true;
+						facing[g] = sign;
+						queue[tail++] = g;
+					} else if (facing[g] != sign) {
+						orientable = false;
+					}
+				}
+			}
+			int outward = closed && orientable && volume != 0 ? (volume > 0 ? 1 : -1) : 0;
+			for (int i = start; i < tail; i++) {
+				facing[queue[i]] = (byte) (facing[queue[i]] * outward);
+			}
+			if (outward != 0) {
+				orientedFaceCount += tail - start;
+			}
+		}
+	}
+
+	/**
+	 * Get six times the signed volume of the tetrahedron made of a face, in
+	 * stored corner order, and an origin vertex
+	 * 
+	 * @param f      face index
+	 * @param origin origin vertex index
+	 * @return signed volume, times six
+	 */
+	private double signedVolume(int f, int origin) {
+		double[] p = new double[9];
+		for (int c = 0; c < 3; c++) {
+			int v = mesh.getFaceVertex(f, c);
+			for (int k = 0; k < 3; k++) {
+				p[3 * c + k] = mesh.getCoord(v, k) - mesh.getCoord(origin, k);
+			}
+		}
+		return p[0] * (p[4] * p[8] - p[5] * p[7]) - p[1] * (p[3] * p[8] - p[5] * p[6])
+				+ p[2] * (p[3] * p[7] - p[4] * p[6]);
+	}
+
+	/**
+	 * Cull the faces by the current visual coordinates of the mesh. A face is
+	 * turned away when its outward normal does not point to the viewer, i.e. its
+	 * z component is not positive.
+	 * 
+	 * @param d window dimension
+	 * @return number of faces kept, see getVisibleFaces
+	 */
+	public int cull(Dimension d) {
+		var cache = mesh.getFaceCache();
+		// the same window mapping as Face.getPolygon
+		double left = -(d.width / 2) - windowMargin;
+		double right = d.width - d.width / 2 + windowMargin;
+		double top = d.height / 2 + windowMargin;
+		double bottom = d.height / 2 - d.height - windowMargin;
+		int count = 0;
+		int back = 0;
+		int off = 0;
+		for (int f = 0; f < facing.length; f++) {
+			if (facing[f] != 0 && facing[f] * cache.getNormal(f, 2) <= 0) {
+				back++;
+			} else if (cache.getBound(f, 0) < left || cache.getBound(f, 2) > right || cache.getBound(f, 1) < bottom
+					|| cache.getBound(f, 3) > top) {
+				off++;
+			} else {
+				visible[count++] = f;
+			}
+		}
+		visibleCount = count;
+		backFaceCount = back;
+		offScreenCount = off;
+		return count;
+	}
+
+	/**
+	 * Get the faces kept by the last culling
+	 * 
+	 * @return face indices, ascending, owned by the culler and valid for the first
+	 *         getVisibleCount values until the next culling
+	 */
+	public int[] getVisibleFaces() {
+		return visible;
+	}
+
+	/**
+	 * Get the number of faces kept by the last culling
+	 * 
+	 * @return visible face count
+	 */
+	public int getVisibleCount() {
+		return visibleCount;
+	}
+
+	/**
+	 * Get the number of faces turned away from the viewer in the last culling
+	 * 
+	 * @return back face count
+	 */
+	public int getBackFaceCount() {
+		return backFaceCount;
+	}
+
+	/**
+	 * Get the number of faces outside the window in the last culling
+	 * 
+	 * @return off-screen face count
+	 */
+	public int getOffScreenCount() {
+		return offScreenCount;
+	}
+
+	/**
+	 * Get the number of faces on closed and orientable parts, the only faces that
+	 * can be back-face culled
+	 * 
+	 * @return oriented face count
+	 */
+	public int getOrientedFaceCount() {
+		return orientedFaceCount;
+	}
+
+	/**
+	 * Get the orientation of a face
+	 * 
+	 * @param f face index
+	 * @return 1 if the stored corner order faces outward, -1 if inward, 0 if
+	 *         unknown
+	 */
+	public int getFacing(int f) {
+		return facing[f];
+	}
+
+	/**
+	 * Get the memory used by the arrays of the culler
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		return facing.length + 4L * visible.length;
+	}
+}
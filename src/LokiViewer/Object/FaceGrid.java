@@ -0,0 +1,255 @@
+package LokiViewer.Object;
+
+/**
+ * A uniform grid over the x-y borders of the faces, used as a broad phase of
+ * the topological sorting. Only faces whose x-y borders overlap can have a
+ * rendering order, so only those pairs are handed to FaceComp.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class FaceGrid {
+
+	/**
+	 * Visitor of a pair of faces with overlapping borders
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	interface PairVisitor {
+		/**
+		 * Visit a pair of faces
+		 * 
+		 * @param f1 index of face1, always smaller than f2
+		 * @param f2 index of face2
+		 */
+		void visit(int f1, int f2);
+	}
+
+	/**
+	 * Upper limit of cell count per face
+	 */
+	private static final int maxCellsPerFace = 4;
+
+	/**
+	 * x-y border of each face, in order of: x+, y+, x-, y-
+	 */
+	private double[] border;
+	/**
+	 * Left border of the grid
+	 */
+	private double minX;
+	/**
+	 * Bottom border of the grid
+	 */
+	private double minY;
+	/**
+	 * Cell width
+	 */
+	private double cellWidth;
+	/**
+	 * Cell height
+	 */
+	private double cellHeight;
+	/**
+	 * Number of columns
+	 */
+	private int cols;
+	/**
+	 * Number of rows
+	 */
+	private int rows;
+	/**
+	 * Start of each cell in cellFaces, the last value is the total length
+	 */
+	private int[] cellStart;
+	/**
+	 * Face indices in each cell, ascending inside a cell
+	 */
+	private int[] cellFaces;
+
+	/**
+	 * Build the grid of all faces from the current visual coordinates of the
+	 * mesh
+	 * 
+	 * @param mesh  the mesh storing the faces
+	 * @param cache the face cache of the mesh, up to date
+	 */
+	FaceGrid(Mesh mesh, FaceCache cache) {
+		this(mesh, cache, null, mesh.getFaceCount());
+	}
+
+	/**
+	 * Build the grid of some faces from the current visual coordinates of the
+	 * mesh. The cell size follows the average face size, so that a face covers
+	 * only a few cells.
+	 * 
+	 * @param mesh  the mesh storing the faces
+	 * @param cache the face cache of the mesh, up to date
+	 * @param faces faces to put in the grid, ascending, or null for all faces
+	 * @param n     number of faces to put in the grid
+	 */
+	FaceGrid(Mesh mesh, FaceCache cache, int[] faces, int n) {
+		border = new double[4 * mesh.getFaceCount()];
+		double[] bounds = cache.getBounds();
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		double sumWidth = 0;
+		double sumHeight = 0;
+		for (int i = 0; i < n; i++) {
+			int f = faces == null ? i : faces[i];
+			int b = 6 * f;
+			System.arraycopy(bounds, b, border, 4 * f, 4);
+			maxX = Double.max(maxX, bounds[b]);
+			maxY = Double.max(maxY, bounds[b + 1]);
+			minX = Double.min(minX, bounds[b + 2]);
+			minY = Double.min(minY, bounds[b + 3]);
+			sumWidth += bounds[b] - bounds[b + 2];
+			sumHeight += bounds[b + 1] - bounds[b + 3];
+		}
+
+		double width = maxX - minX;
+		double height = maxY - minY;
+		if (n == 0 || !(width > 0) || !(height > 0) || Double.isInfinite(width) || Double.isInfinite(height)) {
+			cols = 1;
+			rows = 1;
+			cellWidth = Double.POSITIVE_INFINITY;
+			cellHeight = Double.POSITIVE_INFINITY;
+			if (n == 0) {
+				minX = 0;
+				minY = 0;
+			}
+		} else {
+			cellWidth = Double.max(sumWidth / n, width / n);
+			cellHeight = Double.max(sumHeight / n, height / n);
+			double cells = Math.ceil(width / cellWidth) * Math.ceil(height / cellHeight);
+			if (cells > (double) maxCellsPerFace * n) {
+				double scale = Math.sqrt(cells / ((double) maxCellsPerFace * n));
+				cellWidth *= scale;
+				cellHeight *= scale;
+			}
+			cols = Integer.max(1, (int) Math.ceil(width / cellWidth));
+			rows = Integer.max(1, (int) Math.ceil(height / cellHeight));
+		}
+
+		cellStart = new int[cols * rows + 1];
+		for (int i = 0; i < n; i++) {
+			int f = faces == null ? i : faces[i];
+			int x0 = col(border[4 * f + 2]);
+			int x1 = col(border[4 * f]);
+			int y0 = row(border[4 * f + 3]);
+			int y1 = row(border[4 * f + 1]);
+			for (int y = y0; y <= y1; y++) {
+				for (int x = x0; x <= x1; x++) {
+					cellStart[y * cols + x + 1]++;
+				}
+			}
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		cellFaces = new int[cellStart[cols * rows]];
+		int[] fill = new int[cols * rows];
+		for (int i = 0; i < n; i++) {
+			int f = faces == null ? i : faces[i];
+			int x0 = col(border[4 * f + 2]);
+			int x1 = col(border[4 * f]);
+			int y0 = row(border[4 * f + 3]);
+			int y1 = row(border[4 * f + 1]);
+			for (int y = y0; y <= y1; y++) {
+				for (int x = x0; x <= x1; x++) {
+					int c = y * cols + x;
+					cellFaces[cellStart[c] + fill[c]++] = f;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the column of an x coordinate
+	 * 
+	 * @param x x coordinate
+	 * @return column, clamped into the grid
+	 */
+	private int col(double x) {
+		int c = (int) ((x - minX) / cellWidth);
+		return Integer.min(cols - 1, Integer.max(0, c));
+	}
+
+	/**
+	 * Get the row of a y coordinate
+	 * 
+	 * @param y y coordinate
+	 * @return row, clamped into the grid
+	 */
+	private int row(double y) {
+		int r = (int) ((y - minY) / cellHeight);
+		return Integer.min(rows - 1, Integer.max(0, r));
+	}
+
+	/**
+	 * Get cell count
+	 * 
+	 * @return number of cells
+	 */
+	int getCellCount() {
+		return cols * rows;
+	}
+
+	/**
+	 * Get the number of faces in a cell
+	 * 
+	 * @param c cell index
+	 * @return face count of the cell
+	 */
+	int getCellSize(int c) {
+		return cellStart[c + 1] - cellStart[c];
+	}
+
+	/**
+	 * Visit every pair of faces whose x-y borders strictly overlap, in the given
+	 * range of cells. A pair sharing several cells is only visited in the cell
+	 * containing the lower left corner of the overlapping area, so each pair is
+	 * visited once over all cells.
+	 * 
+	 * @param fromCell first cell, inclusive
+	 * @param toCell   last cell, exclusive
+	 * @param visitor  visitor of the pairs
+	 */
+	void forEachOverlap(int fromCell, int toCell, PairVisitor visitor) {
+		for (int c = fromCell; c < toCell; c++) {
+			int start = cellStart[c];
+			int end = cellStart[c + 1];
+			for (int i = start; i < end; i++) {
+				int f1 = cellFaces[i];
+				int o1 = 4 * f1;
+				for (int j = i + 1; j < end; j++) {
+					int f2 = cellFaces[j];
+					int o2 = 4 * f2;
+					// the same rejection as FaceComp, where the order doesn't matter
+					if (border[o1] <= border[o2 + 2] || border[o2] <= border[o1 + 2]
+							|| border[o1 + 1] <= border[o2 + 3] || border[o2 + 1] <= border[o1 + 3]) {
+						continue;
+					}
+					double x = Double.max(border[o1 + 2], border[o2 + 2]);
+					double y = Double.max(border[o1 + 3], border[o2 + 3]);
+					if (row(y) * cols + col(x) != c) {
+						continue;
+					}
+					visitor.visit(f1, f2);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Visit every pair of faces whose x-y borders strictly overlap
+	 * 
+	 * @param visitor visitor of the pairs
+	 */
+	void forEachOverlap(PairVisitor visitor) {
+		forEachOverlap(0, getCellCount(), visitor);
+	}
+}
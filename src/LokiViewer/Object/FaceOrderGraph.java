@@ -0,0 +1,333 @@
+package LokiViewer.Object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The rendering order graph of the faces. An edge from face a to face b means a
+ * must be rendered before b. Only faces whose x-y borders overlap are compared,
+ * found with a FaceGrid, and the graph is kept in primitive arrays. For large
+ * meshes the comparisons are split across a ForkJoinPool by grid cells; each
+ * task fills its own edge buffer, and the buffers are merged and sorted, so the
+ * graph (and the sorting result) is the same for any number of threads.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class FaceOrderGraph {
+	/**
+	 * Face count below which the graph is always built on the calling thread
+	 */
+	public static final int parallelThreshold = 2000;
+	/**
+	 * Number of tasks per thread of the pool, to balance uneven cells
+	 */
+	private static final int tasksPerThread = 8;
+
+	/**
+	 * Number of faces
+	 */
+	private int faceCount;
+	/**
+	 * Faces in the graph, ascending, or null for all faces
+	 */
+	private int[] faces;
+	/**
+	 * Number of faces in the graph
+	 */
+	private int count;
+	/**
+	 * Start of the edges of each face in adj, the last value is the edge count
+	 */
+	private int[] adjStart;
+	/**
+	 * Destinations of the edges, ascending for each face
+	 */
+	private int[] adj;
+	/**
+	 * In-degree of each face
+	 */
+	private int[] inDegree;
+	/**
+	 * Number of FaceComp comparisons made
+	 */
+	private long comparisons;
+
+	/**
+	 * Build the graph from the current visual coordinates of the mesh on the
+	 * calling thread
+	 * 
+	 * @param mesh the mesh storing the faces
+	 */
+	public FaceOrderGraph(Mesh mesh) {
+		this(mesh, null);
+	}
+
+	/**
+	 * Build the graph from the current visual coordinates of the mesh, comparing
+	 * faces in the given pool when the mesh is large enough
+	 * 
+	 * @param mesh the mesh storing the faces
+	 * @param pool the pool to run comparisons in, or null to run on the calling
+	 *             thread
+	 */
+	public FaceOrderGraph(Mesh mesh, ForkJoinPool pool) {
+		this(mesh, pool, null, mesh.getFaceCount());
+	}
+
+	/**
+	 * Build the graph of some faces from the current visual coordinates of the
+	 * mesh, e.g. the faces left after culling
+	 * 
+	 * @param mesh  the mesh storing the faces
+	 * @param pool  the pool to run comparisons in, or null to run on the calling
+	 *              thread
+	 * @param faces faces in the graph, ascending, or null for all faces
+	 * @param count number of faces in the graph
+	 */
+	public FaceOrderGraph(Mesh mesh, ForkJoinPool pool, int[] faces, int count) {
+		faceCount = mesh.getFaceCount();
+		this.faces = faces;
+		this.count = count;
+		var cache = mesh.getFaceCache();
+		var grid = new FaceGrid(mesh, cache, faces, count);
+		long[] edges;
+		if (pool == null || pool.getParallelism() == 1 || count < parallelThreshold) {
+			var buffer = compareCells(mesh, cache, grid, 0, grid.getCellCount());
+			comparisons = buffer.comparisons;
+			edges = buffer.toSortedArray();
+		} else {
+			edges = pool.invoke(new CompareTask(mesh, cache, grid, pool.getParallelism() * tasksPerThread));
+		}
+		build(edges);
+	}
+
+	/**
+	 * Compare the overlapping faces in a range of cells
+	 * 
+	 * @param mesh     the mesh storing the faces
+	 * @param cache    the face cache of the mesh, up to date
+	 * @param grid     grid of the faces
+	 * @param fromCell first cell, inclusive
+	 * @param toCell   last cell, exclusive
+	 * @return edges found, unsorted
+	 */
+	private static EdgeBuffer compareCells(Mesh mesh, FaceCache cache, FaceGrid grid, int fromCell, int toCell) {
+		var comp = new FaceComp(mesh, cache);
+		var edges = new EdgeBuffer();
+		grid.forEachOverlap(fromCell, toCell, (i, j) -> {
+			int res = comp.compare(i, j);
+			edges.comparisons++;
+			if (res == -1) {
+				edges.add(i, j);
+			} else if (res == 1) {
+				edges.add(j, i);
+			}
+		});
+		return edges;
+	}
+
+	/**
+	 * Build the adjacency arrays from the edges
+	 * 
+	 * @param edges edges sorted by source then destination, see EdgeBuffer
+	 */
+	private void build(long[] edges) {
+		adjStart = new int[faceCount + 1];
+		adj = new int[edges.length];
+		inDegree = new int[faceCount];
+		for (int e = 0; e < edges.length; e++) {
+			int src = (int) (edges[e] >>> 32);
+			int dst = (int) edges[e];
+			adjStart[src + 1]++;
+			adj[e] = dst;
+			inDegree[dst]++;
+		}
+		for (int f = 0; f < faceCount; f++) {
+			adjStart[f + 1] += adjStart[f];
+		}
+	}
+
+	/**
+	 * Get the number of comparisons made while building the graph
+	 * 
+	 * @return comparison count
+	 */
+	public long getComparisons() {
+		return comparisons;
+	}
+
+	/**
+	 * Get the number of edges
+	 * 
+	 * @return edge count
+	 */
+	public int getEdgeCount() {
+		return adj.length;
+	}
+
+	/**
+	 * Topological sorting with Kahn's algorithm. Faces with no incoming edge are
+	 * kept in a stack, in the same order as the ArrayDeque used before.
+	 * 
+	 * @return rendering order of the faces
+	 */
+	public int[] sort() {
+		int[] deg = inDegree.clone();
+		int[] stack = new int[count];
+		int top = 0;
+		for (int i = 0; i < count; i++) {
+			int f = faces == null ? i : faces[i];
+			if (deg[f] == 0) {
+				stack[top++] = f;
+			}
+		}
+		int[] sortRes = new int[count];
+		int count = 0;
+		while (top != 0) {
+			int head = stack[--top];
+			sortRes[count++] = head;
+			for (int e = adjStart[head]; e < adjStart[head + 1]; e++) {
+				int dest = adj[e];
+				deg[dest]--;
+				if (deg[dest] == 0) {
+					stack[top++] = dest;
+				}
+			}
+		}
+		return Arrays.copyOf(sortRes, count);
+	}
+
+	/**
+	 * Split the cells into ranges of similar work, compare each range in its own
+	 * task with its own edge buffer, then merge the buffers into one sorted array
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private class CompareTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The mesh storing the faces
+		 */
+		private Mesh mesh;
+		/**
+		 * The face cache of the mesh
+		 */
+		private FaceCache cache;
+		/**
+		 * Grid of the faces
+		 */
+		private FaceGrid grid;
+		/**
+		 * Number of ranges to split the cells into
+		 */
+		private int taskCount;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param mesh      the mesh storing the faces
+		 * @param cache     the face cache of the mesh, up to date
+		 * @param grid      grid of the faces
+		 * @param taskCount number of ranges to split the cells into
+		 */
+		CompareTask(Mesh mesh, FaceCache cache, FaceGrid grid, int taskCount) {
+			this.mesh = mesh;
+			this.cache = cache;
+			this.grid = grid;
+			this.taskCount = taskCount;
+		}
+
+		@Override
+		protected long[] compute() {
+			// the pair count of a cell grows with the square of its face count
+			int cells = grid.getCellCount();
+			double total = 0;
+			for (int c = 0; c < cells; c++) {
+				double size = grid.getCellSize(c);
+				total += size * size;
+			}
+			ArrayList<ForkJoinTask<EdgeBuffer>> tasks = new ArrayList<>();
+			double work = 0;
+			int from = 0;
+			for (int c = 0; c < cells; c++) {
+				double size = grid.getCellSize(c);
+				work += size * size;
+				if (work >= total / taskCount * (tasks.size() + 1) || c == cells - 1) {
+					int fromCell = from;
+					int toCell = c + 1;
+					tasks.add(ForkJoinTask.adapt(() -> compareCells(mesh, cache, grid, fromCell, toCell)));
+					from = c + 1;
+				}
+			}
+			ForkJoinTask.invokeAll(tasks);
+
+			int size = 0;
+			for (var task : tasks) {
+				var buffer = task.join();
+				size += buffer.size;
+				comparisons += buffer.comparisons;
+			}
+			long[] edges = new long[size];
+			int offset = 0;
+			for (var task : tasks) {
+				var buffer = task.join();
+				System.arraycopy(buffer.data, 0, edges, offset, buffer.size);
+				offset += buffer.size;
+			}
+			Arrays.parallelSort(edges);
+			return edges;
+		}
+	}
+
+	/**
+	 * Growable buffer of edges, each packed in a long as source in the high 32
+	 * bits and destination in the low 32 bits
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	static class EdgeBuffer {
+		/**
+		 * Packed edges
+		 */
+		private long[] data = new long[64];
+		/**
+		 * Number of edges
+		 */
+		private int size;
+		/**
+		 * Number of comparisons made to find the edges
+		 */
+		long comparisons;
+
+		/**
+		 * Add an edge
+		 * 
+		 * @param src source face
+		 * @param dst destination face
+		 */
+		void add(int src, int dst) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = ((long) src << 32) | dst;
+		}
+
+		/**
+		 * Get the edges sorted by source then destination
+		 * 
+		 * @return sorted packed edges
+		 */
+		long[] toSortedArray() {
+			long[] res = Arrays.copyOf(data, size);
+			Arrays.sort(res);
+			return res;
+		}
+	}
+}
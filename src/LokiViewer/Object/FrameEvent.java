@@ -0,0 +1,63 @@
+package LokiViewer.Object;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of drawing one frame of an object, see FrameStats
+ * 
+ * @author Renhao Lu
+ *
+ */
+@Name("LokiViewer.Frame")
+@Label("Frame")
+@Category("LokiViewer")
+@StackTrace(false)
+@Description("Drawing one frame of an object")
+class FrameEvent extends jdk.jfr.Event {
+	/**
+	 * Number of the frame
+	 */
+	@Label("Frame")
+	long frame;
+
+	/**
+	 * How the faces were rendered
+	 */
+	@Label("Render Mode")
+	String renderMode;
+
+	/**
+	 * Number of faces of the mesh drawn, which is a simplified level while the
+	 * object is dragged
+	 */
+	@Label("Faces")
+	int faces;
+
+	/**
+	 * Number of faces culled
+	 */
+	@Label("Faces Culled")
+	long facesCulled;
+
+	/**
+	 * Number of faces sorted
+	 */
+	@Label("Faces Sorted")
+	long facesSorted;
+
+	/**
+	 * Number of face comparisons of the topological sort
+	 */
+	@Label("Comparisons")
+	long comparisons;
+
+	/**
+	 * Number of faces drawn
+	 */
+	@Label("Faces Drawn")
+	long facesDrawn;
+}
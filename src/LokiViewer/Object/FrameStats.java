@@ -0,0 +1,296 @@
+package LokiViewer.Object;
+
+/**
+ * Time spent in each stage of drawing a frame of an object, and the number of
+ * elements each stage processed. An object keeps the statistics of its last
+ * frame, updated on the thread drawing it; a copy can be taken for another
+ * thread, e.g. to show the timings on screen. Each stage and frame is also
+ * committed as a flight recorder event, see StageEvent and FrameEvent, so a
+ * recording shows the same timings without attaching a profiler.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class FrameStats {
+	/**
+	 * The stages of the pipeline, in order
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	public enum Stage {
+		/**
+		 * Rotations since the last frame, counting the vertices transformed
+		 */
+		ROTATE("rotate"),
+		/**
+		 * Rescaling to the window, counting the vertices transformed
+		 */
+		ZOOM_AND_SHIFT("zoom and shift"),
+		/**
+		 * Culling hidden faces, counting the faces culled
+		 */
+		CULL("cull"),
+		/**
+		 * Sorting the faces in rendering order, counting the faces sorted
+		 */
+		ORDER("order faces"),
+		/**
+		 * Drawing the faces, counting the faces drawn
+		 */
+		DRAW_FACES("draw faces"),
+		/**
+		 * Drawing the vertices and edges, counting both
+		 */
+		DRAW_VERTICES_AND_EDGES("draw vertices and edges");
+
+		/**
+		 * Name of the stage
+		 */
+		private final String label;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param label name of the stage
+		 */
+		Stage(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	/**
+	 * Number of stages
+	 */
+	private static final int stageCount = Stage.values().length;
+
+	/**
+	 * Time spent in each stage in the last frame, in nanoseconds
+	 */
+	private long[] nanos = new long[stageCount];
+	/**
+	 * Elements processed by each stage in the last frame
+	 */
+	private long[] counts = new long[stageCount];
+	/**
+	 * Start time of each running stage
+	 */
+	private long[] starts = new long[stageCount];
+	/**
+	 * Flight recorder event of each running stage
+	 */
+	private StageEvent[] events = new StageEvent[stageCount];
+	/**
+	 * Time spent in rotations since the last frame began
+	 */
+	private long pendingRotateNanos;
+	/**
+	 * Vertices transformed by rotations since the last frame began
+	 */
+	private long pendingRotateCount;
+
+	/**
+	 * Number of frames begun
+	 */
+	private long frame;
+	/**
+	 * Start time of the last frame
+	 */
+	private long frameStart;
+	/**
+	 * Time spent drawing the last frame, in nanoseconds
+	 */
+	private long frameNanos;
+	/**
+	 * Flight recorder event of the running frame
+	 */
+	private FrameEvent frameEvent;
+	/**
+	 * How the faces of the last frame were rendered
+	 */
+	private RenderMode renderMode;
+	/**
+	 * Number of faces of the mesh drawn in the last frame
+	 */
+	private int faces;
+	/**
+	 * Face comparisons of the topological sort in the last frame
+	 */
+	private long comparisons;
+
+	/**
+	 * Begin a frame, which starts with the rotations done since the last frame
+	 */
+	void beginFrame() {
+		frame++;
+		for (int s = 0; s < stageCount; s++) {
+			nanos[s] = 0;
+			counts[s] = 0;
+		}
+		nanos[Stage.ROTATE.ordinal()] = pendingRotateNanos;
+		counts[Stage.ROTATE.ordinal()] = pendingRotateCount;
+		pendingRotateNanos = 0;
+		pendingRotateCount = 0;
+		comparisons = 0;
+		frameEvent = new FrameEvent();
+		frameEvent.begin();
+		frameStart = System.nanoTime();
+	}
+
+	/**
+	 * End the frame
+	 * 
+	 * @param renderMode how the faces were rendered
+	 * @param faces      number of faces of the mesh drawn
+	 */
+	void endFrame(RenderMode renderMode, int faces) {
+		frameNanos = System.nanoTime() - frameStart;
+		this.renderMode = renderMode;
+		this.faces = faces;
+		var event = frameEvent;
+		frameEvent = null;
+		if (event.shouldCommit()) {
+			event.frame = frame;
+			event.renderMode = renderMode.toString();
+			event.faces = faces;
+			event.facesCulled = getCount(Stage.CULL);
+			event.facesSorted = getCount(Stage.ORDER);
+			event.comparisons = comparisons;
+			event.facesDrawn = getCount(Stage.DRAW_FACES);
+			event.commit();
+		}
+	}
+
+	/**
+	 * Begin a stage
+	 * 
+	 * @param stage the stage
+	 */
+	void begin(Stage stage) {
+		var event = new StageEvent();
+		event.begin();
+		events[stage.ordinal()] = event;
+		starts[stage.ordinal()] = System.nanoTime();
+	}
+
+	/**
+	 * End a stage. A rotation ends outside of a frame and counts in the next one.
+	 * 
+	 * @param stage the stage
+	 * @param count number of elements processed
+	 */
+	void end(Stage stage, long count) {
+		int s = stage.ordinal();
+		long time = System.nanoTime() - starts[s];
+		if (stage == Stage.ROTATE) {
+			pendingRotateNanos += time;
+			pendingRotateCount += count;
+		} else {
+			nanos[s] += time;
+			counts[s] += count;
+		}
+		var event = events[s];
+		events[s] = null;
+		if (event.shouldCommit()) {
+			event.stage = stage.toString();
+			event.count = count;
+			event.frame = stage == Stage.ROTATE ? frame + 1 : frame;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Set the face comparisons of the topological sort
+	 * 
+	 * @param comparisons comparison count
+	 */
+	void setComparisons(long comparisons) {
+		this.comparisons = comparisons;
+	}
+
+	/**
+	 * Copy the statistics of another frame
+	 * 
+	 * @param other statistics to copy
+	 */
+	public void set(FrameStats other) {
+		System.arraycopy(other.nanos, 0, nanos, 0, stageCount);
+		System.arraycopy(other.counts, 0, counts, 0, stageCount);
+		frame = other.frame;
+		frameNanos = other.frameNanos;
+		renderMode = other.renderMode;
+		faces = other.faces;
+		comparisons = other.comparisons;
+	}
+
+	/**
+	 * Get the time spent in a stage in the last frame
+	 * 
+	 * @param stage the stage
+	 * @return time in nanoseconds
+	 */
+	public long getNanos(Stage stage) {
+		return nanos[stage.ordinal()];
+	}
+
+	/**
+	 * Get the number of elements processed by a stage in the last frame
+	 * 
+	 * @param stage the stage
+	 * @return element count, see Stage
+	 */
+	public long getCount(Stage stage) {
+		return counts[stage.ordinal()];
+	}
+
+	/**
+	 * Get the number of frames drawn
+	 * 
+	 * @return frame count
+	 */
+	public long getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Get the time spent drawing the last frame, without the rotations before it
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public long getFrameNanos() {
+		return frameNanos;
+	}
+
+	/**
+	 * Get how the faces of the last frame were rendered
+	 * 
+	 * @return render mode, null before the first frame
+	 */
+	public RenderMode getRenderMode() {
+		return renderMode;
+	}
+
+	/**
+	 * Get the number of faces of the mesh drawn in the last frame, fewer than the
+	 * faces of the object if a simplified level was drawn
+	 * 
+	 * @return face count
+	 */
+	public int getFaces() {
+		return faces;
+	}
+
+	/**
+	 * Get the face comparisons of the topological sort in the last frame
+	 * 
+	 * @return comparison count, 0 in other render modes
+	 */
+	public long getComparisons() {
+		return comparisons;
+	}
+}
@@ -0,0 +1,38 @@
+package LokiViewer.Object;
+
+/**
+ * Follows the loading of a model file, see Object3D.open. The methods are
+ * called on the loading threads, which may be threads of the parsing pool.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public interface LoadListener {
+	/**
+	 * Called as the model file is read
+	 * 
+	 * @param bytesRead  bytes of the file read so far
+	 * @param totalBytes size of the file
+	 */
+	void progress(long bytesRead, long totalBytes);
+
+	/**
+	 * Called with a partial object that can be shown before loading is done:
+	 * first the vertices alone, once the vertex lines are parsed, then the
+	 * vertices with the faces parsed so far. A partial object has no edges and
+	 * shares its vertex arrays with the final object.
+	 * 
+	 * @param partial the partial object
+	 */
+	void preview(Object3D partial);
+
+	/**
+	 * Whether loading should stop. It is checked every time a block of the file
+	 * is read, and between the steps of Object3D.open that follow: welding,
+	 * building the object and writing the cache file. Loading then throws a
+	 * CancellationException.
+	 * 
+	 * @return true to stop loading
+	 */
+	boolean isCancelled();
+}
@@ -0,0 +1,138 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from long keys to int values, kept in two primitive arrays with
+ * open addressing and linear probing. Keys must not be negative, -1 marks an
+ * empty slot. No entry can be removed.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class LongIntMap {
+	/**
+	 * Marker of an empty slot
+	 */
+	private static final long empty = -1;
+
+	/**
+	 * Keys, empty slots hold -1
+	 */
+	private long[] keys;
+	/**
+	 * Values of the keys in the same slot
+	 */
+	private int[] values;
+	/**
+	 * Number of entries
+	 */
+	private int size;
+	/**
+	 * Slot count minus one, the slot count is a power of two
+	 */
+	private int mask;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param expectedSize number of entries expected, to avoid growing
+	 */
+	LongIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Integer.max(4, expectedSize) * 2 - 1) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * Allocate empty slots
+	 * 
+	 * @param capacity slot count, a power of two
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, empty);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Get the first slot to probe for a key
+	 * 
+	 * @param key the key
+	 * @return slot index
+	 */
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Get the value of a key
+	 * 
+	 * @param key          the key, not negative
+	 * @param defaultValue value returned when the key is absent
+	 * @return value of the key, or defaultValue
+	 */
+	int get(long key, int defaultValue) {
+		int i = slot(key);
+		while (keys[i] != empty) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Put a key if it is absent
+	 * 
+	 * @param key   the key, not negative
+	 * @param value value to put
+	 * @return the value already kept for the key, or -1 if the key was absent and
+	 *         value is put
+	 */
+	int putIfAbsent(long key, int value) {
+		int i = slot(key);
+		while (keys[i] != empty) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > keys.length / 2) {
+			grow();
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the number of entries
+	 * 
+	 * @return entry count
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Double the slot count and put all entries again
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != empty) {
+				int i = slot(oldKeys[j]);
+				while (keys[i] != empty) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,496 @@
+package LokiViewer.Object;
+
+/**
+ * Packed storage of the vertices and faces of an object. Coordinates are kept
+ * in dense arrays indexed by the vertex index (three values per vertex), and
+ * faces are kept in a triangle index buffer (three vertex indices per face).
+ * Vertex and Face objects are only lightweight views on top of this storage.
+ * <p>
+ * The coordinates are stored in double precision, or in single precision to
+ * halve their memory. A single precision mesh is built from coordinates parsed
+ * or read straight into floats, see of, so no double precision copy of its
+ * coordinates or visual coordinates is ever allocated. Single precision
+ * coordinates are transformed in double precision and rounded when stored, so
+ * the visual coordinates of such a mesh have a relative error of about 6e-8.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class Mesh {
+	/**
+	 * Number of vertices
+	 */
+	private int vertexCount;
+	/**
+	 * Number of faces
+	 */
+	private int faceCount;
+	/**
+	 * Original id of each vertex in the input file
+	 */
+	private int[] ids;
+	/**
+	 * origin coordinates from input file, x, y, z of each vertex, null in single
+	 * precision
+	 */
+	private double[] coord;
+	/**
+	 * origin coordinates in single precision, null in double precision
+	 */
+	private float[] floatCoord;
+	/**
+	 * Transform of the coordinates after rescale but before rotation
+	 */
+	private ViewTransform rescaleTransform;
+	/**
+	 * Transform of the coordinates after rotation, which is to draw in the window
+	 */
+	private ViewTransform visualTransform;
+	/**
+	 * coordinate after rotation, which is to draw in the window, the result of
+	 * visualTransform, null in single precision
+	 */
+	private double[] visualCoord;
+	/**
+	 * coordinate after rotation in single precision, null in double precision
+	 */
+	private float[] floatVisualCoord;
+	/**
+	 * Index of the first vertex of the largest visual z value
+	 */
+	private int nearestVertex;
+	/**
+	 * Smallest visual z value
+	 */
+	private double minZ;
+	/**
+	 * Largest visual z value
+	 */
+	private double maxZ;
+	/**
+	 * Vertex indices of each face, sorted by vertex id inside a face
+	 */
+	private int[] triangles;
+	/**
+	 * Number of changes of the visual coordinates, to tell when derived face
+	 * geometry is out of date
+	 */
+	private long version;
+	/**
+	 * Per-face geometry derived from the visual coordinates, created when first
+	 * used
+	 */
+	private FaceCache faceCache;
+
+	/**
+	 * Constructor. The rescaled and visual coordinates start as the original
+	 * coordinates, which are never changed.
+	 * 
+	 * @param ids       vertex ids
+	 * @param coord     vertex coordinates, three values per vertex
+	 * @param triangles vertex indices of faces, three indices per face
+	 */
+	Mesh(int[] ids, double[] coord, int[] triangles) {
+		this.vertexCount = ids.length;
+		this.faceCount = triangles.length / 3;
+		this.ids = ids;
+		this.coord = coord;
+		this.rescaleTransform = new ViewTransform();
+		this.visualTransform = new ViewTransform();
+		this.visualCoord = new double[coord.length];
+		this.triangles = triangles;
+		project();
+	}
+
+	/**
+	 * Constructor of a single precision mesh. The rescaled and visual coordinates
+	 * start as the original coordinates, which are never changed.
+	 * 
+	 * @param ids       vertex ids
+	 * @param coord     vertex coordinates, three values per vertex
+	 * @param triangles vertex indices of faces, three indices per face
+	 */
+	Mesh(int[] ids, float[] coord, int[] triangles) {
+		this.vertexCount = ids.length;
+		this.faceCount = triangles.length / 3;
+		this.ids = ids;
+		this.floatCoord = coord;
+		this.rescaleTransform = new ViewTransform();
+		this.visualTransform = new ViewTransform();
+		this.floatVisualCoord = new float[coord.length];
+		this.triangles = triangles;
+		project();
+	}
+
+	/**
+	 * Create a mesh in the precision of the coordinates given
+	 * 
+	 * @param ids        vertex ids
+	 * @param coord      vertex coordinates in double precision, or null
+	 * @param floatCoord vertex coordinates in single precision, or null if coord
+	 *                   is given
+	 * @param triangles  vertex indices of faces, three indices per face
+	 * @return the mesh
+	 */
+	static Mesh of(int[] ids, double[] coord, float[] floatCoord, int[] triangles) {
+		return coord != null ? new Mesh(ids, coord, triangles) : new Mesh(ids, floatCoord, triangles);
+	}
+
+	/**
+	 * Round coordinates to single precision
+	 * 
+	 * @param coord coordinates in double precision
+	 * @return a new array of the rounded coordinates
+	 */
+	static float[] narrow(double[] coord) {
+		float[] narrow = new float[coord.length];
+		for (int i = 0; i < coord.length; i++) {
+			narrow[i] = (float) coord[i];
+		}
+		return narrow;
+	}
+
+	/**
+	 * Whether the coordinates are stored in single precision
+	 * 
+	 * @return true in single precision, false in double precision
+	 */
+	public boolean isSinglePrecision() {
+		return floatCoord != null;
+	}
+
+	/**
+	 * Get vertex count
+	 * 
+	 * @return number of vertices
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Get face count
+	 * 
+	 * @return number of faces
+	 */
+	public int getFaceCount() {
+		return faceCount;
+	}
+
+	/**
+	 * Get the id of a vertex
+	 * 
+	 * @param v vertex index
+	 * @return id in the input file
+	 */
+	public int getID(int v) {
+		return ids[v];
+	}
+
+	/**
+	 * Get one component of the original coordinate
+	 * 
+	 * @param v vertex index
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return original coordinate component
+	 */
+	public double getCoord(int v, int k) {
+		return coord != null ? coord[3 * v + k] : floatCoord[3 * v + k];
+	}
+
+	/**
+	 * Get one component of the rescaled coordinate
+	 * 
+	 * @param v vertex index
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return coordinate component after rescaling
+	 */
+	public double getRescaleCoord(int v, int k) {
+		return coord != null ? rescaleTransform.apply(coord, 3 * v, k) : rescaleTransform.apply(floatCoord, 3 * v, k);
+	}
+
+	/**
+	 * Get one component of the visual coordinate
+	 * 
+	 * @param v vertex index
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return visual coordinate component after rotation
+	 */
+	public double getVisualCoord(int v, int k) {
+		return visualCoord != null ? visualCoord[3 * v + k] : floatVisualCoord[3 * v + k];
+	}
+
+	/**
+	 * Get the index of one vertex of a face
+	 * 
+	 * @param f face index
+	 * @param k vertex position in face, 0 to 2
+	 * @return vertex index
+	 */
+	public int getFaceVertex(int f, int k) {
+		return triangles[3 * f + k];
+	}
+
+	/**
+	 * Apply zoom factor and shift to the rescale transform, and show the result
+	 * 
+	 * @param zoomAndShift zoom factor, x-shift, y-shift
+	 */
+	void applyZoomAndShift(double[] zoomAndShift) {
+		rescaleTransform.zoomAndShift(zoomAndShift);
+		visualTransform.set(rescaleTransform);
+		project();
+	}
+
+	/**
+	 * Set the visual transform to the rescale transform followed by a rotation,
+	 * and show the result
+	 * 
+	 * @param matrix       rotation matrix
+	 * @param rotateOrigin rotation origin
+	 */
+	void rotate(RotationMatrix matrix, double[] rotateOrigin) {
+		visualTransform.rotate(rescaleTransform, matrix, rotateOrigin);
+		project();
+	}
+
+	/**
+	 * After rotation, keep the visual transform as the rescale transform
+	 */
+	void updateRescaleCoord() {
+		rescaleTransform.set(visualTransform);
+	}
+
+	/**
+	 * Take the rescale and visual transforms of another mesh in the same original
+	 * coordinates, e.g. a simplified level of this mesh, and show the result
+	 * 
+	 * @param other the mesh to copy the transforms from
+	 */
+	void copyTransform(Mesh other) {
+		rescaleTransform.set(other.rescaleTransform);
+		visualTransform.set(other.visualTransform);
+		project();
+	}
+
+	/**
+	 * Transform the original coordinates into the visual coordinates, and find
+	 * the z range and the nearest vertex on the way
+	 */
+	private void project() {
+		if (coord != null) {
+			visualTransform.apply(coord, visualCoord, 0, vertexCount);
+		} else {
+			visualTransform.apply(floatCoord, floatVisualCoord, 0, vertexCount);
+		}
+		nearestVertex = -1;
+		maxZ = Double.NEGATIVE_INFINITY;
+		minZ = Double.POSITIVE_INFINITY;
+		for (int v = 0; v < vertexCount; v++) {
+			double z = getVisualCoord(v, 2);
+			if (z > maxZ) {
+				maxZ = z;
+				nearestVertex = v;
+			}
+			if (z < minZ) {
+				minZ = z;
+			}
+		}
+		version++;
+	}
+
+	/**
+	 * Transform points in the original coordinates that are not vertices, e.g.
+	 * the points where a BspTree splits faces, into the visual coordinates
+	 * 
+	 * @param src   packed original coordinates
+	 * @param dst   packed coordinates to write the visual coordinates in
+	 * @param count number of points
+	 */
+	void applyVisualTransform(double[] src, double[] dst, int count) {
+		visualTransform.apply(src, dst, 0, count);
+	}
+
+	/**
+	 * Get the direction in the original coordinates pointing towards the viewer
+	 * 
+	 * @return the direction, x, y, z, not normalized
+	 */
+	double[] getViewDirection() {
+		return visualTransform.getViewDirection();
+	}
+
+	/**
+	 * Get the first vertex of the largest visual z value
+	 * 
+	 * @return vertex index, -1 if there is no vertex
+	 */
+	int getNearestVertex() {
+		return nearestVertex;
+	}
+
+	/**
+	 * Get the smallest visual z value
+	 * 
+	 * @return smallest z
+	 */
+	double getMinZ() {
+		return minZ;
+	}
+
+	/**
+	 * Get the largest visual z value
+	 * 
+	 * @return largest z
+	 */
+	double getMaxZ() {
+		return maxZ;
+	}
+
+	/**
+	 * Get the vertex ids array, not copied
+	 * 
+	 * @return id of each vertex
+	 */
+	int[] getIDs() {
+		return ids;
+	}
+
+	/**
+	 * Get the original coordinates in double precision: the array itself, not
+	 * copied, of a double precision mesh, or a widened copy of a single precision
+	 * one
+	 * 
+	 * @return x, y, z of each vertex
+	 */
+	double[] getCoords() {
+		if (coord != null) {
+			return coord;
+		}
+		double[] wide = new double[floatCoord.length];
+		for (int i = 0; i < floatCoord.length; i++) {
+			wide[i] = floatCoord[i];
+		}
+		return wide;
+	}
+
+	/**
+	 * Get the triangle index buffer, not copied
+	 * 
+	 * @return vertex indices of each face
+	 */
+	int[] getTriangles() {
+		return triangles;
+	}
+
+	/**
+	 * Return the average z valve of the three vertices of a face
+	 * 
+	 * @param f face index
+	 * @return average z valve
+	 */
+	double getAverageZValue(int f) {
+		int i = 3 * f;
+		return (getVisualCoord(triangles[i], 2) + getVisualCoord(triangles[i + 1], 2)
+				+ getVisualCoord(triangles[i + 2], 2)) / 3;
+	}
+
+	/**
+	 * Write the border value of a face, in order of: x+, y+, x-, y-, z+, z-
+	 * 
+	 * @param f   face index
+	 * @param res array of at least six values to write the border in
+	 * @return res
+	 */
+	double[] getBorder(int f, double[] res) {
+		return getBorder(f, res, 0);
+	}
+
+	/**
+	 * Write the border value of a face, in order of: x+, y+, x-, y-, z+, z-
+	 * 
+	 * @param f      face index
+	 * @param res    array to write the border in
+	 * @param offset position of the first value in res
+	 * @return res
+	 */
+	double[] getBorder(int f, double[] res, int offset) {
+		res[offset] = Double.NEGATIVE_INFINITY;
+		res[offset + 1] = Double.NEGATIVE_INFINITY;
+		res[offset + 2] = Double.POSITIVE_INFINITY;
+		res[offset + 3] = Double.POSITIVE_INFINITY;
+		res[offset + 4] = Double.NEGATIVE_INFINITY;
+		res[offset + 5] = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < 3; k++) {
+			int v = triangles[3 * f + k];
+			double x = getVisualCoord(v, 0);
+			double y = getVisualCoord(v, 1);
+			double z = getVisualCoord(v, 2);
+			res[offset] = Double.max(res[offset], x);
+			res[offset + 1] = Double.max(res[offset + 1], y);
+			res[offset + 2] = Double.min(res[offset + 2], x);
+			res[offset + 3] = Double.min(res[offset + 3], y);
+			res[offset + 4] = Double.max(res[offset + 4], z);
+			res[offset + 5] = Double.min(res[offset + 5], z);
+		}
+		return res;
+	}
+
+	/**
+	 * Get the memory used by the arrays of the mesh, without the face cache
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		return 4L * ids.length + 2L * getBytesPerValue() * 3 * vertexCount + 4L * triangles.length;
+	}
+
+	/**
+	 * Get the size of one stored coordinate value
+	 * 
+	 * @return 4 in single precision, 8 in double precision
+	 */
+	public int getBytesPerValue() {
+		return coord != null ? 8 : 4;
+	}
+
+	/**
+	 * Get the version of the visual coordinates, increased by every change
+	 * 
+	 * @return version number
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the per-face geometry of the current visual coordinates, computed again
+	 * if they changed since the last call
+	 * 
+	 * @return up to date face cache
+	 */
+	public FaceCache getFaceCache() {
+		if (faceCache == null) {
+			faceCache = new FaceCache(this);
+		}
+		faceCache.update();
+		return faceCache;
+	}
+
+	/**
+	 * Get the memory used by the face cache
+	 * 
+	 * @return size in bytes, 0 if it is not created
+	 */
+	long getFaceCacheBytes() {
+		var cache = faceCache;
+		return cache == null ? 0 : cache.getMemoryBytes();
+	}
+
+	/**
+	 * Drop the face cache, created again when next used
+	 */
+	void releaseFaceCache() {
+		faceCache = null;
+	}
+}
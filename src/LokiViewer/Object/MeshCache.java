@@ -0,0 +1,329 @@
+package LokiViewer.Object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary companion format of a model file. The cache file starts with a header
+ * of fixed size: magic number, format version, size and last modified time of
+ * the source file, whether the coordinates were rounded to single precision,
+ * vertex, face and edge counts. It is followed by the vertex
+ * ids, the packed coordinates, the triangle index buffer and the edge list, all
+ * little endian. The edge list is empty when the edges were not known as the
+ * cache was written, they are then searched again once read. A cache is only
+ * valid for a source file of the same size and modified time, and a rounded
+ * cache only for a single precision read. It is read
+ * through read-only MappedByteBuffers of at most mapWindow bytes each, as one
+ * mapping cannot exceed 2 GB.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class MeshCache {
+	/**
+	 * Extension appended to the model file name
+	 */
+	static final String extension = ".lokimesh";
+
+	/**
+	 * First eight bytes of a cache file
+	 */
+	private static final long magic = 0x4853454d494b4f4cL; // "LOKIMESH"
+	/**
+	 * Format version, increased whenever the layout changes
+	 */
+	private static final int version = 2;
+	/**
+	 * Header size in bytes
+	 */
+	private static final int headerSize = 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+	/**
+	 * Size of the buffer used for writing
+	 */
+	private static final int bufferSize = 1 << 20;
+	/**
+	 * Largest number of bytes mapped at once
+	 */
+	private static final long mapWindow = 1L << 30;
+
+	/**
+	 * Vertices and faces read from the cache
+	 */
+	Mesh mesh;
+	/**
+	 * Vertex indices of the edges read from the cache, two indices per edge, null
+	 * if the cache has none
+	 */
+	int[] edges;
+
+	/**
+	 * Get the cache file of a model file
+	 * 
+	 * @param source model file
+	 * @return the cache file next to it
+	 */
+	static File cacheFileOf(File source) {
+		return new File(source.getPath() + extension);
+	}
+
+	/**
+	 * Read a cache file
+	 * 
+	 * @param file            cache file
+	 * @param sourceSize      expected size of the source file
+	 * @param sourceModified  expected last modified time of the source file
+	 * @param singlePrecision whether to round the coordinates to single precision
+	 *                        as they are read
+	 * @return the cache, or null if it does not exist, is stale, is damaged or
+	 *         is rounded while double precision is asked for
+	 * @throws IOException when reading failed
+	 */
+	static MeshCache read(File file, long sourceSize, long sourceModified, boolean singlePrecision)
+			throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < headerSize) {
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getLong() != magic || buffer.getInt() != version || buffer.getLong() != sourceSize
+					|| buffer.getLong() != sourceModified) {
+				return null;
+			}
+			boolean rounded = buffer.getInt() != 0;
+			if (rounded && !singlePrecision) {
+				return null;
+			}
+			int vertexCount = buffer.getInt();
+			int faceCount = buffer.getInt();
+			int edgeCount = buffer.getInt();
+			if (vertexCount < 0 || faceCount < 0 || edgeCount < 0 || vertexCount > Integer.MAX_VALUE / 3
+					|| faceCount > Integer.MAX_VALUE / 3 || edgeCount > Integer.MAX_VALUE / 2
+					|| size != headerSize + 4L * vertexCount + 24L * vertexCount + 12L * faceCount + 8L * edgeCount) {
+				return null;
+			}
+
+			int[] ids = new int[vertexCount];
+			double[] coord = singlePrecision ? null : new double[3 * vertexCount];
+			float[] floatCoord = singlePrecision ? new float[3 * vertexCount] : null;
+			int[] triangles = new int[3 * faceCount];
+			int[] edges = new int[2 * edgeCount];
+			long position = getInts(channel, headerSize, ids);
+			position = getDoubles(channel, position, coord, floatCoord);
+			position = getInts(channel, position, triangles);
+			getInts(channel, position, edges);
+			if (!inRange(triangles, vertexCount) || !inRange(edges, vertexCount)) {
+				return null;
+			}
+
+			var cache = new MeshCache();
+			cache.mesh = Mesh.of(ids, coord, floatCoord, triangles);
+			cache.edges = edgeCount == 0 ? null : edges;
+			return cache;
+		}
+	}
+
+	/**
+	 * Read an int array through mappings of at most mapWindow bytes
+	 * 
+	 * @param channel  file to read
+	 * @param position file position of the first value
+	 * @param values   array to read the values in
+	 * @return file position after the last value
+	 * @throws IOException when reading failed
+	 */
+	private static long getInts(FileChannel channel, long position, int[] values) throws IOException {
+		int i = 0;
+		while (i < values.length) {
+			int count = (int) Long.min(mapWindow / 4, values.length - i);
+			var window = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count);
+			window.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, i, count);
+			position += 4L * count;
+			i += count;
+		}
+		return position;
+	}
+
+	/**
+	 * Read doubles through mappings of at most mapWindow bytes, into a double
+	 * array or rounded into a float array
+	 * 
+	 * @param channel     file to read
+	 * @param position    file position of the first value
+	 * @param values      array to read the values in, or null
+	 * @param floatValues array to read the rounded values in, or null if values
+	 *                    is given
+	 * @return file position after the last value
+	 * @throws IOException when reading failed
+	 */
+	private static long getDoubles(FileChannel channel, long position, double[] values, float[] floatValues)
+			throws IOException {
+		int length = values != null ? values.length : floatValues.length;
+		int i = 0;
+		while (i < length) {
+			int count = (int) Long.min(mapWindow / 8, length - i);
+			var window = channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * count);
+			var doubles = window.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			if (values != null) {
+				doubles.get(values, i, count);
+			} else {
+				for (int j = 0; j < count; j++) {
+					floatValues[i + j] = (float) doubles.get(j);
+				}
+			}
+			position += 8L * count;
+			i += count;
+		}
+		return position;
+	}
+
+	/**
+	 * Write a cache file. The content is first written to a temporary file that
+	 * then replaces the cache file, so a reader never sees a partial cache. The
+	 * coordinates of a single precision mesh are recorded as rounded, so that a
+	 * double precision read does not accept them.
+	 * 
+	 * @param file           cache file
+	 * @param sourceSize     size of the source file
+	 * @param sourceModified last modified time of the source file
+	 * @param mesh           vertices and faces
+	 * @param edges          vertex indices of the edges, two indices per edge, or
+	 *                       an empty array if they are not known
+	 * @throws IOException when writing failed
+	 */
+	static void write(File file, long sourceSize, long sourceModified, Mesh mesh, int[] edges) throws IOException {
+		Path target = file.toPath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			var buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putLong(magic);
+			buffer.putInt(version);
+			buffer.putLong(sourceSize);
+			buffer.putLong(sourceModified);
+			buffer.putInt(mesh.isSinglePrecision() ? 1 : 0);
+			buffer.putInt(mesh.getVertexCount());
+			buffer.putInt(mesh.getFaceCount());
+			buffer.putInt(edges.length / 2);
+			putInts(channel, buffer, mesh.getIDs());
+			putCoords(channel, buffer, mesh);
+			putInts(channel, buffer, mesh.getTriangles());
+			putInts(channel, buffer, edges);
+			flush(channel, buffer);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Write an int array through the buffer
+	 * 
+	 * @param channel file to write
+	 * @param buffer  write buffer
+	 * @param values  values to write
+	 * @throws IOException when writing failed
+	 */
+	private static void putInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+		int i = 0;
+		while (i < values.length) {
+			if (buffer.remaining() < 4) {
+				flush(channel, buffer);
+			}
+			int count = Integer.min(buffer.remaining() / 4, values.length - i);
+			buffer.asIntBuffer().put(values, i, count);
+			buffer.position(buffer.position() + 4 * count);
+			i += count;
+		}
+	}
+
+	/**
+	 * Write a double array through the buffer
+	 * 
+	 * @param channel file to write
+	 * @param buffer  write buffer
+	 * @param values  values to write
+	 * @throws IOException when writing failed
+	 */
+	private static void putDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+		int i = 0;
+		while (i < values.length) {
+			if (buffer.remaining() < 8) {
+				flush(channel, buffer);
+			}
+			int count = Integer.min(buffer.remaining() / 8, values.length - i);
+			buffer.asDoubleBuffer().put(values, i, count);
+			buffer.position(buffer.position() + 8 * count);
+			i += count;
+		}
+	}
+
+	/**
+	 * Write the original coordinates of a mesh in double precision through the
+	 * buffer. Single precision coordinates are widened one by one, without a
+	 * double precision copy of the array.
+	 * 
+	 * @param channel file to write
+	 * @param buffer  write buffer
+	 * @param mesh    the mesh
+	 * @throws IOException when writing failed
+	 */
+	private static void putCoords(FileChannel channel, ByteBuffer buffer, Mesh mesh) throws IOException {
+		if (!mesh.isSinglePrecision()) {
+			putDoubles(channel, buffer, mesh.getCoords());
+			return;
+		}
+		for (int v = 0; v < mesh.getVertexCount(); v++) {
+			for (int k = 0; k < 3; k++) {
+				if (buffer.remaining() < 8) {
+					flush(channel, buffer);
+				}
+				buffer.putDouble(mesh.getCoord(v, k));
+			}
+		}
+	}
+
+	/**
+	 * Write the content of the buffer to the file and clear it
+	 * 
+	 * @param channel file to write
+	 * @param buffer  write buffer
+	 * @throws IOException when writing failed
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Check that all vertex indices are valid
+	 * 
+	 * @param indices     vertex indices
+	 * @param vertexCount number of vertices
+	 * @return whether all indices are in [0, vertexCount)
+	 */
+	private static boolean inRange(int[] indices, int vertexCount) {
+		for (int i = 0; i < indices.length; i++) {
+			if (indices[i] < 0 || indices[i] >= vertexCount) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,752 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+
+/**
+ * Simplify a mesh by quadric error edge collapse (Garland and Heckbert). Each
+ * vertex keeps the sum of the squared distances to the planes of its faces as
+ * a quadric, and collapsing an edge merges its two vertices into the point of
+ * least error of the summed quadrics. Border edges add a plane perpendicular to
+ * their face, so that holes keep their shape.
+ * <p>
+ * Every vertex keeps its cheapest edge in an indexed heap, and the cheapest of
+ * all is collapsed first. A vertex on the border only collapses along a border
+ * edge, so that borders, including the zero-length ones between copies of a
+ * vertex, are closed from their ends instead of being torn open. A collapse is
+ * skipped if it would make the surface non-manifold (the two vertices share
+ * more neighbours than the faces of the edge) or flip a face; the vertex is
+ * then tried again when its neighbourhood changes. The faces around each vertex
+ * are linked lists of corners, merged on collapse, and everything is kept in
+ * primitive arrays.
+ * <p>
+ * The simplifier keeps its state between calls of simplify, so a chain of
+ * levels is built in one pass by asking for fewer and fewer faces.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class MeshSimplifier {
+	/**
+	 * Weight of the border planes relative to the face planes
+	 */
+	private static final double borderWeight = 1000;
+
+	/**
+	 * Vertex ids
+	 */
+	private int[] ids;
+	/**
+	 * Current vertex positions, three values per vertex
+	 */
+	private double[] pos;
+	/**
+	 * Whether the simplified meshes are stored in single precision, as the source
+	 * mesh
+	 */
+	private boolean singlePrecision;
+	/**
+	 * Quadric of each vertex, ten values per vertex: xx, xy, xz, xw, yy, yz, yw,
+	 * zz, zw, ww
+	 */
+	private double[] quadric;
+	/**
+	 * Current vertex indices of each face
+	 */
+	private int[] tri;
+	/**
+	 * Whether each face is collapsed
+	 */
+	private boolean[] dead;
+	/**
+	 * Number of faces not collapsed
+	 */
+	private int faceCount;
+	/**
+	 * First corner in the corner list of each vertex, -1 if empty
+	 */
+	private int[] head;
+	/**
+	 * Next corner in the same corner list, -1 at the end. Corner 3 * f + k is
+	 * corner k of face f.
+	 */
+	private int[] next;
+	/**
+	 * Whether each vertex is merged into another one
+	 */
+	private boolean[] removed;
+	/**
+	 * Whether each vertex has an edge with a single face
+	 */
+	private boolean[] border;
+
+	/**
+	 * Cost of the cheapest edge of each vertex, infinite if none can collapse
+	 */
+	private double[] cost;
+	/**
+	 * Other vertex of the cheapest edge of each vertex
+	 */
+	private int[] target;
+	/**
+	 * Binary min heap of vertices by cost
+	 */
+	private int[] heap;
+	/**
+	 * Number of vertices in the heap
+	 */
+	private int heapSize;
+	/**
+	 * Position of each vertex in the heap, -1 if not in it
+	 */
+	private int[] heapIndex;
+
+	/**
+	 * Stamp of each vertex, to mark sets of neighbours
+	 */
+	private int[] mark;
+	/**
+	 * Stamp of the current set of neighbours
+	 */
+	private int stamp;
+	/**
+	 * Number of faces of the edge to each neighbour, valid for the vertices
+	 * marked with the current stamp
+	 */
+	private int[] edgeFaces;
+	/**
+	 * Neighbours found by the last countEdges
+	 */
+	private int[] neighbours = new int[16];
+	/**
+	 * Point of least error found by the last cost evaluation
+	 */
+	private double[] best = new double[3];
+	/**
+	 * Scratch quadric of an edge
+	 */
+	private double[] edgeQuadric = new double[10];
+	/**
+	 * Scratch corner coordinates of a face
+	 */
+	private double[] corners = new double[9];
+	/**
+	 * Scratch normal before a move
+	 */
+	private double[] normalBefore = new double[3];
+	/**
+	 * Scratch normal after a move
+	 */
+	private double[] normalAfter = new double[3];
+
+	/**
+	 * Constructor, compute the quadrics and the cheapest edge of every vertex
+	 * 
+	 * @param mesh     the mesh to simplify, not changed
+	 * @param topology topology of the mesh, to find the border edges
+	 */
+	public MeshSimplifier(Mesh mesh, MeshTopology topology) {
+		int n = mesh.getVertexCount();
+		int m = mesh.getFaceCount();
+		ids = mesh.getIDs();
+		pos = mesh.isSinglePrecision() ? mesh.getCoords() : mesh.getCoords().clone();
+		singlePrecision = mesh.isSinglePrecision();
+		tri = mesh.getTriangles().clone();
+		quadric = new double[10 * n];
+		dead = new boolean[m];
+		faceCount = m;
+		removed = new boolean[n];
+		head = new int[n];
+		next = new int[3 * m];
+		mark = new int[n];
+		edgeFaces = new int[n];
+		border = new boolean[n];
+		Arrays.fill(head, -1);
+		for (int c = 3 * m - 1; c >= 0; c--) {
+			next[c] = head[tri[c]];
+			head[tri[c]] = c;
+		}
+
+		double[] normal = new double[3];
+		for (int f = 0; f < m; f++) {
+			double area = getNormal(f, -1, null, normal);
+			if (area == 0) {
+				continue;
+			}
+			for (int k = 0; k < 3; k++) {
+				addPlane(tri[3 * f + k], normal, tri[3 * f], area);
+			}
+			for (int k = 0; k < 3; k++) {
+				if (topology.getTwin(3 * f + k) == -1) {
+					addBorderPlane(tri[3 * f + k], tri[3 * f + (k + 1) % 3], normal);
+				}
+			}
+		}
+
+		for (int v = 0; v < n; v++) {
+			countEdges(v);
+		}
+		cost = new double[n];
+		target = new int[n];
+		heap = new int[n];
+		heapIndex = new int[n];
+		for (int v = 0; v < n; v++) {
+			findCheapestEdge(v);
+			heapIndex[v] = heapSize;
+			heap[heapSize++] = v;
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Collapse edges until at most the given number of faces are left, and get
+	 * the result. Simplifying stops early if no edge can collapse any more.
+	 * 
+	 * @param targetFaces number of faces wanted
+	 * @return the simplified mesh, with the vertex ids of the vertices kept
+	 */
+	public Mesh simplify(int targetFaces) {
+		while (faceCount > targetFaces && heapSize > 0 && cost[heap[0]] != Double.POSITIVE_INFINITY) {
+			int v = heap[0];
+			int u = target[v];
+			if (removed[u]) {
+				findCheapestEdge(v);
+				update(v);
+			} else if (!collapse(v, u)) {
+				// tried again when a neighbour changes
+				cost[v] = Double.POSITIVE_INFINITY;
+				siftDown(0);
+			}
+		}
+		return toMesh();
+	}
+
+	/**
+	 * Get the number of faces left
+	 * 
+	 * @return face count
+	 */
+	public int getFaceCount() {
+		return faceCount;
+	}
+
+	/**
+	 * Merge vertex u into vertex v, moved to the point of least error
+	 * 
+	 * @param v vertex kept
+	 * @param u vertex removed
+	 * @return false if the collapse is not allowed
+	 */
+	private boolean collapse(int v, int u) {
+		evaluate(v, u);
+		double x = best[0];
+		double y = best[1];
+		double z = best[2];
+		if (!isManifold(v, u) || flips(v, u) || flips(u, v)) {
+			return false;
+		}
+
+		// faces with both vertices disappear, the others move to v
+		int last = -1;
+		for (int c = head[u]; c != -1; c = next[c]) {
+			int f = c / 3;
+			if (!dead[f] && (tri[3 * f] == v || tri[3 * f + 1] == v || tri[3 * f + 2] == v)) {
+				dead[f] = true;
+				faceCount--;
+			}
+			tri[c] = v;
+			last = c;
+		}
+		if (last != -1) {
+			next[last] = head[v];
+			head[v] = head[u];
+			head[u] = -1;
+		}
+		removed[u] = true;
+		remove(u);
+		pos[3 * v] = x;
+		pos[3 * v + 1] = y;
+		pos[3 * v + 2] = z;
+		for (int i = 0; i < 10; i++) {
+			quadric[10 * v + i] += quadric[10 * u + i];
+		}
+
+		// only v and its neighbours have changed edges, the border may change there
+		int count = countEdges(v);
+		int[] changed = Arrays.copyOf(neighbours, count);
+		for (int w : changed) {
+			countEdges(w);
+		}
+		findCheapestEdge(v);
+		update(v);
+		for (int w : changed) {
+			findCheapestEdge(w);
+			update(w);
+		}
+		return true;
+	}
+
+	/**
+	 * Find the neighbours of a vertex and the number of faces of the edge to each
+	 * one, and whether the vertex is on the border. Collapsed faces are dropped
+	 * from its corner list on the way.
+	 * 
+	 * @param v the vertex
+	 * @return number of neighbours, stored in neighbours, their face counts in
+	 *         edgeFaces
+	 */
+	private int countEdges(int v) {
+		stamp++;
+		int count = 0;
+		for (int c = head[v], prev = -1; c != -1; c = next[c]) {
+			int f = c / 3;
+			if (dead[f]) {
+				unlink(v, prev, c);
+				continue;
+			}
+			prev = c;
+			for (int k = 1; k < 3; k++) {
+				int w = tri[3 * f + (c % 3 + k) % 3];
+				if (mark[w] == stamp) {
+					edgeFaces[w]++;
+				} else {
+					mark[w] = stamp;
+					edgeFaces[w] = 1;
+					if (count == neighbours.length) {
+						neighbours = Arrays.copyOf(neighbours, 2 * count);
+					}
+					neighbours[count++] = w;
+				}
+			}
+		}
+		border[v] = false;
+		for (int i = 0; i < count; i++) {
+			border[v] |= edgeFaces[neighbours[i]] == 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Remove a corner from the corner list of a vertex
+	 * 
+	 * @param v    the vertex
+	 * @param prev corner before c, -1 if c is the first
+	 * @param c    the corner
+	 */
+	private void unlink(int v, int prev, int c) {
+		if (prev == -1) {
+			head[v] = next[c];
+		} else {
+			next[prev] = next[c];
+		}
+	}
+
+	/**
+	 * Whether merging u into v keeps the surface manifold, i.e. the two vertices
+	 * have no common neighbour other than the third vertices of the faces of
+	 * their edge
+	 * 
+	 * @param v vertex kept
+	 * @param u vertex removed
+	 * @return true if the collapse keeps the surface manifold
+	 */
+	private boolean isManifold(int v, int u) {
+		stamp++;
+		for (int c = head[v]; c != -1; c = next[c]) {
+			int f = c / 3;
+			if (!dead[f]) {
+				for (int k = 0; k < 3; k++) {
+					mark[tri[3 * f + k]] = stamp;
+				}
+			}
+		}
+		int shared = 0;
+		int common = 0;
+		int commonStamp = ++stamp;
+		for (int c = head[u]; c != -1; c = next[c]) {
+			int f = c / 3;
+			if (dead[f]) {
+				continue;
+			}
+			boolean hasV = false;
+			for (int k = 0; k < 3; k++) {
+				hasV |= tri[3 * f + k] == v;
+			}
+			if (hasV) {
+				shared++;
+			}
+			for (int k = 0; k < 3; k++) {
+				int w = tri[3 * f + k];
+				if (w != u && w != v && mark[w] == commonStamp - 1) {
+					mark[w] = commonStamp;
+					common++;
+				}
+			}
+		}
+		return common <= shared;
+	}
+
+	/**
+	 * Whether moving vertex v to the point in best flips a face around v that
+	 * does not contain u
+	 * 
+	 * @param v vertex moved
+	 * @param u other vertex of the edge
+	 * @return true if a face turns over
+	 */
+	private boolean flips(int v, int u) {
+		double[] before = normalBefore;
+		double[] after = normalAfter;
+		double[] point = best;
+		for (int c = head[v]; c != -1; c = next[c]) {
+			int f = c / 3;
+			if (dead[f] || tri[3 * f] == u || tri[3 * f + 1] == u || tri[3 * f + 2] == u) {
+				continue;
+			}
+			if (getNormal(f, -1, null, before) == 0) {
+				continue;
+			}
+			getNormal(f, c % 3, point, after);
+			if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < 0.2) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the unit normal vector of a face, in the stored corner order
+	 * 
+	 * @param f      face index
+	 * @param corner corner to move, -1 for none
+	 * @param point  new position of the moved corner
+	 * @param res    array to store the normal in, zero if the face has no area
+	 * @return area of the face
+	 */
+	private double getNormal(int f, int corner, double[] point, double[] res) {
+		double[] p = corners;
+		for (int k = 0; k < 3; k++) {
+			for (int i = 0; i < 3; i++) {
+				p[3 * k + i] = k == corner ? point[i] : pos[3 * tri[3 * f + k] + i];
+			}
+		}
+		double e1x = p[3] - p[0];
+		double e1y = p[4] - p[1];
+		double e1z = p[5] - p[2];
+		double e2x = p[6] - p[0];
+		double e2y = p[7] - p[1];
+		double e2z = p[8] - p[2];
+		double nx = e1y * e2z - e1z * e2y;
+		double ny = e1z * e2x - e1x * e2z;
+		double nz = e1x * e2y - e1y * e2x;
+		double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (!(len > 0)) {
+			res[0] = 0;
+			res[1] = 0;
+			res[2] = 0;
+			return 0;
+		}
+		res[0] = nx / len;
+		res[1] = ny / len;
+		res[2] = nz / len;
+		return len / 2;
+	}
+
+	/**
+	 * Add a weighted plane to the quadric of a vertex
+	 * 
+	 * @param v      vertex index
+	 * @param normal unit normal of the plane
+	 * @param on     a vertex on the plane
+	 * @param weight weight of the plane
+	 */
+	private void addPlane(int v, double[] normal, int on, double weight) {
+		double a = normal[0];
+		double b = normal[1];
+		double c = normal[2];
+		double d = -(a * pos[3 * on] + b * pos[3 * on + 1] + c * pos[3 * on + 2]);
+		int q = 10 * v;
+		quadric[q] += weight * a * a;
+		quadric[q + 1] += weight * a * b;
+		quadric[q + 2] += weight * a * c;
+		quadric[q + 3] += weight * a * d;
+		quadric[q + 4] += weight * b * b;
+		quadric[q + 5] += weight * b * c;
+		quadric[q + 6] += weight * b * d;
+		quadric[q + 7] += weight * c * c;
+		quadric[q + 8] += weight * c * d;
+		quadric[q + 9] += weight * d * d;
+	}
+
+	/**
+	 * Add the plane through a border edge and perpendicular to its face to both
+	 * vertices of the edge, weighted by the squared edge length
+	 * 
+	 * @param v1     one vertex of the edge
+	 * @param v2     the other vertex
+	 * @param normal unit normal of the face
+	 */
+	private void addBorderPlane(int v1, int v2, double[] normal) {
+		double ex = pos[3 * v2] - pos[3 * v1];
+		double ey = pos[3 * v2 + 1] - pos[3 * v1 + 1];
+		double ez = pos[3 * v2 + 2] - pos[3 * v1 + 2];
+		double[] plane = { ey * normal[2] - ez * normal[1], ez * normal[0] - ex * normal[2],
+				ex * normal[1] - ey * normal[0] };
+		double len = Math.sqrt(plane[0] * plane[0] + plane[1] * plane[1] + plane[2] * plane[2]);
+		if (!(len > 0)) {
+			return;
+		}
+		for (int i = 0; i < 3; i++) {
+			plane[i] /= len;
+		}
+		double weight = borderWeight * (ex * ex + ey * ey + ez * ez);
+		addPlane(v1, plane, v1, weight);
+		addPlane(v2, plane, v1, weight);
+	}
+
+	/**
+	 * Find the point of least error of the summed quadrics of an edge, stored in
+	 * best. If the quadric cannot be solved, or its solution is farther from the
+	 * middle of the edge than the edge length (a nearly flat quadric has a line or
+	 * plane of solutions), the better of the two ends and the middle is taken.
+	 * 
+	 * @param v one vertex of the edge
+	 * @param u the other vertex
+	 * @return error at the point
+	 */
+	private double evaluate(int v, int u) {
+		double[] q = edgeQuadric;
+		for (int i = 0; i < 10; i++) {
+			q[i] = quadric[10 * v + i] + quadric[10 * u + i];
+		}
+		// solve the 3x3 system of the quadric with Cramer's rule
+		double a00 = q[0];
+		double a01 = q[1];
+		double a02 = q[2];
+		double a11 = q[4];
+		double a12 = q[5];
+		double a22 = q[7];
+		double b0 = -q[3];
+		double b1 = -q[6];
+		double b2 = -q[8];
+		double c00 = a11 * a22 - a12 * a12;
+		double c01 = a02 * a12 - a01 * a22;
+		double c02 = a01 * a12 - a02 * a11;
+		double det = a00 * c00 + a01 * c01 + a02 * c02;
+		double scale = a00 + a11 + a22;
+		if (Math.abs(det) > 1e-12 * scale * scale * scale) {
+			double c11 = a00 * a22 - a02 * a02;
+			double c12 = a01 * a02 - a00 * a12;
+			double c22 = a00 * a11 - a01 * a01;
+			double x = (c00 * b0 + c01 * b1 + c02 * b2) / det;
+			double y = (c01 * b0 + c11 * b1 + c12 * b2) / det;
+			double z = (c02 * b0 + c12 * b1 + c22 * b2) / det;
+			double dx = x - (pos[3 * v] + pos[3 * u]) / 2;
+			double dy = y - (pos[3 * v + 1] + pos[3 * u + 1]) / 2;
+			double dz = z - (pos[3 * v + 2] + pos[3 * u + 2]) / 2;
+			double ex = pos[3 * v] - pos[3 * u];
+			double ey = pos[3 * v + 1] - pos[3 * u + 1];
+			double ez = pos[3 * v + 2] - pos[3 * u + 2];
+			if (dx * dx + dy * dy + dz * dz <= ex * ex + ey * ey + ez * ez) {
+				best[0] = x;
+				best[1] = y;
+				best[2] = z;
+				return error(q, x, y, z);
+			}
+		}
+		double minError = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 3; i++) {
+			double x = i == 2 ? (pos[3 * v] + pos[3 * u]) / 2 : pos[3 * (i == 0 ? v : u)];
+			double y = i == 2 ? (pos[3 * v + 1] + pos[3 * u + 1]) / 2 : pos[3 * (i == 0 ? v : u) + 1];
+			double z = i == 2 ? (pos[3 * v + 2] + pos[3 * u + 2]) / 2 : pos[3 * (i == 0 ? v : u) + 2];
+			double e = error(q, x, y, z);
+			if (e < minError) {
+				minError = e;
+				best[0] = x;
+				best[1] = y;
+				best[2] = z;
+			}
+		}
+		return minError;
+	}
+
+	/**
+	 * Get the error of a point for a quadric
+	 * 
+	 * @param q the quadric
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate
+	 * @return error, not negative
+	 */
+	private static double error(double[] q, double x, double y, double z) {
+		double e = q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x + q[4] * y * y
+				+ 2 * q[5] * y * z + 2 * q[6] * y + q[7] * z * z + 2 * q[8] * z + q[9];
+		return Double.max(0, e);
+	}
+
+	/**
+	 * Find the cheapest edge of a vertex that may collapse: an edge touching the
+	 * border must be a border edge
+	 * 
+	 * @param v the vertex
+	 */
+	private void findCheapestEdge(int v) {
+		cost[v] = Double.POSITIVE_INFINITY;
+		target[v] = -1;
+		int count = countEdges(v);
+		for (int i = 0; i < count; i++) {
+			int u = neighbours[i];
+			if ((border[v] || border[u]) && edgeFaces[u] != 1) {
+				continue;
+			}
+			double e = evaluate(v, u);
+			if (e < cost[v]) {
+				cost[v] = e;
+				target[v] = u;
+			}
+		}
+	}
+
+	/**
+	 * Move a vertex in the heap after its cost changed
+	 * 
+	 * @param v the vertex
+	 */
+	private void update(int v) {
+		int i = heapIndex[v];
+		if (i != -1) {
+			siftUp(i);
+			siftDown(heapIndex[v]);
+		}
+	}
+
+	/**
+	 * Remove a vertex from the heap
+	 * 
+	 * @param v the vertex
+	 */
+	private void remove(int v) {
+		int i = heapIndex[v];
+		if (i == -1) {
+			return;
+		}
+		heapIndex[v] = -1;
+		int last = heap[--heapSize];
+		if (i < heapSize) {
+			heap[i] = last;
+			heapIndex[last] = i;
+			siftUp(i);
+			siftDown(heapIndex[last]);
+		}
+	}
+
+	/**
+	 * Move a heap entry up to its place
+	 * 
+	 * @param i heap position
+	 */
+	private void siftUp(int i) {
+		int v = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			int p = heap[parent];
+			if (cost[p] <= cost[v]) {
+				break;
+			}
+			heap[i] = p;
+			heapIndex[p] = i;
+			i = parent;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	/**
+	 * Move a heap entry down to its place
+	 * 
+	 * @param i heap position
+	 */
+	private void siftDown(int i) {
+		int v = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && cost[heap[child + 1]] < cost[heap[child]]) {
+				child++;
+			}
+			int w = heap[child];
+			if (cost[v] <= cost[w]) {
+				break;
+			}
+			heap[i] = w;
+			heapIndex[w] = i;
+			i = child;
+		}
+		heap[i] = v;
+		heapIndex[v] = i;
+	}
+
+	/**
+	 * Pack the faces left and their vertices in a new mesh
+	 * 
+	 * @return the simplified mesh
+	 */
+	private Mesh toMesh() {
+		int[] index = new int[removed.length];
+		Arrays.fill(index, -1);
+		int vertexCount = 0;
+		for (int f = 0; f < dead.length; f++) {
+			if (!dead[f]) {
+				for (int k = 0; k < 3; k++) {
+					int v = tri[3 * f + k];
+					if (index[v] == -1) {
+						index[v] = vertexCount++;
+					}
+				}
+			}
+		}
+		int[] newIds = new int[vertexCount];
+		double[] newCoord = new double[3 * vertexCount];
+		for (int v = 0; v < index.length; v++) {
+			if (index[v] != -1) {
+				newIds[index[v]] = ids[v];
+				System.arraycopy(pos, 3 * v, newCoord, 3 * index[v], 3);
+			}
+		}
+		int[] triangles = new int[3 * faceCount];
+		int t = 0;
+		for (int f = 0; f < dead.length; f++) {
+			if (dead[f]) {
+				continue;
+			}
+			int a = index[tri[3 * f]];
+			int b = index[tri[3 * f + 1]];
+			int c = index[tri[3 * f + 2]];
+			// keep the vertices of a face sorted by id, like the parser does
+			if (newIds[a] > newIds[b]) {
+				int s = a;
+				a = b;
+				b = s;
+			}
+			if (newIds[b] > newIds[c]) {
+				int s = b;
+				b = c;
+				c = s;
+			}
+			if (newIds[a] > newIds[b]) {
+				int s = a;
+				a = b;
+				b = s;
+			}
+			triangles[t++] = a;
+			triangles[t++] = b;
+			triangles[t++] = c;
+		}
+		return singlePrecision ? new Mesh(newIds, Mesh.narrow(newCoord), triangles)
+				: new Mesh(newIds, newCoord, triangles);
+	}
+}
@@ -0,0 +1,249 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+
+/**
+ * Connectivity of a mesh, built in one pass over the faces. Each face has three
+ * half-edges, half-edge 3 * f + k going from corner k to corner (k + 1) % 3 of
+ * face f. Edges are found with a LongIntMap keyed by the two vertex indices
+ * packed in a long, smaller index first, so an edge is the same in both
+ * directions. From this the topology provides:
+ * <ul>
+ * <li>the unique edge list, in the order edges are first met</li>
+ * <li>the edge of each half-edge and its twin half-edge in the neighbour
+ * face, which gives face-to-face adjacency</li>
+ * <li>the faces around each vertex, in compressed rows</li>
+ * </ul>
+ * Everything is kept in int arrays.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class MeshTopology {
+	/**
+	 * Number of vertices
+	 */
+	private int vertexCount;
+	/**
+	 * Number of faces
+	 */
+	private int faceCount;
+	/**
+	 * Vertex indices of the edges, two indices per edge
+	 */
+	private int[] edges;
+	/**
+	 * Number of edges
+	 */
+	private int edgeCount;
+	/**
+	 * Edge of each half-edge
+	 */
+	private int[] halfEdgeEdge;
+	/**
+	 * Twin of each half-edge, -1 on the border. An edge shared by more than two
+	 * faces only links its first two half-edges.
+	 */
+	private int[] twin;
+	/**
+	 * Start of the faces of each vertex in vertexFaces, the last value is the
+	 * total
+	 */
+	private int[] vertexFaceStart;
+	/**
+	 * Faces around each vertex, ascending for each vertex
+	 */
+	private int[] vertexFaces;
+
+	/**
+	 * Build the topology of a mesh
+	 * 
+	 * @param mesh the mesh
+	 */
+	public MeshTopology(Mesh mesh) {
+		vertexCount = mesh.getVertexCount();
+		faceCount = mesh.getFaceCount();
+		buildEdges(mesh);
+		buildVertexFaces(mesh);
+	}
+
+	/**
+	 * Find the unique edges and link twin half-edges. Edges of a face are met in
+	 * the order (v0, v1), (v0, v2), (v1, v2), and keep the direction in which
+	 * they are first met.
+	 * 
+	 * @param mesh the mesh
+	 */
+	private void buildEdges(Mesh mesh) {
+		// a closed triangle mesh has 1.5 edges per face
+		var edgeMap = new LongIntMap(faceCount + faceCount / 2);
+		int[] firstHalfEdge = new int[3 * faceCount];
+		edges = new int[6 * faceCount];
+		halfEdgeEdge = new int[3 * faceCount];
+		twin = new int[3 * faceCount];
+		Arrays.fill(twin, -1);
+		for (int f = 0; f < faceCount; f++) {
+			int v0 = mesh.getFaceVertex(f, 0);
+			int v1 = mesh.getFaceVertex(f, 1);
+			int v2 = mesh.getFaceVertex(f, 2);
+			addHalfEdge(edgeMap, firstHalfEdge, 3 * f, v0, v1);
+			addHalfEdge(edgeMap, firstHalfEdge, 3 * f + 2, v0, v2);
+			addHalfEdge(edgeMap, firstHalfEdge, 3 * f + 1, v1, v2);
+		}
+		edges = Arrays.copyOf(edges, 2 * edgeCount);
+	}
+
+	/**
+	 * Add a half-edge, creating its edge if it is not met yet, otherwise linking
+	 * it with the first half-edge of the edge
+	 * 
+	 * @param edgeMap       edge index of each edge key
+	 * @param firstHalfEdge first half-edge of each edge
+	 * @param h             half-edge index
+	 * @param v1            index of one vertex
+	 * @param v2            index of the other vertex
+	 */
+	private void addHalfEdge(LongIntMap edgeMap, int[] firstHalfEdge, int h, int v1, int v2) {
+		int e = edgeMap.putIfAbsent(edgeKey(v1, v2), edgeCount);
+		if (e == -1) {
+			e = edgeCount++;
+			edges[2 * e] = v1;
+			edges[2 * e + 1] = v2;
+			firstHalfEdge[e] = h;
+		} else {
+			int first = firstHalfEdge[e];
+			if (twin[first] == -1) {
+				twin[first] = h;
+				twin[h] = first;
+			}
+		}
+		halfEdgeEdge[h] = e;
+	}
+
+	/**
+	 * Build the face list of each vertex with a counting sort
+	 * 
+	 * @param mesh the mesh
+	 */
+	private void buildVertexFaces(Mesh mesh) {
+		vertexFaceStart = new int[vertexCount + 1];
+		for (int f = 0; f < faceCount; f++) {
+			for (int k = 0; k < 3; k++) {
+				vertexFaceStart[mesh.getFaceVertex(f, k) + 1]++;
+			}
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			vertexFaceStart[v + 1] += vertexFaceStart[v];
+		}
+		int[] next = Arrays.copyOf(vertexFaceStart, vertexCount);
+		vertexFaces = new int[3 * faceCount];
+		for (int f = 0; f < faceCount; f++) {
+			for (int k = 0; k < 3; k++) {
+				vertexFaces[next[mesh.getFaceVertex(f, k)]++] = f;
+			}
+		}
+	}
+
+	/**
+	 * Pack the two vertex indices of an edge in a long, smaller index first
+	 * 
+	 * @param v1 index of one vertex
+	 * @param v2 index of the other vertex
+	 * @return edge key
+	 */
+	static long edgeKey(int v1, int v2) {
+		return v1 < v2 ? ((long) v1 << 32) | v2 : ((long) v2 << 32) | v1;
+	}
+
+	/**
+	 * Get edge count
+	 * 
+	 * @return number of unique edges
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Get a vertex of an edge
+	 * 
+	 * @param e edge index
+	 * @param k 0 or 1
+	 * @return vertex index
+	 */
+	public int getEdgeVertex(int e, int k) {
+		return edges[2 * e + k];
+	}
+
+	/**
+	 * Get the edge list array, not copied
+	 * 
+	 * @return vertex indices of the edges, two indices per edge
+	 */
+	int[] getEdges() {
+		return edges;
+	}
+
+	/**
+	 * Get the edge of a half-edge
+	 * 
+	 * @param h half-edge index, 3 * face + corner
+	 * @return edge index
+	 */
+	public int getEdge(int h) {
+		return halfEdgeEdge[h];
+	}
+
+	/**
+	 * Get the twin of a half-edge
+	 * 
+	 * @param h half-edge index, 3 * face + corner
+	 * @return the half-edge of the same edge in the neighbour face, -1 if none
+	 */
+	public int getTwin(int h) {
+		return twin[h];
+	}
+
+	/**
+	 * Get the face across a side of a face
+	 * 
+	 * @param f face index
+	 * @param k side from corner k to corner (k + 1) % 3
+	 * @return neighbour face index, -1 if the side is on the border
+	 */
+	public int getAdjacentFace(int f, int k) {
+		int t = twin[3 * f + k];
+		return t == -1 ? -1 : t / 3;
+	}
+
+	/**
+	 * Get the memory used by the arrays of the topology
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		return 4L * (edges.length + halfEdgeEdge.length + twin.length + vertexFaceStart.length
+				+ vertexFaces.length);
+	}
+
+	/**
+	 * Get the number of faces around a vertex
+	 * 
+	 * @param v vertex index
+	 * @return face count
+	 */
+	public int getVertexFaceCount(int v) {
+		return vertexFaceStart[v + 1] - vertexFaceStart[v];
+	}
+
+	/**
+	 * Get a face around a vertex
+	 * 
+	 * @param v vertex index
+	 * @param i index among the faces of the vertex
+	 * @return face index
+	 */
+	public int getVertexFace(int v, int i) {
+		return vertexFaces[vertexFaceStart[v] + i];
+	}
+}
@@ -0,0 +1,304 @@
+package LokiViewer.Object;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+
+/**
+ * Objects opened recently, kept in memory so that switching back to a model
+ * does not load it again. An object is found by the canonical path of its model
+ * file together with the file's size and last modified time, so a changed file
+ * is loaded again, and by the precision of its coordinates and the tolerance
+ * its vertices were welded with.
+ * <p>
+ * The cache holds the most recently used objects strongly as long as their
+ * estimated footprint, see estimateBytes, stays under a budget; the least
+ * recently used ones beyond the budget are evicted. Every object is also held
+ * by a soft reference, so an evicted object is still found until the garbage
+ * collector needs its memory.
+ * <p>
+ * An object keeps growing once cached: its levels of detail, and its BSP tree
+ * once BSP mode is selected, are built in the background, and its render
+ * caches are built when it is drawn.
+ * The footprint of an object is estimated again whenever one of its background
+ * builds is done, and whenever it is found. The viewer drops the render caches
+ * of an object when another object replaces it in the view, see
+ * Object3D.releaseRenderCaches.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class ModelCache {
+	/**
+	 * Identity of a model file
+	 * 
+	 * @param path            canonical path
+	 * @param size            file size
+	 * @param modified        last modified time
+	 * @param singlePrecision whether the coordinates are in single precision
+	 * @param weldTolerance   tolerance the vertices were welded with, 0 if not
+	 *                        welded
+	 */
+	private record Key(String path, long size, long modified, boolean singlePrecision, double weldTolerance) {
+	}
+
+	/**
+	 * A cached object
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private static class Entry {
+		/**
+		 * The object, cleared by the garbage collector once evicted
+		 */
+		SoftReference<Object3D> reference;
+		/**
+		 * The object while it counts in the budget, null once evicted
+		 */
+		Object3D object;
+		/**
+		 * Estimated footprint counted in the budget
+		 */
+		long bytes;
+	}
+
+	/**
+	 * Entries from the least to the most recently used
+	 */
+	private LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Budget of the objects held strongly, in bytes
+	 */
+	private long maxBytes;
+	/**
+	 * Estimated footprint of the objects held strongly
+	 */
+	private long bytes;
+	/**
+	 * Number of objects found
+	 */
+	private long hits;
+	/**
+	 * Number of objects not found
+	 */
+	private long misses;
+	/**
+	 * Number of objects evicted from the budget
+	 */
+	private long evictions;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxBytes budget of the objects held strongly, in bytes
+	 */
+	public ModelCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Constructor with a budget of a quarter of the maximum heap size
+	 */
+	public ModelCache() {
+		this(Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * Estimate the memory held by an object: its mesh, edges, topology and BSP
+	 * tree, its levels of detail built so far, and the caches built to draw them
+	 * 
+	 * @param object the object
+	 * @return size in bytes
+	 */
+	public static long estimateBytes(Object3D object) {
+		long bytes = object.getMemoryBytes() + object.getRenderCacheBytes();
+		for (int i = 0; i < object.getLevelCount(); i++) {
+			bytes += object.getLevel(i).getMemoryBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the object of a model file, unless the file changed since it was cached
+	 * 
+	 * @param file model file
+	 * @return the object, or null if it is not cached
+	 */
+	public Object3D get(File file) {
+		return get(file, false, 0);
+	}
+
+	/**
+	 * Get the object of a model file opened with some options, unless the file
+	 * changed since it was cached
+	 * 
+	 * @param file            model file
+	 * @param singlePrecision whether the coordinates are in single precision
+	 * @param weldTolerance   tolerance the vertices were welded with, 0 if not
+	 *                        welded
+	 * @return the object, or null if it is not cached
+	 */
+	public synchronized Object3D get(File file, boolean singlePrecision, double weldTolerance) {
+		var key = keyOf(file, singlePrecision, weldTolerance);
+		var entry = key == null ? null : entries.get(key);
+		var object = entry == null ? null : entry.reference.get();
+		if (object == null) {
+			if (entry != null) {
+				entries.remove(key);
+			}
+			misses++;
+			return null;
+		}
+		hits++;
+		// the object may have been drawn since it was cached
+		bytes -= entry.bytes;
+		entry.object = object;
+		entry.bytes = estimateBytes(object);
+		bytes += entry.bytes;
+		trim();
+		return object;
+	}
+
+	/**
+	 * Estimate the footprint of an object held strongly again, and evict the
+	 * least recently used objects beyond the budget. Called when a background
+	 * build of the object is done.
+	 * 
+	 * @param object the object
+	 */
+	private synchronized void update(Object3D object) {
+		for (var entry : entries.values()) {
+			if (entry.object == object) {
+				bytes -= entry.bytes;
+				entry.bytes = estimateBytes(object);
+				bytes += entry.bytes;
+				trim();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Cache the object of a model file as the most recently used, evicting the
+	 * least recently used objects beyond the budget
+	 * 
+	 * @param file   model file
+	 * @param object the object
+	 */
+	public synchronized void put(File file, Object3D object) {
+		var key = keyOf(file, object.getMesh().isSinglePrecision(), object.getWeldTolerance());
+		if (key == null) {
+			return;
+		}
+		// drop the objects of older versions or other options of the file, and the
+		// collected ones
+		var iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			var e = iterator.next();
+			if (e.getKey().path.equals(key.path) || e.getValue().reference.get() == null) {
+				bytes -= e.getValue().bytes;
+				iterator.remove();
+			}
+		}
+		var entry = new Entry();
+		entry.reference = new SoftReference<>(object);
+		entry.object = object;
+		entry.bytes = estimateBytes(object);
+		bytes += entry.bytes;
+		entries.put(key, entry);
+		object.setBuildListener(() -> update(object));
+		trim();
+	}
+
+	/**
+	 * Evict the least recently used objects until the budget is met. An object
+	 * larger than the whole budget is evicted at once.
+	 */
+	private void trim() {
+		for (var entry : entries.values()) {
+			if (bytes <= maxBytes) {
+				break;
+			}
+			if (entry.object != null) {
+				entry.object = null;
+				bytes -= entry.bytes;
+				entry.bytes = 0;
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Get the key of a model file
+	 * 
+	 * @param file            model file
+	 * @param singlePrecision whether the coordinates are in single precision
+	 * @param weldTolerance   tolerance the vertices were welded with
+	 * @return the key, or null if the file has no canonical path
+	 */
+	private static Key keyOf(File file, boolean singlePrecision, double weldTolerance) {
+		try {
+			return new Key(file.getCanonicalPath(), file.length(), file.lastModified(), singlePrecision,
+					weldTolerance);
+		} catch (IOException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the number of objects found
+	 * 
+	 * @return hit count
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of objects not found, either never cached, of a changed file,
+	 * or collected after their eviction
+	 * 
+	 * @return miss count
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Get the number of objects evicted from the budget
+	 * 
+	 * @return eviction count
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Get the estimated footprint of the objects held strongly
+	 * 
+	 * @return size in bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Get the budget of the objects held strongly
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Get the number of objects cached, held strongly or softly
+	 * 
+	 * @return entry count
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,683 @@
+package LokiViewer.Object;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Byte level parser of the model file format. The file is read through a
+ * FileChannel into a reusable byte buffer, delimiters are scanned on the raw
+ * bytes, and numbers are parsed in place and written straight into primitive
+ * arrays, so no String is created per line or per number.
+ * 
+ * The file format is:<br>
+ * n,m<br>
+ * n lines of vertices: id,x,y,z<br>
+ * m lines of faces: id1,id2,id3
+ * 
+ * @author Renhao Lu
+ *
+ */
+class ModelParser {
+	/**
+	 * Initial size of the byte buffer
+	 */
+	private static final int bufferSize = 1 << 20;
+
+	/**
+	 * Number of faces parsed between two reports of the parsed faces
+	 */
+	private static final int faceBlock = 1 << 16;
+
+	/**
+	 * Exact powers of ten in double
+	 */
+	private static final double[] pow10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+			1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Smallest power of ten in pow5
+	 */
+	private static final int minPow10 = -342;
+
+	/**
+	 * Largest power of ten in pow5
+	 */
+	private static final int maxPow10 = 308;
+
+	/**
+	 * 128-bit truncated powers of five, normalized so the highest bit is set. Two
+	 * longs per power: high bits, low bits. See Daniel Lemire, Number Parsing at a
+	 * Gigabyte per Second.
+	 */
+	private static final long[] pow5 = new long[2 * (maxPow10 - minPow10 + 1)];
+
+	static {
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for (int q = minPow10; q <= maxPow10; q++) {
+			BigInteger c;
+			if (q < 0) {
+				BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+				int z = power5.bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+				if (c.bitLength() > 128) {
+					c = c.shiftRight(c.bitLength() - 128);
+				}
+			} else {
+				c = BigInteger.valueOf(5).pow(q);
+				c = c.bitLength() < 128 ? c.shiftLeft(128 - c.bitLength()) : c.shiftRight(c.bitLength() - 128);
+			}
+			pow5[2 * (q - minPow10)] = c.shiftRight(64).longValue();
+			pow5[2 * (q - minPow10) + 1] = c.and(mask).longValue();
+		}
+	}
+
+	/**
+	 * The file to read
+	 */
+	private FileChannel channel;
+	/**
+	 * File position of the next read
+	 */
+	private long position;
+	/**
+	 * File position to stop reading at
+	 */
+	private long end;
+	/**
+	 * Byte buffer
+	 */
+	private byte[] data;
+	/**
+	 * Current position in data
+	 */
+	private int pos;
+	/**
+	 * End of valid bytes in data
+	 */
+	private int limit;
+	/**
+	 * End of the current line in data, excluding the line break
+	 */
+	private int lineEnd;
+	/**
+	 * Start of the next line in data
+	 */
+	private int next;
+	/**
+	 * Current line number, starting from 1
+	 */
+	private int line;
+	/**
+	 * Where to report the bytes read, or null
+	 */
+	private ParseProgress progress;
+	/**
+	 * Whether parse stores the coordinates in single precision
+	 */
+	private boolean singlePrecision;
+
+	/**
+	 * Create a parser reading a range of the file
+	 * 
+	 * @param channel   the file to read
+	 * @param start     file position of the first line, inclusive
+	 * @param end       file position to stop at, exclusive
+	 * @param firstLine line number of the first line
+	 */
+	ModelParser(FileChannel channel, long start, long end, int firstLine) {
+		this.channel = channel;
+		this.position = start;
+		this.end = end;
+		this.data = new byte[(int) Long.min(bufferSize, Long.max(16, end - start))];
+		this.pos = 0;
+		this.limit = 0;
+		this.next = 0;
+		this.line = firstLine - 1;
+	}
+
+	/**
+	 * Report the bytes read, and stop reading when loading is cancelled
+	 * 
+	 * @param progress where to report, or null
+	 */
+	void setProgress(ParseProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Choose the precision parse stores the coordinates in. Single precision
+	 * coordinates are rounded as they are parsed, so the file is never held in
+	 * double precision.
+	 * 
+	 * @param singlePrecision true to store the coordinates in single precision
+	 */
+	void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Parse the whole file into a mesh. With a progress, the vertices are reported
+	 * once parsed, and the faces every block of faces.
+	 * 
+	 * @return the mesh
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when the content is not valid
+	 */
+	Mesh parse() throws IOException, ObjectParseException {
+		expectLine();
+		int n = readInt(false);
+		int m = readInt(true);
+		if (n < 0 || m < 0 || n > Integer.MAX_VALUE / 3 || m > Integer.MAX_VALUE / 3)
+			throw new ObjectParseException(line);
+
+		int[] ids = new int[n];
+		double[] coord = singlePrecision ? null : new double[3 * n];
+		float[] floatCoord = singlePrecision ? new float[3 * n] : null;
+		parseVertices(ids, coord, floatCoord, 0, n);
+		long[] idIndex = buildIdIndex(ids);
+		if (progress != null) {
+			progress.verticesParsed(ids, coord, floatCoord);
+		}
+
+		int[] triangles = new int[3 * m];
+		for (int from = 0; from < m; from += faceBlock) {
+			int to = (int) Long.min(m, (long) from + faceBlock);
+			parseFaces(ids, idIndex, triangles, from, to);
+			if (progress != null) {
+				progress.facesParsed(ids, coord, floatCoord, triangles, to);
+			}
+		}
+		return Mesh.of(ids, coord, floatCoord, triangles);
+	}
+
+	/**
+	 * Parse lines of vertices, into double or single precision coordinates
+	 * 
+	 * @param ids        vertex ids to write in
+	 * @param coord      vertex coordinates to write in, or null
+	 * @param floatCoord single precision vertex coordinates to write in, or null
+	 *                   if coord is given
+	 * @param from       index of the first vertex to parse
+	 * @param to         index of the last vertex to parse, exclusive
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when the content is not valid
+	 */
+	void parseVertices(int[] ids, double[] coord, float[] floatCoord, int from, int to)
+			throws IOException, ObjectParseException {
+		for (int i = from; i < to; i++) {
+			expectLine();
+			ids[i] = readInt(false);
+			double x = readDouble(false);
+			double y = readDouble(false);
+			double z = readDouble(true);
+			if (coord != null) {
+				coord[3 * i] = x;
+				coord[3 * i + 1] = y;
+				coord[3 * i + 2] = z;
+			} else {
+				floatCoord[3 * i] = (float) x;
+				floatCoord[3 * i + 1] = (float) y;
+				floatCoord[3 * i + 2] = (float) z;
+			}
+		}
+	}
+
+	/**
+	 * Parse lines of faces
+	 * 
+	 * @param ids       vertex ids
+	 * @param idIndex   lookup table from id to vertex index
+	 * @param triangles triangle index buffer to write in
+	 * @param from      index of the first face to parse
+	 * @param to        index of the last face to parse, exclusive
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when the content is not valid
+	 */
+	void parseFaces(int[] ids, long[] idIndex, int[] triangles, int from, int to)
+			throws IOException, ObjectParseException {
+		for (int i = from; i < to; i++) {
+			expectLine();
+			int v1 = indexOf(idIndex, readInt(false));
+			int v2 = indexOf(idIndex, readInt(false));
+			int v3 = indexOf(idIndex, readInt(true));
+			if (v1 < 0 || v2 < 0 || v3 < 0)
+				throw new ObjectParseException(line);
+			setFace(triangles, i, ids, v1, v2, v3);
+		}
+	}
+
+	/**
+	 * Move to the next line, failing if the file ends
+	 * 
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when there is no more line
+	 */
+	void expectLine() throws IOException, ObjectParseException {
+		if (!nextLine())
+			throw new ObjectParseException(line + 1);
+	}
+
+	/**
+	 * Move to the next line. Make sure the whole line is in the buffer, growing
+	 * the buffer for long lines.
+	 * 
+	 * @return false if there is no more line
+	 * @throws IOException           when reading failed
+	 * @throws CancellationException when loading is cancelled, see setProgress
+	 */
+	boolean nextLine() throws IOException {
+		pos = next;
+		int scan = pos;
+		while (true) {
+			while (scan < limit && data[scan] != '\n') {
+				scan++;
+			}
+			if (scan < limit) {
+				next = scan + 1;
+				break;
+			}
+			if (position >= end) {
+				if (pos == limit) {
+					return false;
+				}
+				next = limit;
+				break;
+			}
+			// compact the current line to the front and read more
+			int kept = limit - pos;
+			if (pos > 0) {
+				System.arraycopy(data, pos, data, 0, kept);
+			} else if (kept == data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			scan -= pos;
+			pos = 0;
+			limit = kept;
+			var buffer = ByteBuffer.wrap(data, limit, (int) Long.min(data.length - limit, end - position));
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				end = position;
+			} else {
+				position += read;
+				limit += read;
+				if (progress != null) {
+					progress.read(read);
+				}
+			}
+		}
+		lineEnd = scan;
+		if (lineEnd > pos && data[lineEnd - 1] == '\r') {
+			lineEnd--;
+		}
+		line++;
+		return true;
+	}
+
+	/**
+	 * Get the file position of the start of the next line
+	 * 
+	 * @return file position
+	 */
+	long getNextLinePosition() {
+		return position - (limit - next);
+	}
+
+	/**
+	 * Get the current line number
+	 * 
+	 * @return line number
+	 */
+	int getLine() {
+		return line;
+	}
+
+	/**
+	 * Move past the delimiter after a field
+	 * 
+	 * @param p    position after the field
+	 * @param last whether the field is the last of the line
+	 * @throws ObjectParseException when the delimiter is missing
+	 */
+	private void endField(int p, boolean last) throws ObjectParseException {
+		if (last) {
+			if (p != lineEnd)
+				throw new ObjectParseException(line);
+			pos = p;
+		} else {
+			if (p >= lineEnd || data[p] != ',')
+				throw new ObjectParseException(line);
+			pos = p + 1;
+		}
+	}
+
+	/**
+	 * Parse an int field, with the same syntax as Integer.parseInt
+	 * 
+	 * @param last whether the field is the last of the line
+	 * @return the value
+	 * @throws ObjectParseException when the field is not a valid int
+	 */
+	int readInt(boolean last) throws ObjectParseException {
+		int p = pos;
+		boolean negative = false;
+		if (p < lineEnd && (data[p] == '-' || data[p] == '+')) {
+			negative = data[p] == '-';
+			p++;
+		}
+		int start = p;
+		long value = 0;
+		while (p < lineEnd) {
+			int c = data[p] - '0';
+			if (c < 0 || c > 9) {
+				break;
+			}
+			value = value * 10 + c;
+			if (value > 1L << 31)
+				throw new ObjectParseException(line);
+			p++;
+		}
+		if (p == start)
+			throw new ObjectParseException(line);
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE)
+			throw new ObjectParseException(line);
+		endField(p, last);
+		return (int) value;
+	}
+
+	/**
+	 * Parse a double field. Plain decimal and scientific notations with up to 19
+	 * significant digits are parsed in place, with the same rounding as
+	 * Double.parseDouble. Anything else falls back to Double.parseDouble.
+	 * 
+	 * @param last whether the field is the last of the line
+	 * @return the value
+	 * @throws ObjectParseException when the field is not a valid double
+	 */
+	double readDouble(boolean last) throws ObjectParseException {
+		int p = pos;
+		while (p < lineEnd && (data[p] == ' ' || data[p] == '\t')) {
+			p++;
+		}
+		boolean negative = false;
+		if (p < lineEnd && (data[p] == '-' || data[p] == '+')) {
+			negative = data[p] == '-';
+			p++;
+		}
+		long w = 0;
+		int digits = 0;
+		int exp10 = 0;
+		boolean any = false;
+		boolean exact = true;
+		while (p < lineEnd) {
+			int c = data[p] - '0';
+			if (c < 0 || c > 9) {
+				break;
+			}
+			any = true;
+			if (digits < 19) {
+				if (w != 0 || c != 0) {
+					w = w * 10 + c;
+					digits++;
+				}
+			} else {
+				exp10++;
+				exact &= c == 0;
+			}
+			p++;
+		}
+		if (p < lineEnd && data[p] == '.') {
+			p++;
+			while (p < lineEnd) {
+				int c = data[p] - '0';
+				if (c < 0 || c > 9) {
+					break;
+				}
+				any = true;
+				if (digits < 19) {
+					if (w != 0 || c != 0) {
+						w = w * 10 + c;
+						digits++;
+					}
+					exp10--;
+				} else {
+					exact &= c == 0;
+				}
+				p++;
+			}
+		}
+		if (any && p < lineEnd && (data[p] == 'e' || data[p] == 'E')) {
+			p++;
+			boolean negativeExp = false;
+			if (p < lineEnd && (data[p] == '-' || data[p] == '+')) {
+				negativeExp = data[p] == '-';
+				p++;
+			}
+			int start = p;
+			int exp = 0;
+			while (p < lineEnd) {
+				int c = data[p] - '0';
+				if (c < 0 || c > 9) {
+					break;
+				}
+				if (exp < 100000) {
+					exp = exp * 10 + c;
+				}
+				p++;
+			}
+			if (p == start) {
+				any = false;
+			}
+			exp10 += negativeExp ? -exp : exp;
+		}
+		while (p < lineEnd && (data[p] == ' ' || data[p] == '\t')) {
+			p++;
+		}
+		boolean delimited = last ? p == lineEnd : p < lineEnd && data[p] == ',';
+		if (!any || !exact || !delimited) {
+			return readDoubleSlow(last);
+		}
+		endField(p, last);
+		return toDouble(w, exp10, negative);
+	}
+
+	/**
+	 * Parse a double field with Double.parseDouble, for the rare values the in
+	 * place parsing doesn't handle
+	 * 
+	 * @param last whether the field is the last of the line
+	 * @return the value
+	 * @throws ObjectParseException when the field is not a valid double
+	 */
+	private double readDoubleSlow(boolean last) throws ObjectParseException {
+		int p = pos;
+		while (p < lineEnd && data[p] != ',') {
+			p++;
+		}
+		try {
+			double value = Double.parseDouble(new String(data, pos, p - pos, StandardCharsets.ISO_8859_1));
+			endField(p, last);
+			return value;
+		} catch (NumberFormatException e) {
+			throw new ObjectParseException(line);
+		}
+	}
+
+	/**
+	 * Convert w * 10^q to the nearest double. Use the exact fast path when both w
+	 * and 10^q are exact doubles, otherwise the Eisel-Lemire algorithm, which is
+	 * always correctly rounded for w of up to 19 digits.
+	 * 
+	 * @param w        decimal significand, as unsigned
+	 * @param q        decimal exponent
+	 * @param negative sign
+	 * @return the double value
+	 */
+	static double toDouble(long w, int q, boolean negative) {
+		double d;
+		if (w == 0 || q < minPow10) {
+			d = 0;
+		} else if (w > 0 && w <= 1L << 53 && q >= -22 && q <= 22) {
+			d = q < 0 ? w / pow10[-q] : w * pow10[q];
+		} else if (q > maxPow10) {
+			d = Double.POSITIVE_INFINITY;
+		} else {
+			d = eiselLemire(w, q);
+		}
+		return negative ? -d : d;
+	}
+
+	/**
+	 * The Eisel-Lemire algorithm, see Daniel Lemire, Number Parsing at a Gigabyte
+	 * per Second, and Noble Mushtak and Daniel Lemire, Fast Number Parsing Without
+	 * Fallback
+	 * 
+	 * @param w decimal significand, as unsigned, not zero
+	 * @param q decimal exponent
+	 * @return the positive double value
+	 */
+	private static double eiselLemire(long w, int q) {
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		int index = 2 * (q - minPow10);
+		long high = unsignedMultiplyHigh(w, pow5[index]);
+		long low = w * pow5[index];
+		if ((high & 0x1ff) == 0x1ff) {
+			long secondHigh = unsignedMultiplyHigh(w, pow5[index + 1]);
+			low += secondHigh;
+			if (Long.compareUnsigned(secondHigh, low) > 0) {
+				high++;
+			}
+		}
+		int upperBit = (int) (high >>> 63);
+		int shift = upperBit + 64 - 52 - 3;
+		long mantissa = high >>> shift;
+		int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+		if (power2 <= 0) {
+			// subnormal
+			if (-power2 + 1 >= 64) {
+				return 0;
+			}
+			mantissa >>>= -power2 + 1;
+			mantissa += mantissa & 1;
+			mantissa >>>= 1;
+			power2 = mantissa < 1L << 52 ? 0 : 1;
+			return Double.longBitsToDouble(mantissa | (long) power2 << 52);
+		}
+		// exactly halfway between two doubles, round to even
+		if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 && (mantissa & 3) == 1
+				&& mantissa << shift == high) {
+			mantissa &= ~1L;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= 2L << 52) {
+			mantissa = 1L << 52;
+			power2++;
+		}
+		mantissa &= ~(1L << 52);
+		if (power2 >= 0x7ff) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Double.longBitsToDouble(mantissa | (long) power2 << 52);
+	}
+
+	/**
+	 * High 64 bits of the unsigned 128-bit product
+	 * 
+	 * @param a unsigned factor
+	 * @param b unsigned factor
+	 * @return high bits of a * b
+	 */
+	private static long unsignedMultiplyHigh(long a, long b) {
+		return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+	}
+
+	/**
+	 * Build a sorted lookup table from vertex id to vertex index. Each entry packs
+	 * the id in the high 32 bits and the index in the low 32 bits. When vertices
+	 * share an id, the last one in the file is kept, as the faces refer to it.
+	 * 
+	 * @param ids vertex ids in file order
+	 * @return sorted lookup table, one entry per distinct id
+	 */
+	static long[] buildIdIndex(int[] ids) {
+		long[] idIndex = new long[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			idIndex[i] = ((long) ids[i] << 32) | i;
+		}
+		Arrays.parallelSort(idIndex);
+		// entries of the same id are sorted by index, keep the last of each run
+		int count = 0;
+		for (int i = 0; i < idIndex.length; i++) {
+			if (i + 1 == idIndex.length || (idIndex[i + 1] >> 32) != (idIndex[i] >> 32)) {
+				idIndex[count++] = idIndex[i];
+			}
+		}
+		return count == idIndex.length ? idIndex : Arrays.copyOf(idIndex, count);
+	}
+
+	/**
+	 * Find the vertex index of an id in the lookup table
+	 * 
+	 * @param idIndex sorted lookup table
+	 * @param id      vertex id
+	 * @return vertex index, or -1 if no vertex has the id
+	 */
+	static int indexOf(long[] idIndex, int id) {
+		int lo = 0;
+		int hi = idIndex.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long midId = idIndex[mid] >> 32;
+			if (midId < id) {
+				lo = mid + 1;
+			} else if (midId > id) {
+				hi = mid - 1;
+			} else {
+				return (int) idIndex[mid];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Store the vertex indices of a face, sorted according to their id
+	 * 
+	 * @param triangles triangle index buffer
+	 * @param f         face index
+	 * @param ids       vertex ids
+	 * @param v1        index of vertex1
+	 * @param v2        index of vertex2
+	 * @param v3        index of vertex3
+	 */
+	static void setFace(int[] triangles, int f, int[] ids, int v1, int v2, int v3) {
+		int t;
+		if (ids[v1] > ids[v2]) {
+			t = v1;
+			v1 = v2;
+			v2 = t;
+		}
+		if (ids[v2] > ids[v3]) {
+			t = v2;
+			v2 = v3;
+			v3 = t;
+		}
+		if (ids[v1] > ids[v2]) {
+			t = v1;
+			v1 = v2;
+			v2 = t;
+		}
+		triangles[3 * f] = v1;
+		triangles[3 * f + 1] = v2;
+		triangles[3 * f + 2] = v3;
+	}
+}
@@ -2,18 +2,15 @@ package LokiViewer.Object;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.io.BufferedReader;
+import java.awt.Graphics2D;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The object class to draw
@@ -22,19 +19,38 @@ import java.util.Map.Entry;
  *
  */
 public class Object3D {
+	/**
+	 * Face counts of the simplified levels of detail, relative to the full mesh
+	 */
+	public static final double[] levelRatios = { 0.5, 0.1, 0.01 };
+	/**
+	 * Largest face count drawn while the object is dragged, larger meshes are
+	 * replaced by a simplified level
+	 */
+	public static final int dragFaceBudget = 50000;
+	/**
+	 * Weld tolerance of the viewer, relative to the diagonal of the bounding box,
+	 * see weldVertices
+	 */
+	public static final double defaultWeldTolerance = 1e-6;
 
 	/**
-	 * Hashmap to store id and vertices
+	 * Packed vertices and faces
 	 */
-	private HashMap<Integer, Vertex> vertices;
+	private Mesh mesh;
 	/**
-	 * ArrayList of all faces
+	 * Connectivity of the mesh, created when first used if the object is loaded
+	 * from a cache
 	 */
-	private ArrayList<Face> faces;
+	private MeshTopology topology;
 	/**
-	 * ArrayList of all edges
+	 * Vertex indices of all edges, two indices per edge
 	 */
-	private ArrayList<Edge> edges;
+	private int[] edges;
+	/**
+	 * Number of edges
+	 */
+	private int edgeCount;
 	/**
 	 * The rotation origin when mouse dragged
 	 */
@@ -49,45 +65,131 @@ public class Object3D {
 	private boolean drawFaces;
 
 	/**
-	 * Use naive z sorting (false) or topological sorting (true)
+	 * How faces are rendered
+	 */
+	private RenderMode renderMode;
+	/**
+	 * Rasterizer for Z_BUFFER render mode, created when first used
+	 */
+	private ZBuffer zBuffer;
+	/**
+	 * Sorter for NAIVE_Z_SORTING render mode, keeping the order of the last frame
+	 */
+	private DepthSorter depthSorter;
+	/**
+	 * Whether faces turned away from the viewer or outside the window are culled
+	 * before rendering
+	 */
+	private boolean cullFaces;
+	/**
+	 * Culler of the faces, created when first used
+	 */
+	private FaceCuller faceCuller;
+	/**
+	 * Draws the faces, vertices and edges with reused buffers
+	 */
+	private BatchRenderer batchRenderer = new BatchRenderer();
+	/**
+	 * Time and counts of the stages of the last frame
+	 */
+	private FrameStats frameStats = new FrameStats();
+	/**
+	 * Size of the file the object was parsed from
+	 */
+	private long loadBytes;
+	/**
+	 * Time spent on loading the object, in nanoseconds
+	 */
+	private long loadNanos;
+	/**
+	 * Whether the object was loaded from a cache file
+	 */
+	private boolean loadedFromCache;
+	/**
+	 * Tolerance the vertices were welded with, 0 if not welded
+	 */
+	private double weldTolerance;
+	/**
+	 * Time spent on building this object as a simplified level, in nanoseconds
+	 */
+	private long buildNanos;
+
+	/**
+	 * Simplified levels of detail, finest first, published one by one by the
+	 * background build
+	 */
+	private volatile Object3D[] levels = new Object3D[0];
+	/**
+	 * The thread building the levels of detail, null if not started
+	 */
+	private Thread levelBuilder;
+	/**
+	 * The BSP tree of the mesh, null until it is built in the background
+	 */
+	private volatile BspTree bspTree;
+	/**
+	 * Thread building the BSP tree, null until started
+	 */
+	private Thread bspBuilder;
+	/**
+	 * Called on the building thread when a level of detail or the BSP tree is
+	 * built, null if none
+	 */
+	private volatile Runnable buildListener;
+	/**
+	 * Whether the object is being dragged, and may be drawn with a simplified
+	 * level
+	 */
+	private boolean interactive;
+	/**
+	 * The level rotated and drawn in place of the mesh during the current drag,
+	 * null if none
+	 */
+	private Object3D dragLevel;
+	/**
+	 * The last rotation applied only to dragLevel, to apply to the mesh when the
+	 * drag ends
+	 */
+	private RotationMatrix pendingRotation;
+
+	/**
+	 * Constructor. Many faces may share same edges, the unique edges are found
+	 * with the topology of the mesh, see MeshTopology.
+	 * 
+	 * @param mesh packed vertices and faces
 	 */
-	private boolean sortAlgorithm;
+	public Object3D(Mesh mesh) {
+		this(mesh, (int[]) null);
+		topology = new MeshTopology(mesh);
+		edges = topology.getEdges();
+		edgeCount = topology.getEdgeCount();
+	}
 
 	/**
-	 * Constructor. Many faces may share same edges, hence use a HashSet to prevent
-	 * repeating.
+	 * Constructor with the edges already known, e.g. read from a cache file
 	 * 
-	 * @param vertices vertices
-	 * @param faces    faces
+	 * @param mesh  packed vertices and faces
+	 * @param edges vertex indices of all edges, two indices per edge
 	 */
-	public Object3D(HashMap<Integer, Vertex> vertices, ArrayList<Face> faces) {
-		this.vertices = vertices;
-		this.faces = faces;
+	private Object3D(Mesh mesh, int[] edges) {
+		this.mesh = mesh;
 		this.rotateOrigin = null;
-		this.edges = new ArrayList<>();
+		this.edges = edges;
+		this.edgeCount = edges == null ? 0 : edges.length / 2;
 		drawVertexAndEdge = true;
 		drawFaces = true;
-		sortAlgorithm = false;
-		HashSet<String> edgeSet = new HashSet<>();
-		for (Face f : faces) {
-			var v = f.getVertices();
-			String k1 = Integer.toString(v[0].getID()) + ' ' + Integer.toString(v[1].getID());
-			if (!edgeSet.contains(k1)) {
-				edges.add(new Edge(v[0], v[1]));
-				edgeSet.add(k1);
-			}
-			String k2 = Integer.toString(v[0].getID()) + ' ' + Integer.toString(v[2].getID());
-			if (!edgeSet.contains(k2)) {
-				edges.add(new Edge(v[0], v[2]));
-				edgeSet.add(k2);
-			}
-			String k3 = Integer.toString(v[1].getID()) + ' ' + Integer.toString(v[2].getID());
-			if (!edgeSet.contains(k3)) {
-				edges.add(new Edge(v[1], v[2]));
-				edgeSet.add(k3);
-			}
-		}
-		return;
+		renderMode = RenderMode.NAIVE_Z_SORTING;
+	}
+
+	/**
+	 * Create a partial object shown while its file is loaded, see LoadListener.
+	 * Its edges are not searched, the vertices and faces are drawn alone.
+	 * 
+	 * @param mesh vertices and the faces parsed so far
+	 * @return the partial object
+	 */
+	static Object3D preview(Mesh mesh) {
+		return new Object3D(mesh, new int[0]);
 	}
 
 	/**
@@ -103,11 +205,11 @@ public class Object3D {
 		res[2] = Double.POSITIVE_INFINITY;
 		res[3] = Double.POSITIVE_INFINITY;
 
-		for (Vertex v : vertices.values()) {
-			res[0] = Double.max(res[0], v.getVisualCoord()[0]);
-			res[1] = Double.max(res[1], v.getVisualCoord()[1]);
-			res[2] = Double.min(res[2], v.getVisualCoord()[0]);
-			res[3] = Double.min(res[3], v.getVisualCoord()[1]);
+		for (int v = 0; v < mesh.getVertexCount(); v++) {
+			res[0] = Double.max(res[0], mesh.getVisualCoord(v, 0));
+			res[1] = Double.max(res[1], mesh.getVisualCoord(v, 1));
+			res[2] = Double.min(res[2], mesh.getVisualCoord(v, 0));
+			res[3] = Double.min(res[3], mesh.getVisualCoord(v, 1));
 		}
 		return res;
 	}
@@ -142,80 +244,42 @@ public class Object3D {
 
 	/**
 	 * Get the rendering order of the faces in their z-order. Because not all face
-	 * are comparable, I implemented a topological sorting there.
-	 * 
-	 * @return a ArrayList of the rendering order
-	 */
-	private ArrayList<Integer> topologicalSortFacesRenderOrder() {
-		var comp = new FaceComp();
-		int n = faces.size();
-		ArrayList<ArrayList<Integer>> compRes = new ArrayList<>();
-		ArrayList<Integer> deg = new ArrayList<>();
-		for (int i = 0; i < n; i++) {
-			compRes.add(new ArrayList<>());
-			deg.add(0);
-		}
-		for (int i = 0; i < n; i++) {
-			for (int j = i + 1; j < n; j++) {
-				int res = comp.compare(faces.get(i), faces.get(j));
-				if (res == -1) {
-					compRes.get(i).add(j);
-					deg.set(j, deg.get(j) + 1);
-				} else if (res == 1) {
-					compRes.get(j).add(i);
-					deg.set(i, deg.get(i) + 1);
-				}
-			}
-		}
-		ArrayDeque<Integer> que = new ArrayDeque<>();
-		for (int i = 0; i < n; i++) {
-			if (deg.get(i) == 0) {
-				que.push(i);
-			}
-		}
-		ArrayList<Integer> sortRes = new ArrayList<>();
-		while (que.size() != 0) {
-			int head = que.poll();
-			sortRes.add(head);
-			for (int dest : compRes.get(head)) {
-				deg.set(dest, deg.get(dest) - 1);
-				if (deg.get(dest) == 0) {
-					que.push(dest);
-				}
-			}
-		}
-		return sortRes;
+	 * are comparable, I implemented a topological sorting there. Only faces whose
+	 * x-y borders overlap are compared, in parallel for large meshes, see
+	 * FaceOrderGraph.
+	 * 
+	 * @param faces faces to sort, ascending, or null for all faces
+	 * @param count number of faces to sort
+	 * @param stats statistics of the frame, which record the comparisons
+	 * @return the rendering order
+	 */
+	private int[] topologicalSortFacesRenderOrder(int[] faces, int count, FrameStats stats) {
+		var graph = new FaceOrderGraph(mesh, ForkJoinPool.commonPool(), faces, count);
+		stats.setComparisons(graph.getComparisons());
+		return graph.sort();
 	}
 
 	/**
-	 * Sort faces according to their average z value
+	 * Sort faces according to their average z value. The order of the last frame
+	 * is repaired rather than sorted again, see DepthSorter.
 	 * 
-	 * @return a ArrayList of the rendering order
+	 * @param faces faces to sort, ascending, or null for all faces
+	 * @param count number of faces to sort
+	 * @return the rendering order, owned by the sorter and valid for the first
+	 *         count values
 	 */
-	private ArrayList<Integer> naiveSortFacesRenderOrder() {
-		ArrayList<Entry<Integer, Double>> pairs = new ArrayList<>();
-		for (int i = 0; i < faces.size(); i++) {
-			pairs.add(Map.entry(i, faces.get(i).getAverageZVale()));
+	private int[] naiveSortFacesRenderOrder(int[] faces, int count) {
+		if (depthSorter == null) {
+			depthSorter = new DepthSorter(mesh);
 		}
-		Collections.sort(pairs, (i, j) -> {
-			double r = i.getValue() - j.getValue();
-			if (r > 0)
-				return 1;
-			else if (r < 0)
-				return -1;
-			else
-				return 0;
-		});
-		ArrayList<Integer> res = new ArrayList<>();
-		for (var p : pairs) {
-			res.add(p.getKey());
-		}
-		return res;
+		depthSorter.sort(faces, count);
+		return depthSorter.getOrder();
 	}
 
 	/**
 	 * Draw the object in window. If need to rescale, first rescale all vertices.
-	 * Then draw all faces, vertices, and edges
+	 * Then cull the faces if asked, and draw the faces, vertices, and edges. The
+	 * time of each stage is recorded, see getFrameStats.
 	 * 
 	 * @param g       the Graphics context in which to paint
 	 * @param d       window dimension
@@ -223,39 +287,100 @@ public class Object3D {
 	 *                window)
 	 */
 	public void draw(Graphics g, Dimension d, boolean reScale) {
-		double[] zoomAndShift = getZoomAndShift(d);
+		frameStats.beginFrame();
 		if (reScale) {
-			for (Vertex v : vertices.values()) {
-				v.applyZoomAndShift(zoomAndShift);
-			}
+			frameStats.begin(FrameStats.Stage.ZOOM_AND_SHIFT);
+			double[] zoomAndShift = getZoomAndShift(d);
+			mesh.applyZoomAndShift(zoomAndShift);
+			// a rotation of the drag level is dropped, like the rotation of the mesh
+			dragLevel = null;
+			pendingRotation = null;
+			frameStats.end(FrameStats.Stage.ZOOM_AND_SHIFT, mesh.getVertexCount());
 		}
+		var drawn = this;
+		if (interactive && dragLevel != null) {
+			drawn = dragLevel;
+			drawn.drawVertexAndEdge = drawVertexAndEdge;
+			drawn.drawFaces = drawFaces;
+			drawn.renderMode = renderMode;
+			drawn.cullFaces = cullFaces;
+		}
+		drawn.drawMesh((Graphics2D) g, d, frameStats);
+		frameStats.endFrame(renderMode, drawn.mesh.getFaceCount());
+	}
 
+	/**
+	 * Draw the mesh of the object at its current position
+	 * 
+	 * @param g2    the Graphics context in which to paint
+	 * @param d     window dimension
+	 * @param stats statistics of the frame
+	 */
+	private void drawMesh(Graphics2D g2, Dimension d, FrameStats stats) {
 		if (drawFaces) {
+			int[] faces = null;
+			int count = mesh.getFaceCount();
+			if (cullFaces) {
+				stats.begin(FrameStats.Stage.CULL);
+				count = getFaceCuller().cull(d);
+				faces = faceCuller.getVisibleFaces();
+				stats.end(FrameStats.Stage.CULL, mesh.getFaceCount() - count);
+			}
 
-			ArrayList<Integer> sortRes;
+			var tree = bspTree;
+			if (renderMode == RenderMode.Z_BUFFER) {
+				if (zBuffer == null) {
+					zBuffer = new ZBuffer(mesh);
+				}
+				stats.begin(FrameStats.Stage.DRAW_FACES);
+				zBuffer.draw(g2, d, faces, count);
+				stats.end(FrameStats.Stage.DRAW_FACES, count);
+			} else if (renderMode == RenderMode.BSP_TREE && tree != null) {
+				stats.begin(FrameStats.Stage.ORDER);
+				int fragments = tree.sort(faces, count);
+				stats.end(FrameStats.Stage.ORDER, fragments);
 
-			if (sortAlgorithm) {
-				sortRes = topologicalSortFacesRenderOrder();
+				stats.begin(FrameStats.Stage.DRAW_FACES);
+				batchRenderer.drawFragments(mesh, tree, tree.getOrder(), fragments, g2, d);
+				stats.end(FrameStats.Stage.DRAW_FACES, fragments);
 			} else {
-				sortRes = naiveSortFacesRenderOrder();
-			}
+				int[] sortRes;
+
+				stats.begin(FrameStats.Stage.ORDER);
+				if (renderMode == RenderMode.TOPOLOGICAL_Z_SORTING) {
+					sortRes = topologicalSortFacesRenderOrder(faces, count, stats);
+				} else {
+					sortRes = naiveSortFacesRenderOrder(faces, count);
+				}
+				stats.end(FrameStats.Stage.ORDER, count);
+				if (renderMode == RenderMode.TOPOLOGICAL_Z_SORTING) {
+					// faces on a cycle of the order are left out
+					count = sortRes.length;
+				}
 
-			for (int index : sortRes) {
-				faces.get(index).draw(g, d);
+				stats.begin(FrameStats.Stage.DRAW_FACES);
+				batchRenderer.drawFaces(mesh, sortRes, count, g2, d);
+				stats.end(FrameStats.Stage.DRAW_FACES, count);
 			}
 		}
 
 		if (drawVertexAndEdge) {
-
-			for (Vertex v : vertices.values()) {
-				v.draw(g, d);
-			}
-
-			for (Edge e : edges) {
-				e.draw(g, d);
-			}
+			stats.begin(FrameStats.Stage.DRAW_VERTICES_AND_EDGES);
+			batchRenderer.drawVertices(mesh, g2, d);
+			batchRenderer.drawEdges(mesh, edges, edgeCount, g2, d);
+			stats.end(FrameStats.Stage.DRAW_VERTICES_AND_EDGES, mesh.getVertexCount() + edgeCount);
 		}
+	}
 
+	/**
+	 * Get the statistics of the last frame drawn. They are updated by draw and
+	 * rotate, so they must be read on the thread drawing the object, or copied,
+	 * see FrameStats.set.
+	 * 
+	 * @return statistics of the last frame
+	 */
+	public FrameStats getFrameStats() {
+		return frameStats;
 	}
 
 	/**
@@ -276,8 +401,45 @@ public class Object3D {
 		this.drawFaces = flag;
 	}
 
+	/**
+	 * Set whether faces turned away from the viewer or outside the window are
+	 * culled before rendering, see FaceCuller
+	 * 
+	 * @param flag target value
+	 */
+	public void setCullFaces(boolean flag) {
+		this.cullFaces = flag;
+	}
+
+	/**
+	 * Get the culler of the faces, which also tells how many faces the last frame
+	 * culled
+	 * 
+	 * @return face culler
+	 */
+	public FaceCuller getFaceCuller() {
+		if (faceCuller == null) {
+			faceCuller = new FaceCuller(mesh, getTopology());
+		}
+		return faceCuller;
+	}
+
+	/**
+	 * Choose between naive z sorting (false) and topological sorting (true)
+	 * 
+	 * @param flag target value
+	 */
 	public void setPainterAlgo(boolean flag) {
-		this.sortAlgorithm = flag;
+		this.renderMode = flag ? RenderMode.TOPOLOGICAL_Z_SORTING : RenderMode.NAIVE_Z_SORTING;
+	}
+
+	/**
+	 * Set how faces are rendered
+	 * 
+	 * @param renderMode target value
+	 */
+	public void setRenderMode(RenderMode renderMode) {
+		this.renderMode = renderMode;
 	}
 
 	/**
@@ -287,20 +449,9 @@ public class Object3D {
 	 * farthest.
 	 */
 	public void generateRotateOrigin() {
-		Vertex v = null;
-		double maxz = Double.NEGATIVE_INFINITY;
-		double minz = Double.POSITIVE_INFINITY;
-
-		for (Vertex vertex : vertices.values()) {
-			if (vertex.getRescaleCoord()[2] > maxz) {
-				maxz = vertex.getRescaleCoord()[2];
-				v = vertex;
-			}
-			if (vertex.getRescaleCoord()[2] < minz) {
-				minz = vertex.getRescaleCoord()[2];
-			}
-		}
-		rotateOrigin = new double[] { v.getRescaleCoord()[0], v.getRescaleCoord()[1], (maxz + minz) / 2 };
+		int v = mesh.getNearestVertex();
+		rotateOrigin = new double[] { mesh.getVisualCoord(v, 0), mesh.getVisualCoord(v, 1),
+				(mesh.getMaxZ() + mesh.getMinZ()) / 2 };
 		return;
 	}
 
@@ -312,80 +463,739 @@ public class Object3D {
 	}
 
 	/**
-	 * Rotate all vertex
+	 * Rotate all vertex. While the object is dragged and a simplified level is
+	 * built, only the level is rotated, and the mesh follows when the drag ends.
 	 * 
 	 * @param x angle in x component
 	 * @param y angle in y component
 	 */
 	public void rotate(double x, double y) {
+		frameStats.begin(FrameStats.Stage.ROTATE);
 		var matrix = new RotationMatrix(x, y);
-		for (Vertex v : vertices.values()) {
-			v.rotate(matrix, rotateOrigin);
+		var level = interactive ? getDragLevel() : null;
+		if (level == null) {
+			mesh.rotate(matrix, rotateOrigin);
+			frameStats.end(FrameStats.Stage.ROTATE, mesh.getVertexCount());
+			return;
 		}
+		if (level != dragLevel) {
+			level.mesh.copyTransform(mesh);
+			dragLevel = level;
+		}
+		level.mesh.rotate(matrix, rotateOrigin);
+		pendingRotation = matrix;
+		frameStats.end(FrameStats.Stage.ROTATE, level.mesh.getVertexCount());
 	}
 
 	/**
 	 * After rotation, update the vertex
 	 */
 	public void updateVertex() {
-		for (Vertex v : vertices.values()) {
-			v.updateRescaleCoord();
+		applyPendingRotation();
+		mesh.updateRescaleCoord();
+	}
+
+	/**
+	 * Apply to the mesh the last rotation that was only applied to the drag level
+	 */
+	private void applyPendingRotation() {
+		if (pendingRotation != null) {
+			frameStats.begin(FrameStats.Stage.ROTATE);
+			mesh.rotate(pendingRotation, rotateOrigin);
+			pendingRotation = null;
+			frameStats.end(FrameStats.Stage.ROTATE, mesh.getVertexCount());
+		}
+		dragLevel = null;
+	}
+
+	/**
+	 * Set whether the object is being dragged. While dragged, a mesh larger than
+	 * dragFaceBudget is rotated and drawn with a simplified level if one is
+	 * built; when the drag ends the full mesh is drawn again.
+	 * 
+	 * @param flag target value
+	 */
+	public void setInteractive(boolean flag) {
+		if (!flag) {
+			applyPendingRotation();
+		}
+		this.interactive = flag;
+	}
+
+	/**
+	 * Get the level to draw during a drag: the finest level within
+	 * dragFaceBudget, or the coarsest level if none is
+	 * 
+	 * @return the level, or null if the mesh is small enough or no level is built
+	 *         yet
+	 */
+	private Object3D getDragLevel() {
+		if (mesh.getFaceCount() <= dragFaceBudget) {
+			return null;
+		}
+		Object3D res = null;
+		for (var level : levels) {
+			res = level;
+			if (level.mesh.getFaceCount() <= dragFaceBudget) {
+				break;
+			}
 		}
+		return res;
+	}
+
+	/**
+	 * Build the simplified levels of detail in a background thread, see
+	 * MeshSimplifier. Levels are only built for meshes larger than
+	 * dragFaceBudget, in one pass from the finest to the coarsest, and each level
+	 * can be used as soon as it is built. The build time and memory of each level
+	 * are printed.
+	 */
+	public synchronized void buildLevelsOfDetail() {
+		if (levelBuilder != null || mesh.getFaceCount() <= dragFaceBudget) {
+			return;
+		}
+		levelBuilder = new Thread(this::buildLevels, "LokiViewer levels of detail");
+		levelBuilder.setDaemon(true);
+		levelBuilder.setPriority(Thread.MIN_PRIORITY);
+		levelBuilder.start();
+	}
+
+	/**
+	 * Build the levels of detail, publishing each one when it is done
+	 */
+	private void buildLevels() {
+		try {
+			long start = System.nanoTime();
+			var simplifier = new MeshSimplifier(mesh, getTopology());
+			for (double ratio : levelRatios) {
+				var level = new Object3D(simplifier.simplify((int) (mesh.getFaceCount() * ratio)));
+				long end = System.nanoTime();
+				level.buildNanos = end - start;
+				start = end;
+				var built = Arrays.copyOf(levels, levels.length + 1);
+				built[built.length - 1] = level;
+				levels = built;
+				System.out.printf("Level of detail %d: %d faces, built in %.1f ms, %.1f MB%n", built.length,
+						level.mesh.getFaceCount(), level.buildNanos / 1e6, level.getMemoryBytes() / 1e6);
+				notifyBuilt();
+			}
+		} catch (RuntimeException | OutOfMemoryError e) {
+			System.out.println("Levels of detail not built: " + e);
+		}
+	}
+
+	/**
+	 * Get the number of simplified levels of detail built so far
+	 * 
+	 * @return level count
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	/**
+	 * Get a simplified level of detail
+	 * 
+	 * @param index level index, from the finest to the coarsest
+	 * @return the level
+	 */
+	public Object3D getLevel(int index) {
+		return levels[index];
+	}
+
+	/**
+	 * Build the BSP tree of the mesh in a background thread, see BspTree. Until
+	 * it is built, the BSP_TREE render mode sorts the faces by their depth. The
+	 * size and build time of the tree are printed.
+	 */
+	public synchronized void buildBspTree() {
+		if (bspBuilder != null) {
+			return;
+		}
+		bspBuilder = new Thread(() -> {
+			try {
+				long start = System.nanoTime();
+				var tree = new BspTree(mesh);
+				bspTree = tree;
+				System.out.printf("BSP tree: %d nodes, %d fragments of %d faces, %d split points, built in %.1f ms%n",
+						tree.getNodeCount(), tree.getFragmentCount(), mesh.getFaceCount(), tree.getSplitPointCount(),
+						(System.nanoTime() - start) / 1e6);
+				notifyBuilt();
+			} catch (RuntimeException | OutOfMemoryError e) {
+				System.out.println("BSP tree not built: " + e);
+			}
+		}, "LokiViewer BSP tree");
+		bspBuilder.setDaemon(true);
+		bspBuilder.setPriority(Thread.MIN_PRIORITY);
+		bspBuilder.start();
+	}
+
+	/**
+	 * Build the BSP tree if it is not built yet, and wait until it is done
+	 * 
+	 * @throws InterruptedException when interrupted while waiting
+	 */
+	public void awaitBspTree() throws InterruptedException {
+		Thread builder;
+		synchronized (this) {
+			buildBspTree();
+			builder = bspBuilder;
+		}
+		builder.join();
 	}
 
 	/**
-	 * Parse the input file
+	 * Get the BSP tree of the mesh
+	 * 
+	 * @return the tree, or null if it is not built yet
+	 */
+	public BspTree getBspTree() {
+		return bspTree;
+	}
+
+	/**
+	 * Set what to call when a level of detail or the BSP tree is built in the
+	 * background, e.g. to count its memory, see ModelCache
+	 * 
+	 * @param listener called on the building thread, or null
+	 */
+	void setBuildListener(Runnable listener) {
+		this.buildListener = listener;
+	}
+
+	/**
+	 * Call the build listener, if any
+	 */
+	private void notifyBuilt() {
+		var listener = buildListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Get the time spent on building this object as a simplified level
+	 * 
+	 * @return build time in nanoseconds, 0 if the object is not a level
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * Get the memory used by the arrays of the mesh, its topology and edges, and
+	 * its BSP tree once built, without the caches built for drawing
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryBytes() {
+		long bytes = mesh.getMemoryBytes();
+		if (topology != null) {
+			bytes += topology.getMemoryBytes();
+		} else if (edges != null) {
+			bytes += 4L * edges.length;
+		}
+		var tree = bspTree;
+		if (tree != null) {
+			bytes += tree.getMemoryBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the memory used by the caches built to draw the object and its levels
+	 * of detail: the face caches, the depth sorter, the face culler and the
+	 * z-buffer, which alone takes 8 bytes per pixel of the window. They may be
+	 * built by another thread, so this is an estimate.
+	 * 
+	 * @return size in bytes
+	 */
+	public long getRenderCacheBytes() {
+		long bytes = mesh.getFaceCacheBytes();
+		var sorter = depthSorter;
+		var culler = faceCuller;
+		var buffer = zBuffer;
+		bytes += (sorter == null ? 0 : sorter.getMemoryBytes()) + (culler == null ? 0 : culler.getMemoryBytes())
+				+ (buffer == null ? 0 : buffer.getMemoryBytes());
+		for (var level : levels) {
+			bytes += level.getRenderCacheBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Drop the caches built to draw the object and its levels of detail, e.g.
+	 * once the object is no longer shown. They are built again when the object is
+	 * next drawn. To call on the thread drawing the object.
+	 */
+	public void releaseRenderCaches() {
+		mesh.releaseFaceCache();
+		depthSorter = null;
+		faceCuller = null;
+		zBuffer = null;
+		for (var level : levels) {
+			level.releaseRenderCaches();
+		}
+	}
+
+	/**
+	 * Get the packed vertices and faces
+	 * 
+	 * @return mesh
+	 */
+	public Mesh getMesh() {
+		return mesh;
+	}
+
+	/**
+	 * Get a view of a vertex
+	 * 
+	 * @param index vertex index
+	 * @return vertex view
+	 */
+	public Vertex getVertex(int index) {
+		return new Vertex(mesh, index);
+	}
+
+	/**
+	 * Get a view of a face
+	 * 
+	 * @param index face index
+	 * @return face view
+	 */
+	public Face getFace(int index) {
+		return new Face(mesh, index);
+	}
+
+	/**
+	 * Get a view of an edge
+	 * 
+	 * @param index edge index
+	 * @return edge view
+	 */
+	public Edge getEdge(int index) {
+		return new Edge(mesh, edges[2 * index], edges[2 * index + 1]);
+	}
+
+	/**
+	 * Get the connectivity of the mesh
+	 * 
+	 * @return topology of the mesh
+	 */
+	public synchronized MeshTopology getTopology() {
+		if (topology == null) {
+			topology = new MeshTopology(mesh);
+		}
+		return topology;
+	}
+
+	/**
+	 * Get edge count
+	 * 
+	 * @return number of edges
+	 */
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Get the size of the file the object was parsed from
+	 * 
+	 * @return file size in bytes, 0 if not parsed from a file
+	 */
+	public long getLoadBytes() {
+		return loadBytes;
+	}
+
+	/**
+	 * Get the time spent on loading the object
+	 * 
+	 * @return load time in nanoseconds
+	 */
+	public long getLoadNanos() {
+		return loadNanos;
+	}
+
+	/**
+	 * Whether the object was loaded from a binary cache file instead of parsing
+	 * the model file
+	 * 
+	 * @return true if loaded from a cache file
+	 */
+	public boolean isLoadedFromCache() {
+		return loadedFromCache;
+	}
+
+	/**
+	 * Get the tolerance the vertices were welded with
+	 * 
+	 * @return tolerance relative to the diagonal of the bounding box, 0 if not
+	 *         welded
+	 */
+	public double getWeldTolerance() {
+		return weldTolerance;
+	}
+
+	/**
+	 * Merge the vertices lying within a tolerance of each other, see
+	 * VertexWelder, and remove the faces left degenerate. The object is not
+	 * changed; its load statistics are kept by the welded object, with the time
+	 * of welding added. The vertices merged and the faces removed are printed.
+	 * Open welds the parsed mesh before building the object instead, so that
+	 * the edges are only searched once.
+	 * 
+	 * @param tolerance the largest distance of two merged vertices, relative to
+	 *                  the diagonal of the bounding box
+	 * @return the welded object, or this object, unchanged, if no vertex is
+	 *         merged
+	 */
+	public Object3D weldVertices(double tolerance) {
+		long start = System.nanoTime();
+		var welded = VertexWelder.weld(mesh, tolerance);
+		if (welded == mesh) {
+			return this;
+		}
+		var object = new Object3D(welded);
+		long nanos = System.nanoTime() - start;
+		object.loadBytes = loadBytes;
+		object.loadedFromCache = loadedFromCache;
+		object.weldTolerance = tolerance;
+		object.loadNanos = loadNanos + nanos;
+		printWelded(mesh, object, nanos);
+		return object;
+	}
+
+	/**
+	 * Print the vertices merged and the faces removed by welding
+	 * 
+	 * @param mesh   the mesh before welding
+	 * @param object the object of the welded mesh
+	 * @param nanos  time spent on welding, in nanoseconds
+	 */
+	private static void printWelded(Mesh mesh, Object3D object, long nanos) {
+		var welded = object.mesh;
+		System.out.printf("Vertices welded: %d of %d merged, %d degenerate faces removed, %d edges left, in %.1f ms%n",
+				mesh.getVertexCount() - welded.getVertexCount(), mesh.getVertexCount(),
+				mesh.getFaceCount() - welded.getFaceCount(), object.edgeCount, nanos / 1e6);
+	}
+
+	/**
+	 * Get the load throughput
+	 * 
+	 * @return load throughput in MB/s
+	 */
+	public double getLoadThroughput() {
+		return loadNanos == 0 ? 0 : loadBytes / 1e6 / (loadNanos / 1e9);
+	}
+
+	/**
+	 * Parse the input file, see ModelParser. Vertices are stored in the order they
+	 * appear in the file, and the vertex ids used by faces are remapped to that
+	 * order. Large files are parsed in parallel in the common pool.
 	 * 
 	 * @param file input file
 	 * @return new object3D
 	 * @throws ObjectParseException when any file reading or parsing problem happens
 	 */
 	public static Object3D parse(File file) throws ObjectParseException {
-		HashMap<Integer, Vertex> vertices = new HashMap<>();
-		ArrayList<Face> faces = new ArrayList<>();
-		try (BufferedReader bf = new BufferedReader(new FileReader(file))) {
-			String str = bf.readLine();
-			String[] s = str.split(",");
-			if (s.length != 2)
+		return parse(file, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parse the input file. Files of at least 16 MB are split into chunks parsed
+	 * concurrently in the pool, see ParallelModelParser; smaller files, or a pool
+	 * of one thread, use the sequential ModelParser.
+	 * 
+	 * @param file input file
+	 * @param pool the pool to parse in, or null to always parse sequentially
+	 * @return new object3D
+	 * @throws ObjectParseException when any file reading or parsing problem happens
+	 */
+	public static Object3D parse(File file, ForkJoinPool pool) throws ObjectParseException {
+		return parse(file, pool, null);
+	}
+
+	/**
+	 * Parse the input file, reporting the progress to a listener
+	 * 
+	 * @param file     input file
+	 * @param pool     the pool to parse in, or null to always parse sequentially
+	 * @param listener the listener following the parsing, or null
+	 * @return new object3D
+	 * @throws ObjectParseException  when any file reading or parsing problem
+	 *                               happens
+	 * @throws CancellationException when the listener cancelled the parsing
+	 */
+	public static Object3D parse(File file, ForkJoinPool pool, LoadListener listener) throws ObjectParseException {
+		return parse(file, pool, listener, false);
+	}
+
+	/**
+	 * Parse the input file, reporting the progress to a listener, optionally
+	 * keeping the coordinates in single precision. The parsers then round each
+	 * coordinate as it is parsed, so no double precision array is allocated.
+	 * 
+	 * @param file            input file
+	 * @param pool            the pool to parse in, or null to always parse
+	 *                        sequentially
+	 * @param listener        the listener following the parsing, or null
+	 * @param singlePrecision whether to store the coordinates in single precision
+	 * @return new object3D
+	 * @throws ObjectParseException  when any file reading or parsing problem
+	 *                               happens
+	 * @throws CancellationException when the listener cancelled the parsing
+	 */
+	public static Object3D parse(File file, ForkJoinPool pool, LoadListener listener, boolean singlePrecision)
+			throws ObjectParseException {
+		var event = new ParseEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			var mesh = parseMesh(channel, pool, listener, singlePrecision);
+			checkCancelled(listener);
+			var object = new Object3D(mesh);
+			object.loadBytes = channel.size();
+			object.loadNanos = System.nanoTime() - start;
+			object.commitLoadEvent(event, file);
+			return object;
+		} catch (IOException | InvalidPathException e) {
+			throw new ObjectParseException();
+		}
+	}
+
+	/**
+	 * Parse the mesh of a model file, in parallel if the pool has several threads
+	 * and the file is large enough, see ParallelModelParser
+	 * 
+	 * @param channel         model file
+	 * @param pool            the pool to parse in, or null to parse sequentially
+	 * @param listener        the listener following the parsing, or null
+	 * @param singlePrecision whether to store the coordinates in single precision
+	 * @return the parsed mesh
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when parsing failed
+	 */
+	private static Mesh parseMesh(FileChannel channel, ForkJoinPool pool, LoadListener listener,
+			boolean singlePrecision) throws IOException, ObjectParseException {
+		long size = channel.size();
+		var progress = listener == null ? null : new ParseProgress(listener, size);
+		if (pool != null && pool.getParallelism() > 1 && size >= ParallelModelParser.parallelThreshold) {
+			return new ParallelModelParser(channel, pool, progress, singlePrecision).parse();
+		}
+		var parser = new ModelParser(channel, 0, size, 1);
+		parser.setProgress(progress);
+		parser.setSinglePrecision(singlePrecision);
+		return parser.parse();
+	}
+
+	/**
+	 * Save the object to a binary cache file, see MeshCache. The size and last
+	 * modified time of the model file are recorded, so that load can tell when
+	 * the cache is stale.
+	 * 
+	 * @param file           cache file to write
+	 * @param sourceSize     size of the model file
+	 * @param sourceModified last modified time of the model file
+	 * @throws IOException when writing failed
+	 */
+	public void save(File file, long sourceSize, long sourceModified) throws IOException {
+		MeshCache.write(file, sourceSize, sourceModified, mesh, edges);
+	}
+
+	/**
+	 * Load an object from a binary cache file through a read-only memory mapping,
+	 * see MeshCache
+	 * 
+	 * @param file           cache file to read
+	 * @param sourceSize     expected size of the model file
+	 * @param sourceModified expected last modified time of the model file
+	 * @return the object, or null if the cache file does not exist, is stale or is
+	 *         damaged
+	 * @throws IOException when reading failed
+	 */
+	public static Object3D load(File file, long sourceSize, long sourceModified) throws IOException {
+		return load(file, sourceSize, sourceModified, false);
+	}
+
+	/**
+	 * Load an object from a binary cache file, optionally keeping the coordinates
+	 * in single precision. The coordinates are stored as doubles and rounded as
+	 * they are read; a cache written from a single precision object is only
+	 * loaded in single precision.
+	 * 
+	 * @param file            cache file to read
+	 * @param sourceSize      expected size of the model file
+	 * @param sourceModified  expected last modified time of the model file
+	 * @param singlePrecision whether to store the coordinates in single precision
+	 * @return the object, or null if the cache file does not exist, is stale, is
+	 *         damaged or is rounded while double precision is asked for
+	 * @throws IOException when reading failed
+	 */
+	public static Object3D load(File file, long sourceSize, long sourceModified, boolean singlePrecision)
+			throws IOException {
+		var event = new ParseEvent();
+		event.begin();
+		long start = System.nanoTime();
+		var cache = MeshCache.read(file, sourceSize, sourceModified, singlePrecision);
+		if (cache == null) {
+			return null;
+		}
+		var object = cache.edges == null ? new Object3D(cache.mesh) : new Object3D(cache.mesh, cache.edges);
+		object.loadBytes = file.length();
+		object.loadNanos = System.nanoTime() - start;
+		object.loadedFromCache = true;
+		object.commitLoadEvent(event, file);
+		return object;
+	}
+
+	/**
+	 * Commit the flight recorder event of loading the object
+	 * 
+	 * @param event the event, begun when loading started
+	 * @param file  the file loaded
+	 */
+	private void commitLoadEvent(ParseEvent event, File file) {
+		if (event.shouldCommit()) {
+			event.path = file.getPath();
+			event.bytes = loadBytes;
+			event.fromCache = loadedFromCache;
+			event.vertices = mesh.getVertexCount();
+			event.faces = mesh.getFaceCount();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Open a model file. If a valid binary cache is next to it, the cache is
+	 * loaded, otherwise the model file is parsed and the cache is written for the
+	 * next time. Failing to read or write the cache is not an error, the text
+	 * parser is always the fallback.
+	 * 
+	 * @param file model file
+	 * @return new object3D
+	 * @throws ObjectParseException when any file reading or parsing problem happens
+	 */
+	public static Object3D open(File file) throws ObjectParseException {
+		return open(file, null);
+	}
+
+	/**
+	 * Open a model file, reporting the progress of parsing to a listener. Loading
+	 * a cache is not reported, it is fast enough.
+	 * 
+	 * @param file     model file
+	 * @param listener the listener following the parsing, or null
+	 * @return new object3D
+	 * @throws ObjectParseException  when any file reading or parsing problem
+	 *                               happens
+	 * @throws CancellationException when the listener cancelled the parsing
+	 */
+	public static Object3D open(File file, LoadListener listener) throws ObjectParseException {
+		return open(file, listener, false);
+	}
+
+	/**
+	 * Open a model file, reporting the progress of parsing to a listener,
+	 * optionally keeping the coordinates in single precision
+	 * 
+	 * @param file            model file
+	 * @param listener        the listener following the parsing, or null
+	 * @param singlePrecision whether to store the coordinates in single precision
+	 * @return new object3D
+	 * @throws ObjectParseException  when any file reading or parsing problem
+	 *                               happens
+	 * @throws CancellationException when the listener cancelled the parsing
+	 */
+	public static Object3D open(File file, LoadListener listener, boolean singlePrecision)
+			throws ObjectParseException {
+		return open(file, listener, singlePrecision, 0);
+	}
+
+	/**
+	 * Open a model file, reporting the progress of parsing to a listener,
+	 * optionally keeping the coordinates in single precision and welding the
+	 * vertices. The mesh is welded before the object is built, so its edges are
+	 * only searched once, see weldVertices. The cache file keeps the vertices as
+	 * parsed, not welded, and keeps their edges only if welding merged none.
+	 * 
+	 * @param file            model file
+	 * @param listener        the listener following the parsing, or null
+	 * @param singlePrecision whether to store the coordinates in single precision
+	 * @param weldTolerance   tolerance to weld the vertices with, relative to the
+	 *                        diagonal of the bounding box, 0 to not weld, see
+	 *                        weldVertices
+	 * @return new object3D
+	 * @throws ObjectParseException  when any file reading or parsing problem
+	 *                               happens
+	 * @throws CancellationException when the listener cancelled the parsing
+	 */
+	public static Object3D open(File file, LoadListener listener, boolean singlePrecision, double weldTolerance)
+			throws ObjectParseException {
+		var event = new ParseEvent();
+		event.begin();
+		long start = System.nanoTime();
+		long size = file.length();
+		long modified = file.lastModified();
+		File cacheFile = MeshCache.cacheFileOf(file);
+		MeshCache cache = null;
+		try {
+			cache = MeshCache.read(cacheFile, size, modified, singlePrecision);
+		} catch (IOException | InvalidPathException e) {
+			// fall back to parsing
+		}
+		Mesh mesh;
+		int[] edges = null;
+		if (cache != null) {
+			mesh = cache.mesh;
+			edges = cache.edges;
+		} else {
+			try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				mesh = parseMesh(channel, ForkJoinPool.commonPool(), listener, singlePrecision);
+			} catch (IOException | InvalidPathException e) {
 				throw new ObjectParseException();
-			int n = Integer.parseInt(s[0]);
-			int m = Integer.parseInt(s[1]);
-
-			for (int i = 0; i < n; i++) {
-				str = bf.readLine();
-				s = str.split(",");
-				if (s.length != 4)
-					throw new ObjectParseException();
-				int id = Integer.parseInt(s[0]);
-				double x = Double.parseDouble(s[1]);
-				double y = Double.parseDouble(s[2]);
-				double z = Double.parseDouble(s[3]);
-				vertices.put(id, new Vertex(id, x, y, z));
 			}
+		}
+
+		var welded = mesh;
+		long weldNanos = 0;
+		if (weldTolerance > 0) {
+			checkCancelled(listener);
+			long weldStart = System.nanoTime();
+			welded = VertexWelder.weld(mesh, weldTolerance);
+			weldNanos = System.nanoTime() - weldStart;
+		}
+		checkCancelled(listener);
+		var object = welded == mesh && edges != null ? new Object3D(mesh, edges) : new Object3D(welded);
+		object.weldTolerance = weldTolerance;
+		object.loadBytes = cache != null ? cacheFile.length() : size;
+		object.loadedFromCache = cache != null;
+		object.loadNanos = System.nanoTime() - start;
+		object.commitLoadEvent(event, file);
+		if (welded != mesh) {
+			printWelded(mesh, object, weldNanos);
+		}
 
-			for (int i = 0; i < m; i++) {
-				str = bf.readLine();
-				s = str.split(",");
-				if (s.length != 3)
-					throw new ObjectParseException();
-				int v1 = Integer.parseInt(s[0]);
-				int v2 = Integer.parseInt(s[1]);
-				int v3 = Integer.parseInt(s[2]);
-				if (vertices.get(v1) == null || vertices.get(v2) == null || vertices.get(v1) == null)
-					throw new ObjectParseException();
-				faces.add(new Face(vertices.get(v1), vertices.get(v2), vertices.get(v3)));
+		if (cache == null) {
+			checkCancelled(listener);
+			try {
+				MeshCache.write(cacheFile, size, modified, mesh, welded == mesh ? object.edges : new int[0]);
+			} catch (IOException | InvalidPathException e) {
+				System.out.println("Cache file not written: " + cacheFile);
 			}
-			bf.close();
-			return new Object3D(vertices, faces);
-		} catch (NumberFormatException e) {
-			throw new ObjectParseException();
-		} catch (FileNotFoundException e) {
-			throw new ObjectParseException();
-		} catch (IOException e) {
-			throw new ObjectParseException();
-		} catch (ObjectParseException e) {
-			throw new ObjectParseException();
 		}
+		return object;
+	}
+
+	/**
+	 * Stop loading if the listener cancelled it. Parsing checks the listener as
+	 * it reads the file, this is checked between the steps that follow.
+	 * 
+	 * @param listener the listener following the loading, or null
+	 * @throws CancellationException when the listener cancelled the loading
+	 */
+	private static void checkCancelled(LoadListener listener) {
+		if (listener != null && listener.isCancelled())
+			throw new CancellationException();
 	}
 
 }
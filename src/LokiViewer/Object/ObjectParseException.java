@@ -9,10 +9,34 @@ package LokiViewer.Object;
 public class ObjectParseException extends Exception {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Line number where parsing failed, 0 if unknown
+	 */
+	private int lineNumber;
+
 	/**
 	 * default constructor
 	 */
 	public ObjectParseException() {
 
 	}
-}
+
+	/**
+	 * Constructor with the line where parsing failed
+	 * 
+	 * @param lineNumber line number, starting from 1
+	 */
+	public ObjectParseException(int lineNumber) {
+		super("Parse failed at line " + lineNumber);
+		this.lineNumber = lineNumber;
+	}
+
+	/**
+	 * Get the line number where parsing failed
+	 * 
+	 * @return line number, 0 if unknown
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,317 @@
+package LokiViewer.Object;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parse a large model file on several threads. The part of the file after the
+ * header is split into chunks at line boundaries, and the lines of each chunk
+ * are counted in parallel, so every chunk knows the number of its first line.
+ * With the n,m counts of the header, each chunk then knows which of its lines
+ * are vertices and which are faces, and parses them with its own ModelParser
+ * into its own range of the destination arrays: first all vertices, then, once
+ * the id lookup table is built, all faces. With a progress, the vertices are
+ * reported once parsed; the faces are parsed out of order, so no partial
+ * object shows them.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class ParallelModelParser {
+	/**
+	 * File size below which the sequential ModelParser is used
+	 */
+	static final long parallelThreshold = 16 << 20;
+
+	/**
+	 * Number of chunks per thread of the pool
+	 */
+	private static final int chunksPerThread = 4;
+
+	/**
+	 * Size of the buffer used for counting lines
+	 */
+	private static final int countBufferSize = 1 << 20;
+
+	/**
+	 * Work done on one chunk
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private interface ChunkTask {
+		/**
+		 * Run on a chunk
+		 * 
+		 * @param chunk chunk index
+		 * @throws IOException          when reading failed
+		 * @throws ObjectParseException when the content is not valid
+		 */
+		void run(int chunk) throws IOException, ObjectParseException;
+	}
+
+	/**
+	 * The file to read
+	 */
+	private FileChannel channel;
+	/**
+	 * The pool to run chunks in
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * File position of the start of each chunk, the last value is the file size
+	 */
+	private long[] chunkStart;
+	/**
+	 * Index of the first line of each chunk, counted from the line after the
+	 * header, the last value is the total line count
+	 */
+	private long[] chunkLine;
+	/**
+	 * Where to report the bytes parsed, or null
+	 */
+	private ParseProgress progress;
+	/**
+	 * Whether the coordinates are stored in single precision
+	 */
+	private boolean singlePrecision;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param channel         the file to read
+	 * @param pool            the pool to run chunks in
+	 * @param progress        where to report the bytes parsed, or null
+	 * @param singlePrecision whether to store the coordinates in single
+	 *                        precision, rounded as they are parsed
+	 */
+	ParallelModelParser(FileChannel channel, ForkJoinPool pool, ParseProgress progress, boolean singlePrecision) {
+		this.channel = channel;
+		this.pool = pool;
+		this.progress = progress;
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Parse the whole file into a mesh
+	 * 
+	 * @return the mesh
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when the content is not valid, with the same
+	 *                              line number as the sequential parser
+	 */
+	Mesh parse() throws IOException, ObjectParseException {
+		long size = channel.size();
+		var header = new ModelParser(channel, 0, size, 1);
+		header.expectLine();
+		int n = header.readInt(false);
+		int m = header.readInt(true);
+		if (n < 0 || m < 0 || n > Integer.MAX_VALUE / 3 || m > Integer.MAX_VALUE / 3)
+			throw new ObjectParseException(1);
+		long bodyStart = header.getNextLinePosition();
+
+		split(bodyStart, size, pool.getParallelism() * chunksPerThread);
+		int chunks = chunkStart.length - 1;
+		long[] lineCount = new long[chunks];
+		run(chunks, c -> lineCount[c] = countLines(chunkStart[c], chunkStart[c + 1]));
+		if (size > bodyStart && lastByte(size) != '\n') {
+			// the last line has no line break, count it in the last non-empty chunk
+			int last = chunks - 1;
+			while (chunkStart[last] == size) {
+				last--;
+			}
+			lineCount[last]++;
+		}
+		chunkLine = new long[chunks + 1];
+		for (int c = 0; c < chunks; c++) {
+			chunkLine[c + 1] = chunkLine[c] + lineCount[c];
+		}
+		long totalLines = chunkLine[chunks];
+
+		int[] ids = new int[n];
+		double[] coord = singlePrecision ? null : new double[3 * n];
+		float[] floatCoord = singlePrecision ? new float[3 * n] : null;
+		run(chunks, c -> {
+			long from = chunkLine[c];
+			long to = Long.min(chunkLine[c + 1], n);
+			if (from < to) {
+				var parser = new ModelParser(channel, chunkStart[c], chunkStart[c + 1], (int) from + 2);
+				parser.setProgress(progress);
+				parser.parseVertices(ids, coord, floatCoord, (int) from, (int) to);
+			}
+		});
+		if (totalLines < n)
+			throw new ObjectParseException((int) totalLines + 2);
+		long[] idIndex = ModelParser.buildIdIndex(ids);
+		if (progress != null) {
+			progress.verticesParsed(ids, coord, floatCoord);
+		}
+
+		int[] triangles = new int[3 * m];
+		run(chunks, c -> {
+			long from = Long.max(chunkLine[c], n);
+			long to = Long.min(chunkLine[c + 1], (long) n + m);
+			if (from < to) {
+				var parser = new ModelParser(channel, chunkStart[c], chunkStart[c + 1], (int) chunkLine[c] + 2);
+				parser.setProgress(progress);
+				for (long skip = chunkLine[c]; skip < from; skip++) {
+					parser.nextLine();
+				}
+				parser.parseFaces(ids, idIndex, triangles, (int) (from - n), (int) (to - n));
+			}
+		});
+		if (totalLines < (long) n + m)
+			throw new ObjectParseException((int) totalLines + 2);
+		return Mesh.of(ids, coord, floatCoord, triangles);
+	}
+
+	/**
+	 * Split a range of the file into chunks of similar size, each starting at
+	 * the start of a line
+	 * 
+	 * @param start  file position of the first line
+	 * @param end    file size
+	 * @param chunks number of chunks
+	 * @throws IOException when reading failed
+	 */
+	private void split(long start, long end, int chunks) throws IOException {
+		chunkStart = new long[chunks + 1];
+		chunkStart[0] = start;
+		for (int c = 1; c < chunks; c++) {
+			long target = start + (end - start) * c / chunks;
+			chunkStart[c] = Long.max(chunkStart[c - 1], lineStartAfter(target, end));
+		}
+		chunkStart[chunks] = end;
+	}
+
+	/**
+	 * Find the start of the first line starting at or after a position
+	 * 
+	 * @param position file position, after the start of the first line
+	 * @param end      file size
+	 * @return file position of the line start, or end if there is none
+	 * @throws IOException when reading failed
+	 */
+	private long lineStartAfter(long position, long end) throws IOException {
+		var buffer = ByteBuffer.allocate(4096);
+		long p = position - 1;
+		while (p < end) {
+			buffer.clear();
+			int read = channel.read(buffer, p);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return p + i + 1;
+				}
+			}
+			p += read;
+		}
+		return end;
+	}
+
+	/**
+	 * Count the line breaks in a range of the file
+	 * 
+	 * @param start file position to start at, inclusive
+	 * @param end   file position to stop at, exclusive
+	 * @return number of line breaks
+	 * @throws IOException when reading failed
+	 */
+	private long countLines(long start, long end) throws IOException {
+		byte[] data = new byte[(int) Long.min(countBufferSize, Long.max(1, end - start))];
+		long count = 0;
+		long p = start;
+		while (p < end) {
+			int read = channel.read(ByteBuffer.wrap(data, 0, (int) Long.min(data.length, end - p)), p);
+			if (read <= 0) {
+				break;
+			}
+			if (progress != null) {
+				progress.checkCancelled();
+			}
+			for (int i = 0; i < read; i++) {
+				if (data[i] == '\n') {
+					count++;
+				}
+			}
+			p += read;
+		}
+		return count;
+	}
+
+	/**
+	 * Read the last byte of the file
+	 * 
+	 * @param size file size
+	 * @return the last byte
+	 * @throws IOException when reading failed
+	 */
+	private byte lastByte(long size) throws IOException {
+		var buffer = ByteBuffer.allocate(1);
+		channel.read(buffer, size - 1);
+		return buffer.get(0);
+	}
+
+	/**
+	 * Run a task on every chunk in the pool and wait for all of them. If any
+	 * chunk failed to parse, throw the failure with the smallest line number,
+	 * which is the one the sequential parser would have met first.
+	 * 
+	 * @param chunks number of chunks
+	 * @param task   task to run
+	 * @throws IOException          when reading failed
+	 * @throws ObjectParseException when the content is not valid
+	 */
+	private void run(int chunks, ChunkTask task) throws IOException, ObjectParseException {
+		ArrayList<Callable<Void>> tasks = new ArrayList<>();
+		for (int c = 0; c < chunks; c++) {
+			int chunk = c;
+			tasks.add(() -> {
+				task.run(chunk);
+				return null;
+			});
+		}
+		ObjectParseException parseFailure = null;
+		IOException ioFailure = null;
+		for (Future<Void> future : pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// the pool wraps checked exceptions of callables in RuntimeExceptions
+				Throwable cause = e.getCause();
+				while (cause instanceof RuntimeException && cause.getCause() != null) {
+					cause = cause.getCause();
+				}
+				if (cause instanceof ObjectParseException) {
+					var failure = (ObjectParseException) cause;
+					if (parseFailure == null || failure.getLineNumber() < parseFailure.getLineNumber()) {
+						parseFailure = failure;
+					}
+				} else if (cause instanceof IOException) {
+					ioFailure = (IOException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else {
+					throw new IOException(cause);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+		}
+		if (ioFailure != null) {
+			throw ioFailure;
+		}
+		if (parseFailure != null) {
+			throw parseFailure;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package LokiViewer.Object;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of loading an object from a model file or a cache file
+ * 
+ * @author Renhao Lu
+ *
+ */
+@Name("LokiViewer.Parse")
+@Label("Parse")
+@Category("LokiViewer")
+@Description("Loading an object from a model file or a binary cache")
+class ParseEvent extends jdk.jfr.Event {
+	/**
+	 * Path of the file
+	 */
+	@Label("File")
+	String path;
+
+	/**
+	 * Size of the file
+	 */
+	@Label("Size")
+	@DataAmount
+	long bytes;
+
+	/**
+	 * Whether the file is a binary cache
+	 */
+	@Label("From Cache")
+	boolean fromCache;
+
+	/**
+	 * Number of vertices loaded
+	 */
+	@Label("Vertices")
+	int vertices;
+
+	/**
+	 * Number of faces loaded
+	 */
+	@Label("Faces")
+	int faces;
+}
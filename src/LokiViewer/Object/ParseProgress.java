@@ -0,0 +1,104 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports the progress of the parsers to a LoadListener: the bytes read by all
+ * parsers of a file, which may run concurrently, and the partial objects. A
+ * partial object with faces copies the faces parsed so far, so one is only
+ * made every previewInterval.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class ParseProgress {
+	/**
+	 * Least time between two partial objects with faces, in nanoseconds
+	 */
+	private static final long previewInterval = 500000000L;
+
+	/**
+	 * The listener to report to
+	 */
+	private LoadListener listener;
+	/**
+	 * Size of the file
+	 */
+	private long totalBytes;
+	/**
+	 * Bytes read so far by all parsers
+	 */
+	private AtomicLong bytesRead = new AtomicLong();
+	/**
+	 * Time of the last partial object
+	 */
+	private long lastPreview;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param listener   the listener to report to
+	 * @param totalBytes size of the file
+	 */
+	ParseProgress(LoadListener listener, long totalBytes) {
+		this.listener = listener;
+		this.totalBytes = totalBytes;
+	}
+
+	/**
+	 * Report bytes read by a parser. Parsers skipping lines of a chunk may read a
+	 * few bytes twice, so the total is capped at the file size.
+	 * 
+	 * @param bytes bytes read
+	 * @throws CancellationException when loading is cancelled
+	 */
+	void read(long bytes) {
+		checkCancelled();
+		listener.progress(Long.min(bytesRead.addAndGet(bytes), totalBytes), totalBytes);
+	}
+
+	/**
+	 * Stop if loading is cancelled
+	 * 
+	 * @throws CancellationException when loading is cancelled
+	 */
+	void checkCancelled() {
+		if (listener.isCancelled())
+			throw new CancellationException();
+	}
+
+	/**
+	 * Report that all vertices are parsed
+	 * 
+	 * @param ids        vertex ids
+	 * @param coord      vertex coordinates, or null
+	 * @param floatCoord single precision vertex coordinates, or null if coord is
+	 *                   given
+	 */
+	void verticesParsed(int[] ids, double[] coord, float[] floatCoord) {
+		listener.preview(Object3D.preview(Mesh.of(ids, coord, floatCoord, new int[0])));
+		lastPreview = System.nanoTime();
+	}
+
+	/**
+	 * Report that a prefix of the faces is parsed, making a partial object if the
+	 * last one is old enough
+	 * 
+	 * @param ids        vertex ids
+	 * @param coord      vertex coordinates, or null
+	 * @param floatCoord single precision vertex coordinates, or null if coord is
+	 *                   given
+	 * @param triangles  triangle index buffer being filled
+	 * @param faces      number of faces parsed
+	 */
+	void facesParsed(int[] ids, double[] coord, float[] floatCoord, int[] triangles, int faces) {
+		long now = System.nanoTime();
+		if (now - lastPreview < previewInterval || 3L * faces == triangles.length) {
+			return;
+		}
+		listener.preview(Object3D.preview(Mesh.of(ids, coord, floatCoord, Arrays.copyOf(triangles, 3 * faces))));
+		lastPreview = System.nanoTime();
+	}
+}
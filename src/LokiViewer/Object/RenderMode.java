@@ -0,0 +1,27 @@
+package LokiViewer.Object;
+
+/**
+ * The ways of rendering the faces of an object
+ * 
+ * @author Renhao Lu
+ *
+ */
+public enum RenderMode {
+	/**
+	 * Painter's algorithm, faces sorted by their average z value
+	 */
+	NAIVE_Z_SORTING,
+	/**
+	 * Painter's algorithm, faces sorted topologically by their overlapping
+	 */
+	TOPOLOGICAL_Z_SORTING,
+	/**
+	 * Per-pixel depth test, no sorting needed
+	 */
+	Z_BUFFER,
+	/**
+	 * Painter's algorithm, faces ordered by walking a BSP tree built once, see
+	 * BspTree; naive z sorting until the tree is built
+	 */
+	BSP_TREE
+}
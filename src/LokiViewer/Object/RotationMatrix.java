@@ -51,6 +51,17 @@ public class RotationMatrix {
 		matrix[2][2] = cos;
 	}
 
+	/**
+	 * Get an element of the rotation matrix
+	 * 
+	 * @param row row index
+	 * @param col column index
+	 * @return matrix element
+	 */
+	public double get(int row, int col) {
+		return matrix[row][col];
+	}
+
 	/**
 	 * Apply the rotation matrix to vertex
 	 * 
@@ -68,4 +79,40 @@ public class RotationMatrix {
 		return res;
 	}
 
+	/**
+	 * Apply the rotation matrix to a vertex stored in a packed coordinate array,
+	 * without allocating
+	 * 
+	 * @param src          packed coordinates before rotation
+	 * @param offset       index of the vertex's x coordinate in src and dst
+	 * @param rotateOrigin rotation origin
+	 * @param dst          packed coordinates to write the rotated vertex in
+	 */
+	public void rotate(double[] src, int offset, double[] rotateOrigin, double[] dst) {
+		double x = src[offset] - rotateOrigin[0];
+		double y = src[offset + 1] - rotateOrigin[1];
+		double z = src[offset + 2] - rotateOrigin[2];
+		dst[offset] = matrix[0][0] * x + matrix[0][1] * y + matrix[0][2] * z + rotateOrigin[0];
+		dst[offset + 1] = matrix[1][0] * x + matrix[1][1] * y + matrix[1][2] * z + rotateOrigin[1];
+		dst[offset + 2] = matrix[2][0] * x + matrix[2][1] * y + matrix[2][2] * z + rotateOrigin[2];
+	}
+
+	/**
+	 * Apply the rotation matrix to a range of vertices stored in packed
+	 * coordinate arrays, see ViewTransform.apply. The rotation around the origin
+	 * is turned into one matrix and translation first.
+	 * 
+	 * @param src          packed coordinates before rotation
+	 * @param dst          packed coordinates to write the rotated vertices in,
+	 *                     may be src
+	 * @param from         first vertex, inclusive
+	 * @param to           last vertex, exclusive
+	 * @param rotateOrigin rotation origin
+	 */
+	public void rotate(double[] src, double[] dst, int from, int to, double[] rotateOrigin) {
+		var transform = new ViewTransform();
+		transform.rotate(transform, this, rotateOrigin);
+		transform.apply(src, dst, from, to);
+	}
+
 }
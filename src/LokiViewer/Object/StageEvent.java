@@ -0,0 +1,39 @@
+package LokiViewer.Object;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of one stage of the pipeline, see FrameStats.Stage
+ * 
+ * @author Renhao Lu
+ *
+ */
+@Name("LokiViewer.Stage")
+@Label("Pipeline Stage")
+@Category("LokiViewer")
+@StackTrace(false)
+@Description("One stage of loading or drawing a frame")
+class StageEvent extends jdk.jfr.Event {
+	/**
+	 * Name of the stage
+	 */
+	@Label("Stage")
+	String stage;
+
+	/**
+	 * Number of elements processed by the stage
+	 */
+	@Label("Count")
+	@Description("Vertices transformed, faces culled, sorted or drawn, or vertices and edges drawn")
+	long count;
+
+	/**
+	 * Number of the frame the stage belongs to
+	 */
+	@Label("Frame")
+	long frame;
+}
@@ -0,0 +1,133 @@
+package LokiViewer.Object;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The batch transform of ViewTransform with the incubating Vector API.
+ * <p>
+ * The coordinates are packed x, y, z per point, so a vector of the packed
+ * array holds a mix of components, and which lane holds which component
+ * repeats every three vectors. Each lane of the result needs the x, y and z of
+ * its own point, which lie zero to two lanes to its left or right: they are
+ * picked from five loads shifted by -2 to 2 values, with a mask per component.
+ * No gather, scatter or shuffle is needed. The products are summed in the
+ * same order as the scalar loop and are not fused, so the results are the same
+ * to the last bit.
+ * <p>
+ * This class is only loaded when the jdk.incubator.vector module is in the
+ * boot layer, e.g. with --add-modules jdk.incubator.vector, see
+ * ViewTransform.isVectorized.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class VectorTransform {
+	/**
+	 * The widest vector shape of the processor
+	 */
+	private static final VectorSpecies<Double> species = DoubleVector.SPECIES_PREFERRED;
+	/**
+	 * Number of values in a vector, a block of three vectors holds this many points
+	 */
+	private static final int lanes = species.length();
+	/**
+	 * Lanes holding a y coordinate, in each vector of a block
+	 */
+	private static final VectorMask<Double>[] yLanes = componentLanes(1);
+	/**
+	 * Lanes holding a z coordinate, in each vector of a block
+	 */
+	private static final VectorMask<Double>[] zLanes = componentLanes(2);
+
+	/**
+	 * Find the lanes holding a component in each vector of a block
+	 * 
+	 * @param k component, 0 for x, 1 for y, 2 for z
+	 * @return a mask per vector of a block
+	 */
+	@SuppressWarnings("unchecked")
+	private static VectorMask<Double>[] componentLanes(int k) {
+		var masks = (VectorMask<Double>[]) new VectorMask<?>[3];
+		boolean[] bits = new boolean[lanes];
+		for (int v = 0; v < 3; v++) {
+			for (int lane = 0; lane < lanes; lane++) {
+				bits[lane] = (v * lanes + lane) % 3 == k;
+			}
+			masks[v] = VectorMask.fromArray(species, bits, 0);
+		}
+		return masks;
+	}
+
+	/**
+	 * Transform the points of a range in blocks of vectors. A block reads the two
+	 * values before and after it, so the range must not start at the first point,
+	 * and a block ending at the last point of src is left to the scalar loop. A
+	 * block reads all its values before writing, so src and dst may be the same.
+	 * 
+	 * @param m    the matrix, row by row
+	 * @param t    the translation
+	 * @param src  packed coordinates to transform
+	 * @param dst  packed coordinates to write the result in
+	 * @param from first point, inclusive, at least 1
+	 * @param to   last point, exclusive
+	 * @return first point left to transform
+	 */
+	static int apply(double[] m, double[] t, double[] src, double[] dst, int from, int to) {
+		// per vector of a block, the matrix column multiplying each lane's x, y and
+		// z, and the translation of each lane
+		var columns = new DoubleVector[3][3];
+		var translation = new DoubleVector[3];
+		double[] values = new double[lanes];
+		for (int v = 0; v < 3; v++) {
+			for (int c = 0; c < 3; c++) {
+				for (int lane = 0; lane < lanes; lane++) {
+					values[lane] = m[3 * ((v * lanes + lane) % 3) + c];
+				}
+				columns[v][c] = DoubleVector.fromArray(species, values, 0);
+			}
+			for (int lane = 0; lane < lanes; lane++) {
+				values[lane] = t[(v * lanes + lane) % 3];
+			}
+			translation[v] = DoubleVector.fromArray(species, values, 0);
+		}
+
+		int p = from;
+		for (; p + lanes <= to && 3 * (p + lanes) + 2 <= src.length; p += lanes) {
+			int i = 3 * p;
+			var r0 = transform(src, i, 0, columns, translation);
+			var r1 = transform(src, i + lanes, 1, columns, translation);
+			var r2 = transform(src, i + 2 * lanes, 2, columns, translation);
+			r0.intoArray(dst, i);
+			r1.intoArray(dst, i + lanes);
+			r2.intoArray(dst, i + 2 * lanes);
+		}
+		return p;
+	}
+
+	/**
+	 * Transform one vector of a block
+	 * 
+	 * @param src         packed coordinates to transform
+	 * @param i           index of the vector in src
+	 * @param v           index of the vector in its block
+	 * @param columns     matrix columns of each vector of a block
+	 * @param translation translation of each vector of a block
+	 * @return the transformed values
+	 */
+	private static DoubleVector transform(double[] src, int i, int v, DoubleVector[][] columns,
+			DoubleVector[] translation) {
+		var left2 = DoubleVector.fromArray(species, src, i - 2);
+		var left1 = DoubleVector.fromArray(species, src, i - 1);
+		var center = DoubleVector.fromArray(species, src, i);
+		var right1 = DoubleVector.fromArray(species, src, i + 1);
+		var right2 = DoubleVector.fromArray(species, src, i + 2);
+		// the x, y and z of the point of each lane, one value further left for the
+		// lanes holding a y, two for the lanes holding a z
+		var px = center.blend(left1, yLanes[v]).blend(left2, zLanes[v]);
+		var py = right1.blend(center, yLanes[v]).blend(left1, zLanes[v]);
+		var pz = right2.blend(right1, yLanes[v]).blend(center, zLanes[v]);
+		return px.mul(columns[v][0]).add(py.mul(columns[v][1])).add(pz.mul(columns[v][2])).add(translation[v]);
+	}
+}
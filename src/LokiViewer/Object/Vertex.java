@@ -5,56 +5,34 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.geom.Ellipse2D;
 import java.util.Arrays;
-import java.util.Comparator;
 
 import LokiViewer.GUI.ViewerFrame;
 
 /**
- * Vertex class
+ * Vertex class, a lightweight view of one vertex stored in a Mesh
  * 
  * @author Renhao Lu
  *
  */
 public class Vertex {
 	/**
-	 * origin coordinates from input file
+	 * The mesh storing the vertex
 	 */
-	private double[] coord;
+	private Mesh mesh;
 	/**
-	 * coordinates after rescale but before rotation
+	 * index of the vertex in the mesh
 	 */
-	private double[] rescaleCoord;
-	/**
-	 * coordinate after rotation, which is to draw in the window
-	 */
-	private double[] visualCoord;
-	/**
-	 * id
-	 */
-	private int id;
+	private int index;
 
 	/**
 	 * Constructor
 	 * 
-	 * @param id id
-	 * @param x  x coordinate
-	 * @param y  y coordinate
-	 * @param z  z coordinate
+	 * @param mesh  the mesh storing the vertex
+	 * @param index index of the vertex in the mesh
 	 */
-	public Vertex(int id, double x, double y, double z) {
-		this.id = id;
-		coord = new double[3];
-		coord[0] = x;
-		coord[1] = y;
-		coord[2] = z;
-		rescaleCoord = new double[3];
-		rescaleCoord[0] = x;
-		rescaleCoord[1] = y;
-		rescaleCoord[2] = z;
-		visualCoord = new double[3];
-		visualCoord[0] = x;
-		visualCoord[1] = y;
-		visualCoord[2] = z;
+	public Vertex(Mesh mesh, int index) {
+		this.mesh = mesh;
+		this.index = index;
 	}
 
 	/**
@@ -63,51 +41,45 @@ public class Vertex {
 	 * @return id
 	 */
 	public int getID() {
-		return id;
+		return mesh.getID(index);
+	}
+
+	/**
+	 * Get index in the mesh
+	 * 
+	 * @return vertex index
+	 */
+	public int getIndex() {
+		return index;
 	}
 
 	/**
 	 * Get original coordinate
 	 * 
-	 * @return original coordinate
+	 * @return copy of the original coordinate
 	 */
 	public double[] getCoord() {
-		return coord;
+		return new double[] { mesh.getCoord(index, 0), mesh.getCoord(index, 1), mesh.getCoord(index, 2) };
 	}
 
 	/**
 	 * Get rescaled coordinate
 	 * 
-	 * @return coordinate after rescaling
+	 * @return copy of the coordinate after rescaling
 	 */
 	public double[] getRescaleCoord() {
-		return rescaleCoord;
+		return new double[] { mesh.getRescaleCoord(index, 0), mesh.getRescaleCoord(index, 1),
+				mesh.getRescaleCoord(index, 2) };
 	}
 
 	/**
 	 * Get visual coordinate after rotation
 	 * 
-	 * @return visual coordinate after rotation
+	 * @return copy of the visual coordinate after rotation
 	 */
 	public double[] getVisualCoord() {
-		return visualCoord;
-	}
-
-	/**
-	 * Apply zoom factor and shift to vertex
-	 * 
-	 * @param zoomAndShift zoom factor, x-shift, y-shift
-	 */
-	public void applyZoomAndShift(double[] zoomAndShift) {
-		rescaleCoord[0] += zoomAndShift[1];
-		rescaleCoord[1] += zoomAndShift[2];
-		rescaleCoord[0] *= zoomAndShift[0];
-		rescaleCoord[1] *= zoomAndShift[0];
-		rescaleCoord[2] *= zoomAndShift[0];
-
-		visualCoord[0] = rescaleCoord[0];
-		visualCoord[1] = rescaleCoord[1];
-		visualCoord[2] = rescaleCoord[2];
+		return new double[] { mesh.getVisualCoord(index, 0), mesh.getVisualCoord(index, 1),
+				mesh.getVisualCoord(index, 2) };
 	}
 
 	/**
@@ -117,49 +89,28 @@ public class Vertex {
 	 * @param d window dimension
 	 */
 	public void draw(Graphics g, Dimension d) {
-		var g2 = (Graphics2D) g;
-
-		var dot = new Ellipse2D.Double(visualCoord[0] + d.width / 2 - ViewerFrame.vertexDrawSize / 2,
-				-visualCoord[1] + d.height / 2 - ViewerFrame.vertexDrawSize / 2, ViewerFrame.vertexDrawSize,
-				ViewerFrame.vertexDrawSize);
-		g2.setPaint(ViewerFrame.color);
-		g2.fill(dot);
-	}
-
-	/**
-	 * After rotation, update the rescale coordinates with visual coordinates
-	 */
-	public void updateRescaleCoord() {
-		rescaleCoord[0] = visualCoord[0];
-		rescaleCoord[1] = visualCoord[1];
-		rescaleCoord[2] = visualCoord[2];
+		draw(mesh, index, (Graphics2D) g, d);
 	}
 
 	/**
-	 * apply rotation matrix to vertex
+	 * draw a vertex of a mesh without creating a view
 	 * 
-	 * @param matrix       rotation matrix
-	 * @param rotateOrigin rotation origin
+	 * @param mesh  the mesh storing the vertex
+	 * @param index vertex index
+	 * @param g2    the Graphics context in which to paint
+	 * @param d     window dimension
 	 */
-	public void rotate(RotationMatrix matrix, double[] rotateOrigin) {
-		visualCoord = matrix.rotate(rescaleCoord, rotateOrigin);
+	static void draw(Mesh mesh, int index, Graphics2D g2, Dimension d) {
+		var dot = new Ellipse2D.Double(mesh.getVisualCoord(index, 0) + d.width / 2 - ViewerFrame.vertexDrawSize / 2,
+				-mesh.getVisualCoord(index, 1) + d.height / 2 - ViewerFrame.vertexDrawSize / 2,
+				ViewerFrame.vertexDrawSize, ViewerFrame.vertexDrawSize);
+		g2.setPaint(ViewerFrame.color);
+		g2.fill(dot);
 	}
 
 	@Override
 	public String toString() {
-		return Integer.toString(id) + ' ' + Arrays.toString(coord);
+		return Integer.toString(getID()) + ' ' + Arrays.toString(getCoord());
 	}
 }
 
-/**
- * Sort vertex according to their id
- * 
- * @author Renhao Lu
- *
- */
-class VertexComp implements Comparator<Vertex> {
-	@Override
-	public int compare(Vertex v1, Vertex v2) {
-		return v1.getID() - v2.getID();
-	}
-}
\ No newline at end of file
@@ -0,0 +1,251 @@
+package LokiViewer.Object;
+
+import java.util.Arrays;
+
+/**
+ * Merge the vertices of a mesh lying within a tolerance of each other, as left
+ * by exporters that split a vertex for every face around it. Vertices are
+ * visited in order, and each one either merges into the nearest kept vertex
+ * within the tolerance or is kept itself. Kept vertices are found with a
+ * spatial hash: a LongIntMap from a grid cell, twice as wide as the tolerance,
+ * to the first kept vertex of the cell, the others chained behind it. The
+ * cells within the tolerance of a vertex are then at most two along each axis,
+ * so at most 8 cells are searched.
+ * <p>
+ * The welded mesh keeps the kept vertices in their order, with their ids and
+ * coordinates, so the vertex indices stay dense. Faces are remapped to the
+ * kept vertices, and the faces left with two corners on the same vertex are
+ * removed. The edges shared by split vertices then become one edge in the
+ * topology of the welded mesh.
+ * 
+ * @author Renhao Lu
+ *
+ */
+class VertexWelder {
+	/**
+	 * Bits of each cell coordinate in a cell key
+	 */
+	private static final int cellBits = 21;
+	/**
+	 * Mask of a cell coordinate. Cells further apart wrap around and share keys,
+	 * which only makes the search visit more vertices.
+	 */
+	private static final long cellMask = (1L << cellBits) - 1;
+
+	/**
+	 * The mesh to weld
+	 */
+	private Mesh mesh;
+	/**
+	 * The largest distance of two merged vertices
+	 */
+	private double tolerance;
+	/**
+	 * Width of a cell
+	 */
+	private double cellWidth;
+	/**
+	 * Smallest coordinates of the mesh, the corner of cell (0, 0, 0)
+	 */
+	private double[] min;
+	/**
+	 * First kept vertex of each cell
+	 */
+	private LongIntMap cells;
+	/**
+	 * Next kept vertex in the same cell, -1 at the end
+	 */
+	private int[] next;
+	/**
+	 * Kept vertex each vertex is merged into, itself if kept
+	 */
+	private int[] kept;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param mesh      the mesh to weld, not changed
+	 * @param tolerance the largest distance of two merged vertices, positive
+	 * @param min       smallest coordinates of the mesh
+	 */
+	private VertexWelder(Mesh mesh, double tolerance, double[] min) {
+		this.mesh = mesh;
+		this.tolerance = tolerance;
+		this.cellWidth = 2 * tolerance;
+		this.min = min;
+	}
+
+	/**
+	 * Weld the vertices of a mesh
+	 * 
+	 * @param mesh      the mesh to weld, not changed
+	 * @param tolerance the largest distance of two merged vertices, as a fraction
+	 *                  of the diagonal of the bounding box of the mesh
+	 * @return the welded mesh in the precision of the given mesh, or the given
+	 *         mesh if no vertex is merged
+	 */
+	static Mesh weld(Mesh mesh, double tolerance) {
+		int n = mesh.getVertexCount();
+		if (n == 0 || !(tolerance > 0)) {
+			return mesh;
+		}
+		double[] max = new double[3];
+		double[] min = new double[3];
+		double diagonal = 0;
+		for (int k = 0; k < 3; k++) {
+			min[k] = Double.POSITIVE_INFINITY;
+			max[k] = Double.NEGATIVE_INFINITY;
+			for (int v = 0; v < n; v++) {
+				min[k] = Double.min(min[k], mesh.getCoord(v, k));
+				max[k] = Double.max(max[k], mesh.getCoord(v, k));
+			}
+			diagonal += (max[k] - min[k]) * (max[k] - min[k]);
+		}
+		diagonal = Math.sqrt(diagonal);
+		if (!(diagonal > 0) || Double.isInfinite(diagonal)) {
+			return mesh;
+		}
+		return new VertexWelder(mesh, tolerance * diagonal, min).weld();
+	}
+
+	/**
+	 * Merge every vertex into the nearest kept vertex and build the welded mesh
+	 * 
+	 * @return the welded mesh, or the mesh if no vertex is merged
+	 */
+	private Mesh weld() {
+		int n = mesh.getVertexCount();
+		cells = new LongIntMap(n);
+		next = new int[n];
+		kept = new int[n];
+		int keptCount = 0;
+		for (int v = 0; v < n; v++) {
+			int nearest = findNearest(v);
+			if (nearest >= 0) {
+				kept[v] = nearest;
+				continue;
+			}
+			kept[v] = v;
+			keptCount++;
+			// chain behind the first kept vertex of the cell
+			int first = cells.putIfAbsent(cellKey(cell(v, 0, 0), cell(v, 1, 0), cell(v, 2, 0)), v);
+			if (first < 0) {
+				next[v] = -1;
+			} else {
+				next[v] = next[first];
+				next[first] = v;
+			}
+		}
+		if (keptCount == n) {
+			return mesh;
+		}
+		return toMesh(keptCount);
+	}
+
+	/**
+	 * Find the nearest kept vertex within the tolerance of a vertex
+	 * 
+	 * @param v vertex index
+	 * @return the kept vertex, -1 if there is none
+	 */
+	private int findNearest(int v) {
+		int nearest = -1;
+		double nearestDistance = tolerance * tolerance;
+		long toX = cell(v, 0, tolerance);
+		long toY = cell(v, 1, tolerance);
+		long toZ = cell(v, 2, tolerance);
+		for (long x = cell(v, 0, -tolerance); x <= toX; x++) {
+			for (long y = cell(v, 1, -tolerance); y <= toY; y++) {
+				for (long z = cell(v, 2, -tolerance); z <= toZ; z++) {
+					for (int u = cells.get(cellKey(x, y, z), -1); u >= 0; u = next[u]) {
+						double distance = squaredDistance(u, v);
+						// the first kept vertex wins a tie
+						if (distance < nearestDistance
+								|| distance == nearestDistance && (nearest < 0 || u < nearest)) {
+							nearest = u;
+							nearestDistance = distance;
+						}
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Get the cell of a shifted vertex along one axis
+	 * 
+	 * @param v     vertex index
+	 * @param k     axis, 0 for x, 1 for y, 2 for z
+	 * @param shift shift of the vertex along the axis
+	 * @return cell coordinate
+	 */
+	private long cell(int v, int k, double shift) {
+		return (long) Math.floor((mesh.getCoord(v, k) + shift - min[k]) / cellWidth);
+	}
+
+	/**
+	 * Pack the coordinates of a cell in a key that is not negative
+	 * 
+	 * @param x cell x
+	 * @param y cell y
+	 * @param z cell z
+	 * @return the key
+	 */
+	private static long cellKey(long x, long y, long z) {
+		return (x & cellMask) << (2 * cellBits) | (y & cellMask) << cellBits | (z & cellMask);
+	}
+
+	/**
+	 * Get the squared distance of two vertices
+	 * 
+	 * @param u vertex index
+	 * @param v vertex index
+	 * @return squared distance
+	 */
+	private double squaredDistance(int u, int v) {
+		double dx = mesh.getCoord(u, 0) - mesh.getCoord(v, 0);
+		double dy = mesh.getCoord(u, 1) - mesh.getCoord(v, 1);
+		double dz = mesh.getCoord(u, 2) - mesh.getCoord(v, 2);
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Build the welded mesh from the kept vertices and the faces left
+	 * 
+	 * @param keptCount number of kept vertices
+	 * @return the welded mesh
+	 */
+	private Mesh toMesh(int keptCount) {
+		int n = mesh.getVertexCount();
+		int[] newIndex = new int[n];
+		int[] newIds = new int[keptCount];
+		double[] newCoord = new double[3 * keptCount];
+		int i = 0;
+		for (int v = 0; v < n; v++) {
+			if (kept[v] == v) {
+				newIndex[v] = i;
+				newIds[i] = mesh.getID(v);
+				for (int k = 0; k < 3; k++) {
+					newCoord[3 * i + k] = mesh.getCoord(v, k);
+				}
+				i++;
+			}
+		}
+		int[] triangles = new int[3 * mesh.getFaceCount()];
+		int faces = 0;
+		for (int f = 0; f < mesh.getFaceCount(); f++) {
+			int a = newIndex[kept[mesh.getFaceVertex(f, 0)]];
+			int b = newIndex[kept[mesh.getFaceVertex(f, 1)]];
+			int c = newIndex[kept[mesh.getFaceVertex(f, 2)]];
+			if (a != b && b != c && a != c) {
+				ModelParser.setFace(triangles, faces++, newIds, a, b, c);
+			}
+		}
+		if (3 * faces < triangles.length) {
+			triangles = Arrays.copyOf(triangles, 3 * faces);
+		}
+		return mesh.isSinglePrecision() ? new Mesh(newIds, Mesh.narrow(newCoord), triangles)
+				: new Mesh(newIds, newCoord, triangles);
+	}
+}
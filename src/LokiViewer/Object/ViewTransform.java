@@ -0,0 +1,227 @@
+package LokiViewer.Object;
+
+/**
+ * An affine transform from the original coordinates to the window, a 3x3
+ * matrix (rotations and zoom composed together) followed by a translation.
+ * Rescaling and rotating the object only compose a new transform, which is
+ * then applied once to every vertex. When the jdk.incubator.vector module is
+ * added, ranges of points are transformed with vectors, see VectorTransform.
+ * Single precision points are transformed by the scalar loop in double
+ * precision.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class ViewTransform {
+	/**
+	 * Whether the Vector API is available
+	 */
+	private static final boolean vectorized = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	/**
+	 * Number of points below which a range is always transformed by the scalar
+	 * loop
+	 */
+	private static final int vectorThreshold = 64;
+
+	/**
+	 * The matrix, row by row
+	 */
+	private double[] m;
+	/**
+	 * The translation
+	 */
+	private double[] t;
+
+	/**
+	 * Constructor of the identity transform
+	 */
+	public ViewTransform() {
+		m = new double[] { 1, 0, 0, 0, 1, 0, 0, 0, 1 };
+		t = new double[3];
+	}
+
+	/**
+	 * Copy another transform into this one
+	 * 
+	 * @param other the transform to copy
+	 */
+	public void set(ViewTransform other) {
+		System.arraycopy(other.m, 0, m, 0, 9);
+		System.arraycopy(other.t, 0, t, 0, 3);
+	}
+
+	/**
+	 * Shift in the x-y plane, then zoom, after this transform
+	 * 
+	 * @param zoomAndShift zoom factor, x-shift, y-shift
+	 */
+	public void zoomAndShift(double[] zoomAndShift) {
+		double zoom = zoomAndShift[0];
+		t[0] = (t[0] + zoomAndShift[1]) * zoom;
+		t[1] = (t[1] + zoomAndShift[2]) * zoom;
+		t[2] = t[2] * zoom;
+		for (int i = 0; i < 9; i++) {
+			m[i] *= zoom;
+		}
+	}
+
+	/**
+	 * Set this transform to a base transform followed by a rotation around an
+	 * origin
+	 * 
+	 * @param base         transform before the rotation
+	 * @param matrix       the rotation
+	 * @param rotateOrigin rotation origin
+	 */
+	public void rotate(ViewTransform base, RotationMatrix matrix, double[] rotateOrigin) {
+		double[] bm = base.m.clone();
+		double[] bt = base.t.clone();
+		for (int r = 0; r < 3; r++) {
+			double r0 = matrix.get(r, 0);
+			double r1 = matrix.get(r, 1);
+			double r2 = matrix.get(r, 2);
+			for (int c = 0; c < 3; c++) {
+				m[3 * r + c] = r0 * bm[c] + r1 * bm[3 + c] + r2 * bm[6 + c];
+			}
+			t[r] = r0 * (bt[0] - rotateOrigin[0]) + r1 * (bt[1] - rotateOrigin[1]) + r2 * (bt[2] - rotateOrigin[2])
+					+ rotateOrigin[r];
+		}
+	}
+
+	/**
+	 * Transform one component of a point stored in a packed coordinate array
+	 * 
+	 * @param src    packed coordinates
+	 * @param offset index of the point's x coordinate in src
+	 * @param k      component, 0 for x, 1 for y, 2 for z
+	 * @return transformed component
+	 */
+	public double apply(double[] src, int offset, int k) {
+		return m[3 * k] * src[offset] + m[3 * k + 1] * src[offset + 1] + m[3 * k + 2] * src[offset + 2] + t[k];
+	}
+
+	/**
+	 * Transform one component of a point stored in a single precision packed
+	 * coordinate array, computed in double precision
+	 * 
+	 * @param src    packed coordinates
+	 * @param offset index of the point's x coordinate in src
+	 * @param k      component, 0 for x, 1 for y, 2 for z
+	 * @return transformed component
+	 */
+	public double apply(float[] src, int offset, int k) {
+		return m[3 * k] * src[offset] + m[3 * k + 1] * src[offset + 1] + m[3 * k + 2] * src[offset + 2] + t[k];
+	}
+
+	/**
+	 * Get the direction in the original coordinates that the transform maps onto
+	 * the z axis, i.e. towards the viewer
+	 * 
+	 * @return the direction, x, y, z, not normalized
+	 */
+	public double[] getViewDirection() {
+		// the third column of the inverse matrix: the cross product of the first
+		// two rows divided by the determinant
+		double x = m[1] * m[5] - m[2] * m[4];
+		double y = m[2] * m[3] - m[0] * m[5];
+		double z = m[0] * m[4] - m[1] * m[3];
+		double det = m[6] * x + m[7] * y + m[8] * z;
+		return new double[] { x / det, y / det, z / det };
+	}
+
+	/**
+	 * Whether ranges of points are transformed with the Vector API
+	 * 
+	 * @return true if the jdk.incubator.vector module is in the boot layer
+	 */
+	public static boolean isVectorized() {
+		return vectorized;
+	}
+
+	/**
+	 * Transform a range of points stored in packed coordinate arrays, without
+	 * allocating per point, with vectors if possible. src and dst may be the same
+	 * array.
+	 * 
+	 * @param src  packed coordinates to transform
+	 * @param dst  packed coordinates to write the result in
+	 * @param from first point, inclusive
+	 * @param to   last point, exclusive
+	 */
+	public void apply(double[] src, double[] dst, int from, int to) {
+		if (vectorized && to - from >= vectorThreshold) {
+			// the vector blocks read the values before them
+			if (from == 0) {
+				applyScalar(src, dst, 0, 1);
+				from = 1;
+			}
+			from = VectorTransform.apply(m, t, src, dst, from, to);
+		}
+		applyScalar(src, dst, from, to);
+	}
+
+	/**
+	 * Transform a range of points stored in packed coordinate arrays one by one,
+	 * without allocating. src and dst may be the same array.
+	 * 
+	 * @param src  packed coordinates to transform
+	 * @param dst  packed coordinates to write the result in
+	 * @param from first point, inclusive
+	 * @param to   last point, exclusive
+	 */
+	public void applyScalar(double[] src, double[] dst, int from, int to) {
+		double m00 = m[0];
+		double m01 = m[1];
+		double m02 = m[2];
+		double m10 = m[3];
+		double m11 = m[4];
+		double m12 = m[5];
+		double m20 = m[6];
+		double m21 = m[7];
+		double m22 = m[8];
+		double t0 = t[0];
+		double t1 = t[1];
+		double t2 = t[2];
+		for (int i = 3 * from; i < 3 * to; i += 3) {
+			double x = src[i];
+			double y = src[i + 1];
+			double z = src[i + 2];
+			dst[i] = m00 * x + m01 * y + m02 * z + t0;
+			dst[i + 1] = m10 * x + m11 * y + m12 * z + t1;
+			dst[i + 2] = m20 * x + m21 * y + m22 * z + t2;
+		}
+	}
+
+	/**
+	 * Transform a range of points stored in single precision packed coordinate
+	 * arrays one by one, computing in double precision and rounding the results.
+	 * src and dst may be the same array.
+	 * 
+	 * @param src  packed coordinates to transform
+	 * @param dst  packed coordinates to write the result in
+	 * @param from first point, inclusive
+	 * @param to   last point, exclusive
+	 */
+	public void apply(float[] src, float[] dst, int from, int to) {
+		double m00 = m[0];
+		double m01 = m[1];
+		double m02 = m[2];
+		double m10 = m[3];
+		double m11 = m[4];
+		double m12 = m[5];
+		double m20 = m[6];
+		double m21 = m[7];
+		double m22 = m[8];
+		double t0 = t[0];
+		double t1 = t[1];
+		double t2 = t[2];
+		for (int i = 3 * from; i < 3 * to; i += 3) {
+			double x = src[i];
+			double y = src[i + 1];
+			double z = src[i + 2];
+			dst[i] = (float) (m00 * x + m01 * y + m02 * z + t0);
+			dst[i + 1] = (float) (m10 * x + m11 * y + m12 * z + t1);
+			dst[i + 2] = (float) (m20 * x + m21 * y + m22 * z + t2);
+		}
+	}
+}
@@ -0,0 +1,411 @@
+package LokiViewer.Object;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Software z-buffer rasterizer. Faces are rasterized with a per-pixel depth
+ * test into an int color buffer backed by a BufferedImage, which is then drawn
+ * to the Graphics at once. No sorting of faces is needed, and the cost of a
+ * frame is linear in the number of faces plus the number of covered pixels.
+ * <p>
+ * With a pool of several threads the window is split into square tiles. Each
+ * face is binned into the tiles its bounds overlap, keeping the drawing order
+ * in every bin, and the tiles are cleared and rasterized concurrently, each
+ * clipped to its own rectangle of the color and depth buffers. The tiles thus
+ * compose the image in place, and the image is the same as on one thread.
+ * 
+ * @author Renhao Lu
+ *
+ */
+public class ZBuffer {
+	/**
+	 * Color of pixels not covered by any face, fully transparent so that the
+	 * component background shows through
+	 */
+	public static final int background = 0;
+	/**
+	 * Width and height of a tile in pixels
+	 */
+	public static final int tileSize = 64;
+
+	/**
+	 * The mesh storing the faces
+	 */
+	private Mesh mesh;
+	/**
+	 * The image the color buffer is backing
+	 */
+	private BufferedImage image;
+	/**
+	 * Color of each pixel, row by row
+	 */
+	private int[] color;
+	/**
+	 * Depth of each pixel, larger is nearer to the observer
+	 */
+	private float[] depth;
+	/**
+	 * The pool to rasterize tiles in, or null to rasterize on the calling thread
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * Number of tile columns and rows
+	 */
+	private int tilesX, tilesY;
+	/**
+	 * Start of the bin of each tile in binned, the last value is the end of the
+	 * last bin
+	 */
+	private int[] binStart;
+	/**
+	 * Faces of every bin, in drawing order
+	 */
+	private int[] binned = new int[0];
+
+	/**
+	 * Constructor, rasterizing tiles in the common pool
+	 * 
+	 * @param mesh the mesh storing the faces
+	 */
+	public ZBuffer(Mesh mesh) {
+		this(mesh, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param mesh the mesh storing the faces
+	 * @param pool the pool to rasterize tiles in, or null to rasterize on the
+	 *             calling thread
+	 */
+	public ZBuffer(Mesh mesh, ForkJoinPool pool) {
+		this.mesh = mesh;
+		this.pool = pool;
+	}
+
+	/**
+	 * Rasterize all faces and draw the result
+	 * 
+	 * @param g the Graphics context in which to paint
+	 * @param d window dimension
+	 */
+	public void draw(Graphics g, Dimension d) {
+		draw(g, d, null, mesh.getFaceCount());
+	}
+
+	/**
+	 * Rasterize some faces and draw the result
+	 * 
+	 * @param g     the Graphics context in which to paint
+	 * @param d     window dimension
+	 * @param faces faces to rasterize, or null for all faces
+	 * @param count number of faces to rasterize
+	 */
+	public void draw(Graphics g, Dimension d, int[] faces, int count) {
+		if (d.width <= 0 || d.height <= 0) {
+			return;
+		}
+		if (image == null || image.getWidth() != d.width || image.getHeight() != d.height) {
+			image = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_ARGB);
+			color = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			depth = new float[d.width * d.height];
+			tilesX = (d.width + tileSize - 1) / tileSize;
+			tilesY = (d.height + tileSize - 1) / tileSize;
+			binStart = new int[tilesX * tilesY + 1];
+		}
+
+		var cache = mesh.getFaceCache();
+		if (pool == null || pool.getParallelism() == 1) {
+			Arrays.fill(color, background);
+			Arrays.fill(depth, Float.NEGATIVE_INFINITY);
+			for (int i = 0; i < count; i++) {
+				int f = faces == null ? i : faces[i];
+				fill(f, d, 0xff000000 | cache.getBlue(f), 0, 0, d.width - 1, d.height - 1);
+			}
+		} else {
+			bin(cache, d, faces, count);
+			pool.invoke(new TileTask(d, 0, tilesX * tilesY));
+		}
+		g.drawImage(image, 0, 0, null);
+	}
+
+	/**
+	 * Sort faces into the bins of the tiles their bounds overlap, by counting the
+	 * faces of each tile first
+	 * 
+	 * @param cache the face cache of the mesh, up to date
+	 * @param d     window dimension
+	 * @param faces faces to rasterize, or null for all faces
+	 * @param count number of faces to rasterize
+	 */
+	private void bin(FaceCache cache, Dimension d, int[] faces, int count) {
+		int[] range = new int[4];
+		Arrays.fill(binStart, 0);
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			int f = faces == null ? i : faces[i];
+			if (tileRange(cache, f, d, range)) {
+				for (int ty = range[1]; ty <= range[3]; ty++) {
+					for (int tx = range[0]; tx <= range[2]; tx++) {
+						binStart[ty * tilesX + tx + 1]++;
+					}
+				}
+				total += (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+			}
+		}
+		for (int t = 0; t < tilesX * tilesY; t++) {
+			binStart[t + 1] += binStart[t];
+		}
+		if (binned.length < total) {
+			binned = new int[total];
+		}
+		// fill each bin backwards from its end, which leaves the start of bin t in
+		// binStart[t + 1]
+		for (int i = count - 1; i >= 0; i--) {
+			int f = faces == null ? i : faces[i];
+			if (tileRange(cache, f, d, range)) {
+				for (int ty = range[1]; ty <= range[3]; ty++) {
+					for (int tx = range[0]; tx <= range[2]; tx++) {
+						binned[--binStart[ty * tilesX + tx + 1]] = f;
+					}
+				}
+			}
+		}
+		for (int t = 0; t < tilesX * tilesY; t++) {
+			binStart[t] = binStart[t + 1];
+		}
+		binStart[tilesX * tilesY] = total;
+	}
+
+	/**
+	 * Get the tiles overlapped by the bounds of a face
+	 * 
+	 * @param cache the face cache of the mesh, up to date
+	 * @param f     face index
+	 * @param d     window dimension
+	 * @param range first and last tile column, first and last tile row
+	 * @return false if the face covers no pixel center of the window
+	 */
+	private boolean tileRange(FaceCache cache, int f, Dimension d, int[] range) {
+		// the same window coordinates and pixel centers as fill
+		double left = Math.ceil(cache.getBound(f, 2) + d.width / 2 - 0.5);
+		double right = Math.floor(cache.getBound(f, 0) + d.width / 2 - 0.5);
+		double top = Math.ceil(-cache.getBound(f, 1) + d.height / 2 - 0.5);
+		double bottom = Math.floor(-cache.getBound(f, 3) + d.height / 2 - 0.5);
+		if (!(left <= right && top <= bottom && right >= 0 && bottom >= 0 && left < d.width && top < d.height)) {
+			return false;
+		}
+		range[0] = (int) Math.max(0, left) / tileSize;
+		range[1] = (int) Math.max(0, top) / tileSize;
+		range[2] = (int) Math.min(d.width - 1, right) / tileSize;
+		range[3] = (int) Math.min(d.height - 1, bottom) / tileSize;
+		return true;
+	}
+
+	/**
+	 * Clear a tile and rasterize the faces of its bin
+	 * 
+	 * @param t tile index, row by row
+	 * @param d window dimension
+	 */
+	private void drawTile(int t, Dimension d) {
+		int left = t % tilesX * tileSize;
+		int top = t / tilesX * tileSize;
+		int right = Integer.min(d.width, left + tileSize) - 1;
+		int bottom = Integer.min(d.height, top + tileSize) - 1;
+		for (int y = top; y <= bottom; y++) {
+			Arrays.fill(color, y * d.width + left, y * d.width + right + 1, background);
+			Arrays.fill(depth, y * d.width + left, y * d.width + right + 1, Float.NEGATIVE_INFINITY);
+		}
+		var cache = mesh.getFaceCache();
+		for (int i = binStart[t]; i < binStart[t + 1]; i++) {
+			int f = binned[i];
+			fill(f, d, 0xff000000 | cache.getBlue(f), left, top, right, bottom);
+		}
+	}
+
+	/**
+	 * Rasterize one face. The barycentric coordinates of a pixel center are
+	 * linear in the pixel position, so the covered span of each row is solved
+	 * directly. The depth of each pixel is computed from its position alone, so
+	 * that it does not depend on where the span was clipped.
+	 * 
+	 * @param f      face index
+	 * @param d      window dimension
+	 * @param rgb    face color in ARGB
+	 * @param left   first pixel column to fill
+	 * @param top    first pixel row to fill
+	 * @param right  last pixel column to fill
+	 * @param bottom last pixel row to fill
+	 */
+	private void fill(int f, Dimension d, int rgb, int left, int top, int right, int bottom) {
+		int w = d.width;
+		int v0 = mesh.getFaceVertex(f, 0);
+		int v1 = mesh.getFaceVertex(f, 1);
+		int v2 = mesh.getFaceVertex(f, 2);
+		// window coordinates, the same transformation as Face.draw
+		double x0 = mesh.getVisualCoord(v0, 0) + d.width / 2;
+		double y0 = -mesh.getVisualCoord(v0, 1) + d.height / 2;
+		double z0 = mesh.getVisualCoord(v0, 2);
+		double x1 = mesh.getVisualCoord(v1, 0) + d.width / 2;
+		double y1 = -mesh.getVisualCoord(v1, 1) + d.height / 2;
+		double z1 = mesh.getVisualCoord(v1, 2);
+		double x2 = mesh.getVisualCoord(v2, 0) + d.width / 2;
+		double y2 = -mesh.getVisualCoord(v2, 1) + d.height / 2;
+		double z2 = mesh.getVisualCoord(v2, 2);
+
+		double area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+		if (!(area != 0) || Double.isInfinite(area)) {
+			return;
+		}
+		top = Integer.max(top, (int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5));
+		bottom = Integer.min(bottom, (int) Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5));
+		double minX = Math.max(left, Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5));
+		double maxX = Math.min(right, Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5));
+		if (top > bottom || minX > maxX) {
+			return;
+		}
+
+		// barycentric coordinate i is a[i] * x + b[i] * y + c[i]
+		double a0 = (y1 - y2) / area;
+		double b0 = (x2 - x1) / area;
+		double c0 = (x1 * y2 - x2 * y1) / area;
+		double a1 = (y2 - y0) / area;
+		double b1 = (x0 - x2) / area;
+		double c1 = (x2 * y0 - x0 * y2) / area;
+		double a2 = -a0 - a1;
+		double b2 = -b0 - b1;
+		double c2 = 1 - c0 - c1;
+		// depth is linear as well
+		double dzdx = a0 * z0 + a1 * z1 + a2 * z2;
+		double dzdy = b0 * z0 + b1 * z1 + b2 * z2;
+		double dz = c0 * z0 + c1 * z1 + c2 * z2;
+
+		for (int y = top; y <= bottom; y++) {
+			double py = y + 0.5;
+			double lo = minX + 0.5;
+			double hi = maxX + 0.5;
+			lo = spanStart(a0, b0 * py + c0, lo);
+			lo = spanStart(a1, b1 * py + c1, lo);
+			lo = spanStart(a2, b2 * py + c2, lo);
+			hi = spanEnd(a0, b0 * py + c0, hi);
+			hi = spanEnd(a1, b1 * py + c1, hi);
+			hi = spanEnd(a2, b2 * py + c2, hi);
+			if (!(lo <= hi)) {
+				continue;
+			}
+			int start = (int) Math.ceil(lo - 0.5);
+			int end = (int) Math.floor(hi - 0.5);
+			int row = y * w;
+			double rowZ = dzdy * py + dz;
+			for (int x = start; x <= end; x++) {
+				double z = dzdx * (x + 0.5) + rowZ;
+				if (z > depth[row + x]) {
+					depth[row + x] = (float) z;
+					color[row + x] = rgb;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Narrow the start of a span so that a * x + k >= 0
+	 * 
+	 * @param a  coefficient of x
+	 * @param k  constant part
+	 * @param lo current start
+	 * @return new start
+	 */
+	private static double spanStart(double a, double k, double lo) {
+		if (a > 0) {
+			return Math.max(lo, -k / a);
+		} else if (a == 0 && k < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return lo;
+	}
+
+	/**
+	 * Narrow the end of a span so that a * x + k >= 0
+	 * 
+	 * @param a  coefficient of x
+	 * @param k  constant part
+	 * @param hi current end
+	 * @return new end
+	 */
+	private static double spanEnd(double a, double k, double hi) {
+		if (a < 0) {
+			return Math.min(hi, -k / a);
+		} else if (a == 0 && k < 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return hi;
+	}
+
+	/**
+	 * Get the memory used by the color and depth buffers and the bins, 8 bytes
+	 * per pixel and 4 per binned face
+	 * 
+	 * @return size in bytes, 0 before the first frame
+	 */
+	public long getMemoryBytes() {
+		int[] colors = color;
+		float[] depths = depth;
+		int[] starts = binStart;
+		return (colors == null ? 0 : 4L * colors.length) + (depths == null ? 0 : 4L * depths.length)
+				+ (starts == null ? 0 : 4L * starts.length) + 4L * binned.length;
+	}
+
+	/**
+	 * Draw a range of tiles, split in halves down to single tiles, so that idle
+	 * threads steal the tiles left
+	 * 
+	 * @author Renhao Lu
+	 *
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Window dimension
+		 */
+		private Dimension d;
+		/**
+		 * First tile, inclusive
+		 */
+		private int from;
+		/**
+		 * Last tile, exclusive
+		 */
+		private int to;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param d    window dimension
+		 * @param from first tile, inclusive
+		 * @param to   last tile, exclusive
+		 */
+		TileTask(Dimension d, int from, int to) {
+			this.d = d;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				drawTile(from, d);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileTask(d, from, mid), new TileTask(d, mid, to));
+			}
+		}
+	}
+}
@@ -6,4 +6,6 @@
  */
 module LokiViewer {
 	requires java.desktop;
+	requires jdk.jfr;
+	requires static jdk.incubator.vector;
 }
\ No newline at end of file